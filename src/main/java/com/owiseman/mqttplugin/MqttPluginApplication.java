@@ -1,7 +1,7 @@
 package com.owiseman.mqttplugin;
 
 import com.owiseman.mqttplugin.service.MqttService;
-import com.owiseman.mqttplugin.service.PluginGrpcService;
+import com.owiseman.mqttplugin.startup.StartupService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
@@ -16,7 +16,7 @@ public class MqttPluginApplication implements CommandLineRunner {
     private MqttService mqttService;
 
     @Autowired
-    private PluginGrpcService pluginGrpcService;
+    private StartupService startupService;
 
     public static void main(String[] args) {
         SpringApplication.run(MqttPluginApplication.class, args);
@@ -24,11 +24,8 @@ public class MqttPluginApplication implements CommandLineRunner {
 
     @Override
     public void run(String... args) throws Exception {
-        // 启动MQTT服务
-        mqttService.start();
-
-        // 注册插件到主应用
-        pluginGrpcService.registerPlugin();
+        // 启动MQTT与gRPC服务并注册插件到主应用
+        startupService.start();
 
         // 添加关闭钩子
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
@@ -0,0 +1,314 @@
+package com.owiseman.mqttplugin.admission;
+
+import com.owiseman.mqttplugin.config.NettyTransport;
+import com.owiseman.mqttplugin.config.PerformanceProfile;
+import com.owiseman.mqttplugin.metrics.LatencyHistogram;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.handler.codec.mqtt.MqttConnectMessage;
+import io.netty.handler.codec.mqtt.MqttConnectReturnCode;
+import io.netty.handler.codec.mqtt.MqttDecoder;
+import io.netty.handler.codec.mqtt.MqttEncoder;
+import io.netty.handler.codec.mqtt.MqttMessageBuilders;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个监听端口的连接准入网关。
+ * <p>
+ * 网关监听对外端口，按令牌桶速率和"待完成连接"上限决定是否放行新连接：放行的连接被转发到只监听回环地址的
+ * Moquette端口；暂时超限的连接在 maxDelayMillis 内延迟接入；仍无法放行的连接在MQTT端口上收到
+ * "服务不可用"（MQTT 5 为 Server busy）的CONNACK后关闭，WebSocket端口直接关闭。
+ * 待完成连接指已放行但代理尚未回写任何数据（即CONNACK）的连接，反映代理处理CONNECT的积压。
+ */
+public class AdmissionGateway {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionGateway.class);
+
+    private static final AttributeKey<Boolean> QUEUED = AttributeKey.valueOf("admission.queued");
+    private static final long PENDING_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long PAUSED_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final String name;
+    private final boolean mqttListener;
+    private final String bindHost;
+    private final int bindPort;
+    private final String backendHost;
+    private final int backendPort;
+    private final TokenBucket bucket;
+    private final EventLoopGroup bossGroup;
+    private final EventLoopGroup workerGroup;
+    private final Class<? extends ServerChannel> serverChannelClass;
+    private final Class<? extends Channel> channelClass;
+    private final PerformanceProfile performanceProfile;
+
+    private volatile int maxPending;
+    private volatile long maxDelayNanos;
+    private volatile long pendingTimeoutMillis;
+    private volatile boolean paused;
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong delayed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong backendFailures = new AtomicLong();
+    private final LatencyHistogram admissionLatency = new LatencyHistogram();
+
+    private Channel serverChannel;
+
+    public AdmissionGateway(String name, boolean mqttListener, String bindHost, int bindPort,
+                            String backendHost, int backendPort, TokenBucket bucket,
+                            int maxPending, long maxDelayMillis, long pendingTimeoutMillis,
+                            EventLoopGroup bossGroup, EventLoopGroup workerGroup,
+                            NettyTransport transport, PerformanceProfile performanceProfile) {
+        this.name = name;
+        this.mqttListener = mqttListener;
+        this.bindHost = bindHost;
+        this.bindPort = bindPort;
+        this.backendHost = backendHost;
+        this.backendPort = backendPort;
+        this.bucket = bucket;
+        this.bossGroup = bossGroup;
+        this.workerGroup = workerGroup;
+        this.serverChannelClass = transport.serverChannelClass();
+        this.channelClass = transport.channelClass();
+        this.performanceProfile = performanceProfile;
+        setLimits(maxPending, maxDelayMillis, pendingTimeoutMillis);
+    }
+
+    public void start(int backlog) throws InterruptedException {
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(bossGroup, workerGroup)
+                .channel(serverChannelClass)
+                .option(ChannelOption.SO_BACKLOG, backlog)
+                .option(ChannelOption.ALLOCATOR, performanceProfile.getAllocator())
+                .childOption(ChannelOption.AUTO_READ, false)
+                .childOption(ChannelOption.TCP_NODELAY, performanceProfile.isTcpNoDelay())
+                .childOption(ChannelOption.SO_KEEPALIVE, performanceProfile.isSoKeepalive())
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, performanceProfile.getWriteBufferWaterMark())
+                .childOption(ChannelOption.ALLOCATOR, performanceProfile.getAllocator())
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+                            @Override
+                            public void channelActive(ChannelHandlerContext ctx) {
+                                ctx.pipeline().remove(this);
+                                accepted.incrementAndGet();
+                                tryAdmit(ctx.channel(), System.nanoTime());
+                            }
+                        });
+                    }
+                });
+        serverChannel = bootstrap.bind(bindHost, bindPort).sync().channel();
+        logger.info("Admission gateway {} listening on {}:{} -> {}:{}", name, bindHost, bindPort, backendHost, backendPort);
+    }
+
+    public void stop() {
+        if (serverChannel != null) {
+            serverChannel.close().syncUninterruptibly();
+            serverChannel = null;
+        }
+    }
+
+    public void setLimits(int maxPending, long maxDelayMillis, long pendingTimeoutMillis) {
+        this.maxPending = maxPending;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.pendingTimeoutMillis = pendingTimeoutMillis;
+    }
+
+    public TokenBucket getBucket() {
+        return bucket;
+    }
+
+    /**
+     * 暂停时新连接只排队不放行，用于重启代理期间的平滑切换。
+     */
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    public int getPending() {
+        return pending.get();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("listener", bindHost + ":" + bindPort);
+        stats.put("paused", paused);
+        stats.put("ratePerSecond", bucket.getRatePerSecond());
+        stats.put("maxPending", maxPending);
+        stats.put("pending", pending.get());
+        stats.put("queued", queued.get());
+        stats.put("accepted", accepted.get());
+        stats.put("admitted", admitted.get());
+        stats.put("delayed", delayed.get());
+        stats.put("rejected", rejected.get());
+        stats.put("backendFailures", backendFailures.get());
+        stats.put("admissionLatency", admissionLatency.snapshot());
+        return stats;
+    }
+
+    private void tryAdmit(Channel front, long acceptedAt) {
+        if (!front.isActive()) {
+            leaveQueue(front);
+            return;
+        }
+
+        if (!paused && reservePending()) {
+            if (bucket.tryAcquire()) {
+                leaveQueue(front);
+                connectBackend(front, acceptedAt);
+                return;
+            }
+            pending.decrementAndGet();
+        }
+
+        long waitNanos;
+        if (paused) {
+            waitNanos = PAUSED_RETRY_NANOS;
+        } else if (pending.get() >= maxPending) {
+            waitNanos = PENDING_RETRY_NANOS;
+        } else {
+            waitNanos = Math.max(bucket.nanosUntilAvailable(), TimeUnit.MILLISECONDS.toNanos(1));
+        }
+
+        if (System.nanoTime() - acceptedAt + waitNanos > maxDelayNanos) {
+            leaveQueue(front);
+            reject(front);
+            return;
+        }
+
+        if (front.attr(QUEUED).setIfAbsent(Boolean.TRUE) == null) {
+            queued.incrementAndGet();
+            delayed.incrementAndGet();
+        }
+        front.eventLoop().schedule(() -> tryAdmit(front, acceptedAt), waitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void leaveQueue(Channel front) {
+        if (front.attr(QUEUED).getAndSet(null) != null) {
+            queued.decrementAndGet();
+        }
+    }
+
+    /**
+     * 占用一个待完成名额。多个事件循环线程同时放行，先检查再递增会超出上限，因此用CAS占用。
+     */
+    private boolean reservePending() {
+        int current;
+        do {
+            current = pending.get();
+            if (current >= maxPending) {
+                return false;
+            }
+        } while (!pending.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    // 调用前已通过 reservePending 占用名额
+    private void connectBackend(Channel front, long acceptedAt) {
+        AtomicBoolean pendingHeld = new AtomicBoolean(true);
+        Runnable releasePending = () -> {
+            if (pendingHeld.compareAndSet(true, false)) {
+                pending.decrementAndGet();
+            }
+        };
+
+        Bootstrap bootstrap = new Bootstrap()
+                .group(front.eventLoop())
+                .channel(channelClass)
+                .option(ChannelOption.AUTO_READ, false)
+                .option(ChannelOption.TCP_NODELAY, performanceProfile.isTcpNoDelay())
+                .option(ChannelOption.WRITE_BUFFER_WATER_MARK, performanceProfile.getWriteBufferWaterMark())
+                .option(ChannelOption.ALLOCATOR, performanceProfile.getAllocator())
+                .handler(new RelayHandler(front) {
+                    @Override
+                    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                        // 代理的第一次回写（CONNACK）表示CONNECT已处理完
+                        if (pendingHeld.get()) {
+                            releasePending.run();
+                            admissionLatency.recordNanos(System.nanoTime() - acceptedAt);
+                        }
+                        super.channelRead(ctx, msg);
+                    }
+                });
+
+        bootstrap.connect(backendHost, backendPort).addListener((ChannelFutureListener) future -> {
+            if (!future.isSuccess()) {
+                releasePending.run();
+                backendFailures.incrementAndGet();
+                logger.warn("Admission gateway {} failed to reach broker: {}", name, future.cause().getMessage());
+                front.close();
+                return;
+            }
+
+            Channel backend = future.channel();
+            admitted.incrementAndGet();
+            front.pipeline().addLast(new RelayHandler(backend));
+            front.closeFuture().addListener(f -> releasePending.run());
+            front.config().setAutoRead(true);
+            backend.config().setAutoRead(true);
+
+            // 客户端连接后迟迟不发CONNECT时不再占用待完成名额
+            front.eventLoop().schedule(releasePending, pendingTimeoutMillis, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    private void reject(Channel front) {
+        rejected.incrementAndGet();
+        if (!mqttListener) {
+            front.close();
+            return;
+        }
+
+        front.pipeline().addLast(new MqttDecoder(), MqttEncoder.INSTANCE, new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                try {
+                    if (msg instanceof MqttConnectMessage) {
+                        int version = ((MqttConnectMessage) msg).variableHeader().version();
+                        MqttConnectReturnCode returnCode = version == 5
+                                ? MqttConnectReturnCode.CONNECTION_REFUSED_SERVER_BUSY
+                                : MqttConnectReturnCode.CONNECTION_REFUSED_SERVER_UNAVAILABLE;
+                        ctx.writeAndFlush(MqttMessageBuilders.connAck()
+                                        .returnCode(returnCode)
+                                        .sessionPresent(false)
+                                        .build())
+                                .addListener(ChannelFutureListener.CLOSE);
+                    } else {
+                        ctx.close();
+                    }
+                } finally {
+                    ReferenceCountUtil.release(msg);
+                }
+            }
+
+            @Override
+            public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+                ctx.close();
+            }
+        });
+        front.config().setAutoRead(true);
+        front.eventLoop().schedule((Runnable) front::close, pendingTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+}
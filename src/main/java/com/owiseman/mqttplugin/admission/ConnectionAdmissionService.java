@@ -0,0 +1,153 @@
+package com.owiseman.mqttplugin.admission;
+
+import com.owiseman.mqttplugin.config.MqttConfig;
+import com.owiseman.mqttplugin.config.NettyTransport;
+import com.owiseman.mqttplugin.config.PerformanceProfile;
+import io.netty.channel.EventLoopGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 连接准入控制。启用后Moquette只监听回环地址上的内部端口，对外端口由 {@link AdmissionGateway} 接管，
+ * 重启或发布后大量设备同时重连时按配置速率平滑放行，避免代理在CONNECT处理上被压垮。
+ */
+@Service
+public class ConnectionAdmissionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionAdmissionService.class);
+
+    static final String BACKEND_HOST = "127.0.0.1";
+
+    private final MqttConfig mqttConfig;
+    private final PerformanceProfile performanceProfile;
+    private final Map<String, AdmissionGateway> gateways = new LinkedHashMap<>();
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private NettyTransport transport;
+
+    @Autowired
+    public ConnectionAdmissionService(MqttConfig mqttConfig, PerformanceProfile performanceProfile) {
+        this.mqttConfig = mqttConfig;
+        this.performanceProfile = performanceProfile;
+    }
+
+    public boolean isEnabled() {
+        return mqttConfig.isAdmissionEnabled();
+    }
+
+    /**
+     * Moquette实际监听的地址：启用准入控制时为回环地址。
+     */
+    public String getBrokerHost() {
+        return isEnabled() ? BACKEND_HOST : mqttConfig.getHost();
+    }
+
+    public int getBrokerPort() {
+        return isEnabled() ? mqttConfig.getAdmissionInternalPort() : mqttConfig.getPort();
+    }
+
+    public int getBrokerWebsocketPort() {
+        return isEnabled() ? mqttConfig.getAdmissionInternalWebsocketPort() : mqttConfig.getWebsocketPort();
+    }
+
+    public synchronized void start() throws InterruptedException {
+        if (!isEnabled() || !gateways.isEmpty()) {
+            return;
+        }
+
+        transport = performanceProfile.getTransport();
+        bossGroup = transport.newEventLoopGroup(mqttConfig.getNettyBossThreads());
+        workerGroup = transport.newEventLoopGroup(mqttConfig.getNettyWorkerThreads());
+
+        gateways.put("mqtt", createGateway("mqtt", true, mqttConfig.getPort(), getBrokerPort()));
+        gateways.put("websocket", createGateway("websocket", false, mqttConfig.getWebsocketPort(), getBrokerWebsocketPort()));
+
+        for (AdmissionGateway gateway : gateways.values()) {
+            gateway.start(mqttConfig.getAdmissionBacklog());
+        }
+    }
+
+    /**
+     * 将当前的速率与排队限制应用到所有网关，无需重新绑定端口。
+     */
+    public synchronized void applyLimits() {
+        for (AdmissionGateway gateway : gateways.values()) {
+            gateway.getBucket().setRate(mqttConfig.getAdmissionRatePerSecond(), mqttConfig.getAdmissionBurst());
+            gateway.setLimits(mqttConfig.getAdmissionMaxPending(), mqttConfig.getAdmissionMaxDelayMillis(),
+                    mqttConfig.getAdmissionPendingTimeoutMillis());
+        }
+    }
+
+    /**
+     * 暂停时新连接在网关排队（不超过 max-delay-ms），代理重启完成后再放行。
+     */
+    public synchronized void setPaused(boolean paused) {
+        for (AdmissionGateway gateway : gateways.values()) {
+            gateway.setPaused(paused);
+        }
+    }
+
+    /**
+     * 对外监听地址变化时重新绑定网关。旧网关先恢复放行，已在排队的连接继续接入代理，
+     * 已建立的连接不受影响。
+     */
+    public synchronized void rebind() throws InterruptedException {
+        if (gateways.isEmpty()) {
+            start();
+            return;
+        }
+
+        for (AdmissionGateway gateway : gateways.values()) {
+            gateway.setPaused(false);
+            gateway.stop();
+        }
+        gateways.put("mqtt", createGateway("mqtt", true, mqttConfig.getPort(), getBrokerPort()));
+        gateways.put("websocket", createGateway("websocket", false, mqttConfig.getWebsocketPort(), getBrokerWebsocketPort()));
+        for (AdmissionGateway gateway : gateways.values()) {
+            gateway.start(mqttConfig.getAdmissionBacklog());
+        }
+        logger.info("Admission gateways rebound to {}:{} and {}:{}",
+                mqttConfig.getHost(), mqttConfig.getPort(), mqttConfig.getHost(), mqttConfig.getWebsocketPort());
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        for (AdmissionGateway gateway : gateways.values()) {
+            gateway.stop();
+        }
+        gateways.clear();
+        if (bossGroup != null) {
+            bossGroup.shutdownGracefully();
+            workerGroup.shutdownGracefully();
+            bossGroup = null;
+            workerGroup = null;
+        }
+        logger.info("Connection admission gateways stopped");
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", isEnabled());
+        synchronized (this) {
+            stats.put("transport", transport != null ? transport.getName() : "none");
+            gateways.forEach((name, gateway) -> stats.put(name, gateway.getStats()));
+        }
+        return stats;
+    }
+
+    private AdmissionGateway createGateway(String name, boolean mqttListener, int publicPort, int brokerPort) {
+        TokenBucket bucket = new TokenBucket(mqttConfig.getAdmissionRatePerSecond(), mqttConfig.getAdmissionBurst());
+        return new AdmissionGateway(name, mqttListener, mqttConfig.getHost(), publicPort,
+                BACKEND_HOST, brokerPort, bucket,
+                mqttConfig.getAdmissionMaxPending(), mqttConfig.getAdmissionMaxDelayMillis(),
+                mqttConfig.getAdmissionPendingTimeoutMillis(),
+                bossGroup, workerGroup, transport, performanceProfile);
+    }
+}
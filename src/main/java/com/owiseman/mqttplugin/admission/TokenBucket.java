@@ -0,0 +1,63 @@
+package com.owiseman.mqttplugin.admission;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 令牌桶限速器：以 ratePerSecond 的速度补充令牌，最多积累 burst 个。
+ */
+public class TokenBucket {
+
+    private final LongSupplier nanoClock;
+    private double ratePerNano;
+    private double burst;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(double ratePerSecond, double burst) {
+        this(ratePerSecond, burst, System::nanoTime);
+    }
+
+    // 测试用：注入纳秒时钟
+    TokenBucket(double ratePerSecond, double burst, LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        setRate(ratePerSecond, burst);
+        this.tokens = this.burst;
+        this.lastRefill = nanoClock.getAsLong();
+    }
+
+    public synchronized void setRate(double ratePerSecond, double burst) {
+        if (ratePerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("rate must be positive and burst at least 1");
+        }
+        this.ratePerNano = ratePerSecond / 1_000_000_000d;
+        this.burst = burst;
+        this.tokens = Math.min(tokens, burst);
+    }
+
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 距离下一个令牌可用的纳秒数。
+     */
+    public synchronized long nanosUntilAvailable() {
+        refill();
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / ratePerNano);
+    }
+
+    public synchronized double getRatePerSecond() {
+        return ratePerNano * 1_000_000_000d;
+    }
+
+    private void refill() {
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * ratePerNano);
+        lastRefill = now;
+    }
+}
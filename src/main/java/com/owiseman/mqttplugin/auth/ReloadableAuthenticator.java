@@ -0,0 +1,168 @@
+package com.owiseman.mqttplugin.auth;
+
+import com.owiseman.mqttplugin.config.MqttConfig;
+import io.moquette.broker.security.IAuthenticator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 可热更新的用户名/密码认证器。
+ * <p>
+ * 用户列表来自 {@code mqtt.auth.users}，格式为逗号分隔的 {@code 用户名:密码SHA-256十六进制}。
+ * 列表为空时接受所有带用户名的连接（与Moquette默认行为一致），匿名连接仍由 allow.anonymous 控制。
+ * 插件自身的维护连接（如会话过期清理）使用进程内随机生成的内部凭据，不出现在用户列表中。
+ */
+@Component
+public class ReloadableAuthenticator implements IAuthenticator {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReloadableAuthenticator.class);
+
+    public static final String INTERNAL_USERNAME = "$internal";
+
+    private static final String BASIC_PREFIX = "Basic ";
+
+    private final MqttConfig mqttConfig;
+    private volatile Map<String, byte[]> users = Collections.emptyMap();
+    private final byte[] internalPassword;
+
+    @Autowired
+    public ReloadableAuthenticator(MqttConfig mqttConfig) {
+        this.mqttConfig = mqttConfig;
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.internalPassword = Base64.getEncoder().encode(secret);
+        reload();
+    }
+
+    /**
+     * 重新读取用户列表，已建立的连接不受影响。
+     */
+    public void reload() {
+        this.users = parseUsers(mqttConfig.getAuthUsers());
+        logger.info("Loaded {} MQTT users", users.size());
+    }
+
+    public int getUserCount() {
+        return users.size();
+    }
+
+    public byte[] getInternalPassword() {
+        return internalPassword.clone();
+    }
+
+    @Override
+    public boolean checkValid(String clientId, String username, byte[] password) {
+        if (INTERNAL_USERNAME.equals(username)) {
+            return password != null && MessageDigest.isEqual(internalPassword, password);
+        }
+        Map<String, byte[]> current = users;
+        if (current.isEmpty()) {
+            return true;
+        }
+        byte[] expected = current.get(username);
+        if (expected == null || password == null) {
+            logger.warn("Authentication failed for client {} (user {})", clientId, username);
+            return false;
+        }
+        boolean valid = MessageDigest.isEqual(expected, sha256(password));
+        if (!valid) {
+            logger.warn("Authentication failed for client {} (user {})", clientId, username);
+        }
+        return valid;
+    }
+
+    /**
+     * 取出 {@code Authorization: Basic} 头中的凭据部分，不是Basic认证时返回null。
+     */
+    public static String basicToken(String authorizationHeader) {
+        if (authorizationHeader == null
+                || !authorizationHeader.regionMatches(true, 0, BASIC_PREFIX, 0, BASIC_PREFIX.length())) {
+            return null;
+        }
+        return authorizationHeader.substring(BASIC_PREFIX.length()).trim();
+    }
+
+    /**
+     * 校验HTTP接口的凭据 {@code base64(用户名:密码)}，成功时返回用户名，否则返回null。
+     * <p>
+     * 与 {@link #checkValid} 不同，未配置用户时一律拒绝；内部凭据只用于插件自身的代理连接，也不接受。
+     */
+    public String checkBasic(String clientId, String token) {
+        if (token == null || token.isEmpty() || users.isEmpty()) {
+            return null;
+        }
+        String credentials;
+        try {
+            credentials = new String(Base64.getDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        int separator = credentials.indexOf(':');
+        if (separator <= 0) {
+            return null;
+        }
+        String username = credentials.substring(0, separator);
+        if (INTERNAL_USERNAME.equals(username)) {
+            return null;
+        }
+        byte[] password = credentials.substring(separator + 1).getBytes(StandardCharsets.UTF_8);
+        return checkValid(clientId, username, password) ? username : null;
+    }
+
+    /**
+     * 解析并校验用户列表，格式错误时抛出 {@link IllegalArgumentException}。
+     */
+    public static Map<String, byte[]> parseUsers(String users) {
+        if (users == null || users.isBlank()) {
+            return Collections.emptyMap();
+        }
+        Map<String, byte[]> result = new HashMap<>();
+        for (String entry : users.split(",")) {
+            String trimmed = entry.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int separator = trimmed.lastIndexOf(':');
+            if (separator <= 0 || trimmed.length() - separator - 1 != 64) {
+                throw new IllegalArgumentException("mqtt.auth.users entries must be user:sha256hex");
+            }
+            if (INTERNAL_USERNAME.equals(trimmed.substring(0, separator))) {
+                throw new IllegalArgumentException(INTERNAL_USERNAME + " is reserved for internal connections");
+            }
+            result.put(trimmed.substring(0, separator), parseHex(trimmed.substring(separator + 1)));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static byte[] parseHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(i * 2), 16);
+            int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("Invalid password hash in mqtt.auth.users");
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+
+    private static byte[] sha256(byte[] password) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(password);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.owiseman.mqttplugin.bridge;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 一条已编码的推送帧，由所有匹配的连接共享。
+ * <p>
+ * 二进制帧只保存一份UTF-8字节，每次发送包一个只读的 {@link ByteBuffer} 视图（容器发送时会移动缓冲的位置，
+ * 不能跨连接共用同一个缓冲对象），字节本身不复制。文本帧共享同一个 {@link TextMessage}，
+ * 但容器每次发送都会把字符串重新编码为UTF-8。
+ */
+final class FanoutFrame {
+
+    private final byte[] utf8;
+    private final TextMessage text;
+
+    private FanoutFrame(byte[] utf8, TextMessage text) {
+        this.utf8 = utf8;
+        this.text = text;
+    }
+
+    static FanoutFrame binary(byte[] utf8) {
+        return new FanoutFrame(utf8, null);
+    }
+
+    static FanoutFrame text(byte[] utf8) {
+        return new FanoutFrame(null, new TextMessage(new String(utf8, StandardCharsets.UTF_8)));
+    }
+
+    WebSocketMessage<?> toMessage() {
+        return text != null ? text : new BinaryMessage(ByteBuffer.wrap(utf8).asReadOnlyBuffer());
+    }
+}
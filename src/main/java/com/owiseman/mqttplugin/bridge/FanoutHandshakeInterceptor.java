@@ -0,0 +1,78 @@
+package com.owiseman.mqttplugin.bridge;
+
+import com.owiseman.mqttplugin.auth.ReloadableAuthenticator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * WebSocket扇出端点的握手认证，凭据与MQTT连接相同，由 {@link ReloadableAuthenticator} 校验。
+ * <p>
+ * 凭据取自 {@code Authorization: Basic} 头；浏览器的WebSocket API不能设置请求头，此时可用查询参数
+ * {@code token=base64(用户名:密码)}。未配置 mqtt.auth.users 时认证器接受任意用户名，因此拒绝所有握手。
+ */
+@Component
+public class FanoutHandshakeInterceptor implements HandshakeInterceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(FanoutHandshakeInterceptor.class);
+
+    static final String USER_ATTRIBUTE = "fanout.user";
+
+    private final ReloadableAuthenticator authenticator;
+
+    @Autowired
+    public FanoutHandshakeInterceptor(ReloadableAuthenticator authenticator) {
+        this.authenticator = authenticator;
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        if (authenticator.getUserCount() == 0) {
+            logger.warn("Rejected WebSocket fan-out handshake from {}: mqtt.auth.users is empty",
+                    request.getRemoteAddress());
+            response.setStatusCode(HttpStatus.FORBIDDEN);
+            return false;
+        }
+        String username = authenticate(request);
+        if (username == null) {
+            logger.warn("WebSocket fan-out authentication failed from {}", request.getRemoteAddress());
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            response.getHeaders().set(HttpHeaders.WWW_AUTHENTICATE, "Basic realm=\"mqtt-fanout\"");
+            return false;
+        }
+        attributes.put(USER_ATTRIBUTE, username);
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+
+    /**
+     * 校验凭据，成功时返回用户名，否则返回null。
+     */
+    private String authenticate(ServerHttpRequest request) {
+        String token = ReloadableAuthenticator.basicToken(request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION));
+        if (token == null) {
+            String param = UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams().getFirst("token");
+            if (param != null) {
+                token = UriUtils.decode(param, StandardCharsets.UTF_8);
+            }
+        }
+        return authenticator.checkBasic("ws-fanout", token);
+    }
+}
@@ -0,0 +1,43 @@
+package com.owiseman.mqttplugin.bridge;
+
+import com.owiseman.mqttplugin.compression.PayloadCompressor;
+import io.moquette.interception.AbstractInterceptHandler;
+import io.moquette.interception.messages.InterceptPublishMessage;
+import io.netty.buffer.ByteBufUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * 把发布消息转交给 {@link FanoutService}。没有WebSocket连接时直接返回，不读取负载。
+ */
+@Component
+public class FanoutInterceptHandler extends AbstractInterceptHandler {
+
+    private final FanoutService fanoutService;
+    private final PayloadCompressor payloadCompressor;
+
+    @Autowired
+    public FanoutInterceptHandler(FanoutService fanoutService, PayloadCompressor payloadCompressor) {
+        this.fanoutService = fanoutService;
+        this.payloadCompressor = payloadCompressor;
+    }
+
+    @Override
+    public String getID() {
+        return "ws-fanout";
+    }
+
+    @Override
+    public Class<?>[] getInterceptedMessageTypes() {
+        return new Class<?>[]{InterceptPublishMessage.class};
+    }
+
+    @Override
+    public void onPublish(InterceptPublishMessage message) {
+        if (fanoutService.isEmpty()) {
+            return;
+        }
+        fanoutService.dispatch(message.getTopicName(), message.getQos().value(), message.isRetainFlag(),
+                () -> payloadCompressor.decode(ByteBufUtil.getBytes(message.getPayload())));
+    }
+}
@@ -0,0 +1,313 @@
+package com.owiseman.mqttplugin.bridge;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.owiseman.mqttplugin.config.MqttConfig;
+import com.owiseman.mqttplugin.metrics.LatencyHistogram;
+import com.owiseman.mqttplugin.service.TopicFilterSet;
+import com.owiseman.mqttplugin.service.TopicTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * WebSocket扇出：把 {@link FanoutInterceptHandler} 收到的发布消息推送给订阅了该主题的WebSocket连接。
+ * <p>
+ * 每条消息只在第一个匹配的连接处编码一次UTF-8 JSON，同一个帧对象放入所有匹配连接的缓冲；默认的二进制帧
+ * 发送时直接使用这份字节，文本帧（mqtt.fanout.frame-type=text）由容器按连接重新编码，见 {@link FanoutFrame}。
+ * 代理线程只做匹配和入队，写socket由 ws-fanout 线程池完成，慢连接只会让自己的缓冲合并或丢帧，
+ * 不会阻塞代理或其他连接。
+ * <p>
+ * 过滤器列表相同（去重排序后）的连接共用一个 {@link TopicFilterSet}，匹配缓存按过滤器列表而不是按连接分配，
+ * 大量订阅同一组主题的连接只占一份缓存；最后一个使用者断开或更换过滤器时释放。
+ */
+@Service
+public class FanoutService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FanoutService.class);
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final FanoutSubscriber[] NO_SUBSCRIBERS = new FanoutSubscriber[0];
+
+    private final MqttConfig mqttConfig;
+    private final TopicTable topicTable;
+    private final Map<String, FanoutSubscriber> subscribers = new LinkedHashMap<>();
+    // 发布热路径只读这份快照，连接建立或断开时整体替换
+    private volatile FanoutSubscriber[] active = NO_SUBSCRIBERS;
+    // 规范化的过滤器列表 -> 共用的过滤器集合，与 subscribers 一同在 this 上同步
+    private final Map<List<String>, SharedFilterSet> filterSets = new HashMap<>();
+    private ExecutorService executor;
+
+    private final AtomicLong encoded = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong sendErrors = new AtomicLong();
+    private final AtomicLong totalConnections = new AtomicLong();
+    private long closedConflated;
+    private long closedDropped;
+    private final LatencyHistogram sendLatency = new LatencyHistogram();
+
+    @Autowired
+    public FanoutService(MqttConfig mqttConfig, TopicTable topicTable) {
+        this.mqttConfig = mqttConfig;
+        this.topicTable = topicTable;
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(mqttConfig.getFanoutThreads(), r -> {
+            Thread thread = new Thread(r, "ws-fanout-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        List<FanoutSubscriber> closing;
+        synchronized (this) {
+            closing = new ArrayList<>(subscribers.values());
+            subscribers.clear();
+            filterSets.clear();
+            active = NO_SUBSCRIBERS;
+        }
+        executor.shutdownNow();
+        for (FanoutSubscriber subscriber : closing) {
+            close(subscriber.getSession(), CloseStatus.GOING_AWAY);
+        }
+    }
+
+    public boolean isEmpty() {
+        return active.length == 0;
+    }
+
+    public synchronized void register(WebSocketSession session, List<String> filters, boolean conflate) {
+        FanoutSubscriber previous = subscribers.put(session.getId(), new FanoutSubscriber(session,
+                acquireFilters(filters), conflate, mqttConfig.getFanoutMaxPending()));
+        if (previous != null) {
+            releaseFilters(previous.getFilters());
+        }
+        totalConnections.incrementAndGet();
+        publish();
+        logger.info("WebSocket fan-out connection {} from {} (user {}) subscribed to {}", session.getId(),
+                session.getRemoteAddress(), session.getAttributes().get(FanoutHandshakeInterceptor.USER_ATTRIBUTE),
+                filters);
+    }
+
+    public synchronized void unregister(WebSocketSession session) {
+        FanoutSubscriber subscriber = subscribers.remove(session.getId());
+        if (subscriber != null) {
+            releaseFilters(subscriber.getFilters());
+            closedConflated += subscriber.getConflated();
+            closedDropped += subscriber.getDropped();
+            publish();
+            logger.info("WebSocket fan-out connection {} closed", session.getId());
+        }
+    }
+
+    /**
+     * 替换连接的主题过滤器，之后到达的消息按新过滤器匹配。
+     */
+    public synchronized void updateFilters(WebSocketSession session, List<String> filters) {
+        FanoutSubscriber subscriber = subscribers.get(session.getId());
+        if (subscriber != null) {
+            TopicFilterSet previous = subscriber.getFilters();
+            subscriber.setFilters(acquireFilters(filters));
+            releaseFilters(previous);
+            logger.debug("WebSocket fan-out connection {} subscribed to {}", session.getId(), filters);
+        }
+    }
+
+    /**
+     * 分发一条发布消息。负载只在至少一个连接匹配时才读取和编码。
+     */
+    public void dispatch(String topic, int qos, boolean retain, Supplier<byte[]> payload) {
+        FanoutSubscriber[] current = active;
+        if (current.length == 0) {
+            return;
+        }
+        FanoutFrame frame = null;
+        for (FanoutSubscriber subscriber : current) {
+            if (!subscriber.accepts(topic)) {
+                continue;
+            }
+            if (frame == null) {
+                frame = encode(topic, qos, retain, payload.get());
+                encoded.incrementAndGet();
+            }
+            frames.incrementAndGet();
+            if (subscriber.enqueue(topic, frame)) {
+                schedule(subscriber);
+            }
+        }
+    }
+
+    public Map<String, Object> getStats(boolean includeConnections) {
+        FanoutSubscriber[] current = active;
+        long conflated;
+        long dropped;
+        int sharedFilterSets;
+        synchronized (this) {
+            conflated = closedConflated;
+            dropped = closedDropped;
+            sharedFilterSets = filterSets.size();
+        }
+        long pending = 0;
+        int backlogged = 0;
+        int maxPending = 0;
+        List<Map<String, Object>> connections = new ArrayList<>();
+        for (FanoutSubscriber subscriber : current) {
+            Map<String, Object> connection = subscriber.getStats();
+            int depth = (Integer) connection.get("pending");
+            pending += depth;
+            maxPending = Math.max(maxPending, depth);
+            if (depth > 0) {
+                backlogged++;
+            }
+            conflated += (Long) connection.get("conflated");
+            dropped += (Long) connection.get("dropped");
+            if (includeConnections) {
+                connections.add(connection);
+            }
+        }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("connections", current.length);
+        stats.put("filterSets", sharedFilterSets);
+        stats.put("totalConnections", totalConnections.get());
+        stats.put("encoded", encoded.get());
+        stats.put("frames", frames.get());
+        stats.put("sent", sent.get());
+        stats.put("conflated", conflated);
+        stats.put("dropped", dropped);
+        stats.put("sendErrors", sendErrors.get());
+        stats.put("pending", pending);
+        stats.put("maxPending", maxPending);
+        stats.put("pendingLimit", mqttConfig.getFanoutMaxPending());
+        stats.put("backloggedConnections", backlogged);
+        stats.put("sendLatency", sendLatency.snapshot());
+        if (includeConnections) {
+            stats.put("connectionDetails", connections);
+        }
+        return stats;
+    }
+
+    private void schedule(FanoutSubscriber subscriber) {
+        try {
+            executor.execute(() -> flush(subscriber));
+        } catch (RejectedExecutionException e) {
+            // 正在关闭
+        }
+    }
+
+    // 每次只发送一轮缓冲，之后重新排队，使繁忙连接不会独占发送线程
+    private void flush(FanoutSubscriber subscriber) {
+        List<FanoutFrame> pending = subscriber.drain();
+        if (pending == null) {
+            return;
+        }
+        WebSocketSession session = subscriber.getSession();
+        int count = 0;
+        try {
+            for (FanoutFrame frame : pending) {
+                long start = System.nanoTime();
+                session.sendMessage(frame.toMessage());
+                sendLatency.recordNanos(System.nanoTime() - start);
+                count++;
+            }
+        } catch (IOException | RuntimeException e) {
+            sendErrors.incrementAndGet();
+            logger.debug("WebSocket fan-out send to {} failed: {}", session.getId(), e.getMessage());
+            unregister(session);
+            close(session, CloseStatus.SESSION_NOT_RELIABLE);
+            return;
+        } finally {
+            sent.addAndGet(count);
+            subscriber.onDelivered(count);
+        }
+        schedule(subscriber);
+    }
+
+    // {"topic": ..., "payload": ..., "qos": ..., "retain": ..., "timestamp": ...}，字段名与Node-RED的msg一致
+    private FanoutFrame encode(String topic, int qos, boolean retain, byte[] payload) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length + topic.length() + 64);
+        try (JsonGenerator json = JSON.createGenerator(out)) {
+            json.writeStartObject();
+            json.writeStringField("topic", topic);
+            if (mqttConfig.isFanoutBase64()) {
+                json.writeFieldName("payload");
+                json.writeBinary(payload);
+            } else {
+                json.writeStringField("payload", new String(payload, StandardCharsets.UTF_8));
+            }
+            json.writeNumberField("qos", qos);
+            json.writeBooleanField("retain", retain);
+            json.writeNumberField("timestamp", System.currentTimeMillis());
+            json.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] utf8 = out.toByteArray();
+        return mqttConfig.isFanoutTextFrames() ? FanoutFrame.text(utf8) : FanoutFrame.binary(utf8);
+    }
+
+    private void publish() {
+        active = subscribers.values().toArray(NO_SUBSCRIBERS);
+    }
+
+    // 调用方持有 this 的锁
+    private TopicFilterSet acquireFilters(List<String> filters) {
+        List<String> key = List.copyOf(new TreeSet<>(filters));
+        SharedFilterSet shared = filterSets.computeIfAbsent(key, k -> new SharedFilterSet(topicTable.filterSet(k)));
+        shared.references++;
+        return shared.filterSet;
+    }
+
+    // 调用方持有 this 的锁
+    private void releaseFilters(TopicFilterSet filterSet) {
+        SharedFilterSet shared = filterSets.get(filterSet.getFilters());
+        if (shared != null && shared.filterSet == filterSet && --shared.references == 0) {
+            filterSets.remove(filterSet.getFilters());
+        }
+    }
+
+    private static void close(WebSocketSession session, CloseStatus status) {
+        try {
+            session.close(status);
+        } catch (IOException | RuntimeException e) {
+            // 连接已断开
+        }
+    }
+
+    private static final class SharedFilterSet {
+        final TopicFilterSet filterSet;
+        int references;
+
+        SharedFilterSet(TopicFilterSet filterSet) {
+            this.filterSet = filterSet;
+        }
+    }
+}
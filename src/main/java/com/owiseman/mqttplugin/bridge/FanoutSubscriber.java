@@ -0,0 +1,142 @@
+package com.owiseman.mqttplugin.bridge;
+
+import com.owiseman.mqttplugin.service.TopicFilterSet;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单个WebSocket连接的订阅状态与待发送缓冲。
+ * <p>
+ * 合并模式下每个主题只保留最新一帧，慢连接追上时直接拿到最新值；非合并模式按顺序排队。
+ * 两种模式的缓冲都以 max-pending 为上限，超出时丢弃最旧的一帧。同一时刻最多只有一个发送任务在处理该连接。
+ */
+final class FanoutSubscriber {
+
+    private final WebSocketSession session;
+    private final boolean conflate;
+    private final int maxPending;
+    private final long connectedAt = System.currentTimeMillis();
+    private volatile TopicFilterSet filters;
+
+    // 以下字段由 this 保护
+    private final LinkedHashMap<String, FanoutFrame> latest;
+    private final ArrayDeque<FanoutFrame> queue;
+    private boolean scheduled;
+    private long delivered;
+    private long conflated;
+    private long dropped;
+
+    FanoutSubscriber(WebSocketSession session, TopicFilterSet filters, boolean conflate, int maxPending) {
+        this.session = session;
+        this.filters = filters;
+        this.conflate = conflate;
+        this.maxPending = maxPending;
+        this.latest = conflate ? new LinkedHashMap<>() : null;
+        this.queue = conflate ? null : new ArrayDeque<>();
+    }
+
+    WebSocketSession getSession() {
+        return session;
+    }
+
+    boolean accepts(String topic) {
+        return filters.matches(topic);
+    }
+
+    TopicFilterSet getFilters() {
+        return filters;
+    }
+
+    void setFilters(TopicFilterSet filters) {
+        this.filters = filters;
+    }
+
+    /**
+     * 放入一帧。
+     *
+     * @return 需要为该连接提交发送任务时返回true
+     */
+    synchronized boolean enqueue(String topic, FanoutFrame frame) {
+        if (conflate) {
+            if (latest.put(topic, frame) != null) {
+                conflated++;
+            } else if (latest.size() > maxPending) {
+                Iterator<FanoutFrame> eldest = latest.values().iterator();
+                eldest.next();
+                eldest.remove();
+                dropped++;
+            }
+        } else {
+            if (queue.size() >= maxPending) {
+                queue.poll();
+                dropped++;
+            }
+            queue.add(frame);
+        }
+        if (scheduled) {
+            return false;
+        }
+        scheduled = true;
+        return true;
+    }
+
+    /**
+     * 取出当前缓冲的全部帧；缓冲为空时返回null并结束本轮发送。
+     */
+    synchronized List<FanoutFrame> drain() {
+        if (pendingLocked() == 0) {
+            scheduled = false;
+            return null;
+        }
+        List<FanoutFrame> frames;
+        if (conflate) {
+            frames = new ArrayList<>(latest.values());
+            latest.clear();
+        } else {
+            frames = new ArrayList<>(queue);
+            queue.clear();
+        }
+        return frames;
+    }
+
+    synchronized void onDelivered(int count) {
+        delivered += count;
+    }
+
+    synchronized int pending() {
+        return pendingLocked();
+    }
+
+    synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("id", session.getId());
+        stats.put("remoteAddress", String.valueOf(session.getRemoteAddress()));
+        stats.put("connectedAt", connectedAt);
+        stats.put("topics", String.join(",", filters.getFilters()));
+        stats.put("conflate", conflate);
+        stats.put("pending", pendingLocked());
+        stats.put("delivered", delivered);
+        stats.put("conflated", conflated);
+        stats.put("dropped", dropped);
+        return stats;
+    }
+
+    synchronized long getConflated() {
+        return conflated;
+    }
+
+    synchronized long getDropped() {
+        return dropped;
+    }
+
+    private int pendingLocked() {
+        return conflate ? latest.size() : queue.size();
+    }
+}
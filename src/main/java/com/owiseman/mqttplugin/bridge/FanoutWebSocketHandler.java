@@ -0,0 +1,96 @@
+package com.owiseman.mqttplugin.bridge;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.owiseman.mqttplugin.config.MqttConfig;
+import com.owiseman.mqttplugin.service.TopicMatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Node-RED/浏览器使用的WebSocket扇出端点。
+ * <p>
+ * 连接地址为 {@code ws://host:port/ws/mqtt?topics=a/%23,b/+&conflate=true}，握手认证见
+ * {@link FanoutHandshakeInterceptor}。之后可发送 {@code {"topics": "a/#,b/+"}} 替换订阅。
+ * 每个推送帧为UTF-8 JSON {@code {"topic", "payload", "qos", "retain", "timestamp"}}，默认以二进制帧发送。
+ */
+@Component
+public class FanoutWebSocketHandler extends TextWebSocketHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(FanoutWebSocketHandler.class);
+
+    // Tomcat按会话设置阻塞发送超时的属性名
+    private static final String BLOCKING_SEND_TIMEOUT = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+
+    private final FanoutService fanoutService;
+    private final MqttConfig mqttConfig;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public FanoutWebSocketHandler(FanoutService fanoutService, MqttConfig mqttConfig, ObjectMapper objectMapper) {
+        this.fanoutService = fanoutService;
+        this.mqttConfig = mqttConfig;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        if (session instanceof NativeWebSocketSession) {
+            Object nativeSession = ((NativeWebSocketSession) session).getNativeSession();
+            if (nativeSession instanceof jakarta.websocket.Session) {
+                ((jakarta.websocket.Session) nativeSession).getUserProperties()
+                        .put(BLOCKING_SEND_TIMEOUT, mqttConfig.getFanoutSendTimeoutMillis());
+            }
+        }
+
+        MultiValueMap<String, String> params = session.getUri() != null
+                ? UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams()
+                : null;
+        String topics = params != null ? params.getFirst("topics") : null;
+        String conflate = params != null ? params.getFirst("conflate") : null;
+        fanoutService.register(session,
+                TopicMatcher.parseFilters(topics != null ? UriUtils.decode(topics, StandardCharsets.UTF_8) : null),
+                conflate != null ? Boolean.parseBoolean(conflate) : mqttConfig.isFanoutConflate());
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        List<String> filters;
+        try {
+            JsonNode topics = objectMapper.readTree(message.getPayload()).get("topics");
+            if (topics == null || !topics.isTextual()) {
+                throw new IllegalArgumentException("expected {\"topics\": \"filter,filter\"}");
+            }
+            filters = TopicMatcher.parseFilters(topics.asText());
+        } catch (Exception e) {
+            logger.debug("Invalid message on WebSocket fan-out connection {}: {}", session.getId(), e.getMessage());
+            session.close(CloseStatus.BAD_DATA.withReason("Expected {\"topics\": \"filter,filter\"}"));
+            return;
+        }
+        fanoutService.updateFilters(session, filters);
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        logger.debug("WebSocket fan-out connection {} failed: {}", session.getId(), exception.getMessage());
+        fanoutService.unregister(session);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        fanoutService.unregister(session);
+    }
+}
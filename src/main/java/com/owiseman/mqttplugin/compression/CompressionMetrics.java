@@ -0,0 +1,72 @@
+package com.owiseman.mqttplugin.compression;
+
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 记录各压缩编解码器的压缩率和耗时，键为 "grpc:gzip"、"payload:zstd" 这样的名称。
+ */
+@Component
+public class CompressionMetrics {
+
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+
+    public void recordCompress(String name, long rawBytes, long compressedBytes, long nanos) {
+        Counters c = counters.computeIfAbsent(name, k -> new Counters());
+        c.compressCalls.increment();
+        c.rawBytes.add(rawBytes);
+        c.compressedBytes.add(compressedBytes);
+        c.compressNanos.add(nanos);
+    }
+
+    public void recordDecompressCall(String name) {
+        counters.computeIfAbsent(name, k -> new Counters()).decompressCalls.increment();
+    }
+
+    /**
+     * 解压是流式进行的，按读取增量累计字节数和耗时。
+     */
+    public void recordDecompress(String name, long compressedBytes, long rawBytes, long nanos) {
+        Counters c = counters.computeIfAbsent(name, k -> new Counters());
+        c.inflatedCompressedBytes.add(compressedBytes);
+        c.inflatedRawBytes.add(rawBytes);
+        c.decompressNanos.add(nanos);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new HashMap<>();
+        counters.forEach((name, c) -> {
+            long raw = c.rawBytes.sum();
+            long compressed = c.compressedBytes.sum();
+            long inflatedRaw = c.inflatedRawBytes.sum();
+            long inflatedCompressed = c.inflatedCompressedBytes.sum();
+
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("compressCalls", c.compressCalls.sum());
+            entry.put("rawBytes", raw);
+            entry.put("compressedBytes", compressed);
+            entry.put("compressRatio", compressed == 0 ? 0.0 : (double) raw / compressed);
+            entry.put("compressNanosPerMb", raw == 0 ? 0 : (long) ((double) c.compressNanos.sum() * (1 << 20) / raw));
+            entry.put("decompressCalls", c.decompressCalls.sum());
+            entry.put("decompressRatio", inflatedCompressed == 0 ? 0.0 : (double) inflatedRaw / inflatedCompressed);
+            entry.put("decompressNanosPerMb", inflatedRaw == 0 ? 0 : (long) ((double) c.decompressNanos.sum() * (1 << 20) / inflatedRaw));
+            result.put(name, entry);
+        });
+        return result;
+    }
+
+    private static final class Counters {
+        final LongAdder compressCalls = new LongAdder();
+        final LongAdder rawBytes = new LongAdder();
+        final LongAdder compressedBytes = new LongAdder();
+        final LongAdder compressNanos = new LongAdder();
+        final LongAdder decompressCalls = new LongAdder();
+        final LongAdder inflatedCompressedBytes = new LongAdder();
+        final LongAdder inflatedRawBytes = new LongAdder();
+        final LongAdder decompressNanos = new LongAdder();
+    }
+}
@@ -0,0 +1,107 @@
+package com.owiseman.mqttplugin.compression;
+
+import com.owiseman.mqttplugin.config.MqttConfig;
+import io.grpc.Codec;
+import io.grpc.CompressorRegistry;
+import io.grpc.DecompressorRegistry;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * gRPC消息压缩配置：注册gzip/lz4/zstd编解码器，并提供服务端和客户端使用的压缩算法。
+ * <p>
+ * 对端必须注册同名编解码器，否则客户端请求会被拒绝；服务端响应会在客户端未声明支持时自动回退为不压缩。
+ */
+@Component
+public class GrpcCompression {
+
+    private static final Logger logger = LoggerFactory.getLogger(GrpcCompression.class);
+
+    public static final String NONE = "none";
+    private static final List<String> SUPPORTED = List.of(NONE, "identity", "gzip", Lz4Codec.NAME, ZstdCodec.NAME);
+
+    private final CompressorRegistry compressorRegistry;
+    private final DecompressorRegistry decompressorRegistry;
+    private final String serverCompression;
+    private final String clientCompression;
+
+    @Autowired
+    public GrpcCompression(MqttConfig mqttConfig, CompressionMetrics metrics) {
+        this.serverCompression = validate("mqtt.compression.grpc.server", mqttConfig.getGrpcServerCompression());
+        this.clientCompression = validate("mqtt.compression.grpc.client", mqttConfig.getGrpcClientCompression());
+
+        Codec gzip = new MeteredCodec(new Codec.Gzip(), "grpc:gzip", metrics);
+        Codec lz4 = new MeteredCodec(new Lz4Codec(), "grpc:" + Lz4Codec.NAME, metrics);
+        Codec zstd = new MeteredCodec(new ZstdCodec(mqttConfig.getZstdLevel()), "grpc:" + ZstdCodec.NAME, metrics);
+
+        this.compressorRegistry = CompressorRegistry.newEmptyInstance();
+        compressorRegistry.register(gzip);
+        compressorRegistry.register(lz4);
+        compressorRegistry.register(zstd);
+
+        this.decompressorRegistry = DecompressorRegistry.emptyInstance()
+                .with(Codec.Identity.NONE, false)
+                .with(gzip, true)
+                .with(lz4, true)
+                .with(zstd, true);
+
+        logger.info("gRPC compression: server={}, client={}", serverCompression, clientCompression);
+    }
+
+    public CompressorRegistry getCompressorRegistry() {
+        return compressorRegistry;
+    }
+
+    public DecompressorRegistry getDecompressorRegistry() {
+        return decompressorRegistry;
+    }
+
+    /**
+     * 客户端存根使用的压缩算法，为null时表示不压缩。
+     */
+    public String getClientCompression() {
+        return isDisabled(clientCompression) ? null : clientCompression;
+    }
+
+    /**
+     * 为服务端响应设置压缩算法的拦截器。
+     */
+    public ServerInterceptor serverInterceptor() {
+        final String compression = isDisabled(serverCompression) ? null : serverCompression;
+        return new ServerInterceptor() {
+            @Override
+            public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call,
+                                                                         Metadata headers,
+                                                                         ServerCallHandler<ReqT, RespT> next) {
+                if (compression != null) {
+                    call.setCompression(compression);
+                }
+                return next.startCall(call, headers);
+            }
+        };
+    }
+
+    private static boolean isDisabled(String name) {
+        return NONE.equals(name) || "identity".equals(name);
+    }
+
+    private static String validate(String property, String value) {
+        String name = value == null ? NONE : value.trim().toLowerCase();
+        if (name.isEmpty()) {
+            return NONE;
+        }
+        if (!SUPPORTED.contains(name)) {
+            throw new IllegalStateException("Unsupported compression for " + property + ": " + value
+                    + ", expected one of " + SUPPORTED);
+        }
+        return name;
+    }
+}
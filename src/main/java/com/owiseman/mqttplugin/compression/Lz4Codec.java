@@ -0,0 +1,32 @@
+package com.owiseman.mqttplugin.compression;
+
+import io.grpc.Codec;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 基于LZ4帧格式的gRPC编解码器，压缩率低于gzip但CPU开销小得多。
+ */
+public class Lz4Codec implements Codec {
+
+    public static final String NAME = "lz4";
+
+    @Override
+    public String getMessageEncoding() {
+        return NAME;
+    }
+
+    @Override
+    public OutputStream compress(OutputStream os) throws IOException {
+        return new LZ4FrameOutputStream(os);
+    }
+
+    @Override
+    public InputStream decompress(InputStream is) throws IOException {
+        return new LZ4FrameInputStream(is);
+    }
+}
@@ -0,0 +1,164 @@
+package com.owiseman.mqttplugin.compression;
+
+import io.grpc.Codec;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 包装一个编解码器，把压缩前后的字节数和编解码耗时记录到 {@link CompressionMetrics}。
+ */
+public class MeteredCodec implements Codec {
+
+    private final Codec delegate;
+    private final String metricName;
+    private final CompressionMetrics metrics;
+
+    public MeteredCodec(Codec delegate, String metricName, CompressionMetrics metrics) {
+        this.delegate = delegate;
+        this.metricName = metricName;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public String getMessageEncoding() {
+        return delegate.getMessageEncoding();
+    }
+
+    @Override
+    public OutputStream compress(OutputStream os) throws IOException {
+        CountingOutputStream compressed = new CountingOutputStream(os);
+        long start = System.nanoTime();
+        OutputStream inner = delegate.compress(compressed);
+        return new MeteredOutputStream(inner, compressed, System.nanoTime() - start);
+    }
+
+    @Override
+    public InputStream decompress(InputStream is) throws IOException {
+        metrics.recordDecompressCall(metricName);
+        CountingInputStream compressed = new CountingInputStream(is);
+        return new MeteredInputStream(delegate.decompress(compressed), compressed);
+    }
+
+    private final class MeteredOutputStream extends FilterOutputStream {
+        private final CountingOutputStream compressed;
+        private long rawBytes;
+        private long nanos;
+        private boolean closed;
+
+        MeteredOutputStream(OutputStream inner, CountingOutputStream compressed, long setupNanos) {
+            super(inner);
+            this.compressed = compressed;
+            this.nanos = setupNanos;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            long start = System.nanoTime();
+            out.write(b);
+            nanos += System.nanoTime() - start;
+            rawBytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            out.write(b, off, len);
+            nanos += System.nanoTime() - start;
+            rawBytes += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            long start = System.nanoTime();
+            out.close();
+            nanos += System.nanoTime() - start;
+            metrics.recordCompress(metricName, rawBytes, compressed.count, nanos);
+        }
+    }
+
+    private final class MeteredInputStream extends FilterInputStream {
+        private final CountingInputStream compressed;
+        private long reportedCompressed;
+
+        MeteredInputStream(InputStream inner, CountingInputStream compressed) {
+            super(inner);
+            this.compressed = compressed;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int b = in.read();
+            report(b < 0 ? 0 : 1, System.nanoTime() - start);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            int n = in.read(b, off, len);
+            report(Math.max(n, 0), System.nanoTime() - start);
+            return n;
+        }
+
+        private void report(long rawBytes, long nanos) {
+            long compressedDelta = compressed.count - reportedCompressed;
+            reportedCompressed = compressed.count;
+            metrics.recordDecompress(metricName, compressedDelta, rawBytes, nanos);
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.owiseman.mqttplugin.compression;
+
+import com.owiseman.mqttplugin.config.MqttConfig;
+import com.owiseman.mqttplugin.service.TopicFilterSet;
+import com.owiseman.mqttplugin.service.TopicMatcher;
+import com.owiseman.mqttplugin.service.TopicTable;
+import io.grpc.Codec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * 内部发布消息的负载压缩信封。
+ * <p>
+ * 匹配 {@code mqtt.compression.payload.topics} 的主题，在负载不小于 min-size 且压缩后确实变小时，
+ * 负载被替换为 {@code 0x00 'M' 'Z' <codecId>} 头加压缩数据。以0x00开头保证不会与文本或JSON负载混淆，
+ * 订阅端需要先用 {@link #decode(byte[])} 还原。
+ */
+@Component
+public class PayloadCompressor {
+
+    private static final byte[] MAGIC = {0x00, 'M', 'Z'};
+    private static final int HEADER_SIZE = MAGIC.length + 1;
+
+    private static final byte GZIP_ID = 1;
+    private static final byte LZ4_ID = 2;
+    private static final byte ZSTD_ID = 3;
+
+    private final MqttConfig mqttConfig;
+    private final TopicTable topicTable;
+    private volatile TopicFilterSet topicFilters;
+    private volatile int minSize;
+    private final byte codecId;
+    private final Codec[] codecs = new Codec[4];
+
+    @Autowired
+    public PayloadCompressor(MqttConfig mqttConfig, CompressionMetrics metrics, TopicTable topicTable) {
+        this.mqttConfig = mqttConfig;
+        this.topicTable = topicTable;
+        refresh();
+
+        codecs[GZIP_ID] = new MeteredCodec(new Codec.Gzip(), "payload:gzip", metrics);
+        codecs[LZ4_ID] = new MeteredCodec(new Lz4Codec(), "payload:" + Lz4Codec.NAME, metrics);
+        codecs[ZSTD_ID] = new MeteredCodec(new ZstdCodec(mqttConfig.getZstdLevel()), "payload:" + ZstdCodec.NAME, metrics);
+
+        String codec = mqttConfig.getPayloadCompressionCodec().trim().toLowerCase();
+        switch (codec) {
+            case "gzip":
+                codecId = GZIP_ID;
+                break;
+            case Lz4Codec.NAME:
+                codecId = LZ4_ID;
+                break;
+            case ZstdCodec.NAME:
+                codecId = ZSTD_ID;
+                break;
+            default:
+                throw new IllegalStateException("Unsupported mqtt.compression.payload.codec: " + codec);
+        }
+    }
+
+    /**
+     * 重新读取压缩主题与最小长度；编解码器不可热更新，已压缩的负载始终可以解码。
+     */
+    public void refresh() {
+        this.topicFilters = topicTable.filterSet(TopicMatcher.parseFilters(mqttConfig.getPayloadCompressionTopics()));
+        this.minSize = mqttConfig.getPayloadCompressionMinSize();
+    }
+
+    public boolean isEnabled() {
+        return !topicFilters.isEmpty();
+    }
+
+    /**
+     * 按主题配置压缩负载；不匹配或压缩无收益时原样返回。
+     */
+    public byte[] encode(String topic, byte[] payload) {
+        if (payload.length < minSize || !topicFilters.matches(topic)) {
+            return payload;
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(payload.length / 2 + HEADER_SIZE);
+        buffer.write(MAGIC, 0, MAGIC.length);
+        buffer.write(codecId);
+        try (OutputStream out = codecs[codecId].compress(buffer)) {
+            out.write(payload);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return buffer.size() < payload.length ? buffer.toByteArray() : payload;
+    }
+
+    public static boolean isEnvelope(byte[] payload) {
+        return payload.length > HEADER_SIZE
+                && payload[0] == MAGIC[0] && payload[1] == MAGIC[1] && payload[2] == MAGIC[2];
+    }
+
+    /**
+     * 还原压缩信封；不是信封格式时原样返回。
+     */
+    public byte[] decode(byte[] payload) {
+        if (!isEnvelope(payload)) {
+            return payload;
+        }
+        int id = payload[MAGIC.length];
+        if (id < GZIP_ID || id > ZSTD_ID) {
+            return payload;
+        }
+        try (InputStream in = codecs[id].decompress(
+                new ByteArrayInputStream(payload, HEADER_SIZE, payload.length - HEADER_SIZE))) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.owiseman.mqttplugin.compression;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import io.grpc.Codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 基于Zstandard的gRPC编解码器，在较低的CPU开销下获得接近或优于gzip的压缩率。
+ */
+public class ZstdCodec implements Codec {
+
+    public static final String NAME = "zstd";
+
+    private final int level;
+
+    public ZstdCodec(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public String getMessageEncoding() {
+        return NAME;
+    }
+
+    @Override
+    public OutputStream compress(OutputStream os) throws IOException {
+        return new ZstdOutputStream(os, level);
+    }
+
+    @Override
+    public InputStream decompress(InputStream is) throws IOException {
+        return new ZstdInputStream(is);
+    }
+}
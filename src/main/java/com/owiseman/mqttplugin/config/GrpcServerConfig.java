@@ -1,8 +1,18 @@
 package com.owiseman.mqttplugin.config;
 
+import com.owiseman.mqttplugin.compression.GrpcCompression;
+import com.owiseman.mqttplugin.grpc.MqttAdminGrpcService;
 import com.owiseman.mqttplugin.grpc.MqttPluginGrpcService;
 import io.grpc.Server;
-import io.grpc.ServerBuilder;
+import io.grpc.ServerInterceptors;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.netty.shaded.io.netty.channel.ChannelOption;
+import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.epoll.Epoll;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollServerSocketChannel;
+import io.grpc.netty.shaded.io.netty.channel.nio.NioEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.socket.nio.NioServerSocketChannel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,6 +22,8 @@ import org.springframework.context.annotation.Configuration;
 
 import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Configuration
 public class GrpcServerConfig {
@@ -24,17 +36,71 @@ public class GrpcServerConfig {
     @Autowired
     private MqttPluginGrpcService mqttPluginGrpcService;
 
+    @Autowired
+    private MqttAdminGrpcService mqttAdminGrpcService;
+
+    @Autowired
+    private GrpcCompression grpcCompression;
+
+    @Autowired
+    private MqttConfig mqttConfig;
+
+    @Autowired
+    private PerformanceProfile performanceProfile;
+
     private Server server;
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private ExecutorService executor;
+    private boolean started;
 
     @Bean
     public Server grpcServer() throws IOException {
-        logger.info("启动MQTT插件gRPC服务器，监听端口 {}", grpcPort);
+        logger.info("创建MQTT插件gRPC服务器，监听端口 {}", grpcPort);
         
-        server = ServerBuilder.forPort(grpcPort)
-                .addService(mqttPluginGrpcService)
-                .build()
-                .start();
+        // gRPC使用自带的shaded Netty，只支持epoll与NIO
+        NettyServerBuilder builder = NettyServerBuilder.forPort(grpcPort);
+        if (performanceProfile.isBrokerEpoll() && Epoll.isAvailable()) {
+            bossGroup = new EpollEventLoopGroup(mqttConfig.getGrpcBossThreads());
+            workerGroup = new EpollEventLoopGroup(mqttConfig.getGrpcWorkerThreads());
+            builder.channelType(EpollServerSocketChannel.class);
+            performanceProfile.setGrpcTransport("epoll");
+        } else {
+            bossGroup = new NioEventLoopGroup(mqttConfig.getGrpcBossThreads());
+            workerGroup = new NioEventLoopGroup(mqttConfig.getGrpcWorkerThreads());
+            builder.channelType(NioServerSocketChannel.class);
+            performanceProfile.setGrpcTransport("nio");
+        }
+        builder.bossEventLoopGroup(bossGroup)
+                .workerEventLoopGroup(workerGroup)
+                .withOption(ChannelOption.SO_BACKLOG, mqttConfig.getNettySoBacklog())
+                .withChildOption(ChannelOption.TCP_NODELAY, mqttConfig.isNettyTcpNoDelay())
+                .withChildOption(ChannelOption.SO_KEEPALIVE, mqttConfig.isNettySoKeepalive())
+                .flowControlWindow(mqttConfig.getGrpcFlowControlWindow())
+                .maxInboundMessageSize(mqttConfig.getGrpcMaxInboundMessageSize());
+        if (mqttConfig.getGrpcExecutorThreads() > 0) {
+            executor = Executors.newFixedThreadPool(mqttConfig.getGrpcExecutorThreads());
+            builder.executor(executor);
+        }
+
+        // 这里只创建服务器，端口在 start() 中绑定，以便与MQTT监听并行启动，
+        // 也让AppCDS训练运行（spring.context.exit=onRefresh）不占用端口
+        server = builder
+                .addService(ServerInterceptors.intercept(mqttPluginGrpcService, grpcCompression.serverInterceptor()))
+                .addService(ServerInterceptors.intercept(mqttAdminGrpcService, grpcCompression.serverInterceptor()))
+                .compressorRegistry(grpcCompression.getCompressorRegistry())
+                .decompressorRegistry(grpcCompression.getDecompressorRegistry())
+                .build();
         
+        return server;
+    }
+
+    public synchronized void start() throws IOException {
+        if (started) {
+            return;
+        }
+        server.start();
+        started = true;
         logger.info("MQTT插件gRPC服务器已启动，监听端口 {}", grpcPort);
         
         // 在一个新线程中等待终止
@@ -45,8 +111,6 @@ public class GrpcServerConfig {
                 logger.error("gRPC服务器被中断", e);
             }
         }).start();
-        
-        return server;
     }
 
     @PreDestroy
@@ -63,5 +127,12 @@ public class GrpcServerConfig {
             }
             logger.info("gRPC服务器已关闭");
         }
+        if (bossGroup != null) {
+            bossGroup.shutdownGracefully();
+            workerGroup.shutdownGracefully();
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
     }
 }
\ No newline at end of file
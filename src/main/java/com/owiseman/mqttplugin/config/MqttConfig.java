@@ -3,23 +3,25 @@ package com.owiseman.mqttplugin.config;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.List;
+
 @Configuration
 public class MqttConfig {
 
     @Value("${mqtt.host}")
-    private String host;
+    private volatile String host;
 
     @Value("${mqtt.port}")
-    private int port;
+    private volatile int port;
 
     @Value("${mqtt.websocket.port}")
-    private int websocketPort;
+    private volatile int websocketPort;
 
     @Value("${mqtt.allow.anonymous}")
-    private boolean allowAnonymous;
+    private volatile boolean allowAnonymous;
 
     @Value("${mqtt.netty.epoll}")
-    private boolean nettyEpoll;
+    private volatile boolean nettyEpoll;
 
     @Value("${plugin.name}")
     private String pluginName;
@@ -49,6 +51,267 @@ public class MqttConfig {
     @Value("${plugin.grpc.port:8085}")
     private int pluginGrpcPort;
     
+    // 主题历史数据配置
+    @Value("${mqtt.history.enabled:false}")
+    private volatile boolean historyEnabled;
+
+    @Value("${mqtt.history.topics:#}")
+    private volatile String historyTopics;
+
+    @Value("${mqtt.history.value-field:value}")
+    private String historyValueField;
+
+    @Value("${mqtt.history.max-series:10000}")
+    private int historyMaxSeries;
+
+    @Value("${mqtt.history.blocks-per-series:16}")
+    private int historyBlocksPerSeries;
+
+    @Value("${mqtt.history.block-size:4096}")
+    private int historyBlockSize;
+
+    @Value("${mqtt.history.mmap-dir:}")
+    private String historyMmapDir;
+
+    // 压缩配置
+    @Value("${mqtt.compression.grpc.server:none}")
+    private String grpcServerCompression;
+
+    @Value("${mqtt.compression.grpc.client:none}")
+    private String grpcClientCompression;
+
+    @Value("${mqtt.compression.zstd.level:3}")
+    private int zstdLevel;
+
+    @Value("${mqtt.compression.payload.topics:}")
+    private volatile String payloadCompressionTopics;
+
+    @Value("${mqtt.compression.payload.codec:zstd}")
+    private String payloadCompressionCodec;
+
+    @Value("${mqtt.compression.payload.min-size:512}")
+    private volatile int payloadCompressionMinSize;
+
+    // 内部发布优先级通道配置
+    @Value("${mqtt.priority.enabled:false}")
+    private boolean priorityEnabled;
+
+    @Value("${mqtt.priority.control-topics:}")
+    private volatile String priorityControlTopics;
+
+    @Value("${mqtt.priority.control-capacity:10000}")
+    private int priorityControlCapacity;
+
+    @Value("${mqtt.priority.telemetry-capacity:100000}")
+    private int priorityTelemetryCapacity;
+
+    @Value("${mqtt.priority.control-weight:8}")
+    private volatile int priorityControlWeight;
+
+    @Value("${mqtt.priority.drain-timeout-ms:5000}")
+    private long priorityDrainTimeoutMillis;
+
+    // 定时发布配置
+    @Value("${mqtt.schedule.journal-path:data/schedule.journal}")
+    private String scheduleJournalPath;
+
+    @Value("${mqtt.schedule.tick-ms:100}")
+    private long scheduleTickMs;
+
+    @Value("${mqtt.schedule.wheel-size:512}")
+    private int scheduleWheelSize;
+
+    @Value("${mqtt.schedule.max-pending:5000000}")
+    private int scheduleMaxPending;
+
+    @Value("${mqtt.schedule.max-retries:3}")
+    private int scheduleMaxRetries;
+
+    @Value("${mqtt.schedule.retry-delay-ms:30000}")
+    private long scheduleRetryDelayMs;
+
+    @Value("${mqtt.schedule.compact-threshold:100000}")
+    private long scheduleCompactThreshold;
+
+    // 连接准入控制配置
+    @Value("${mqtt.admission.enabled:false}")
+    private boolean admissionEnabled;
+
+    @Value("${mqtt.admission.internal-port:11883}")
+    private int admissionInternalPort;
+
+    @Value("${mqtt.admission.internal-websocket-port:18083}")
+    private int admissionInternalWebsocketPort;
+
+    @Value("${mqtt.admission.rate-per-second:500}")
+    private volatile double admissionRatePerSecond;
+
+    @Value("${mqtt.admission.burst:1000}")
+    private volatile double admissionBurst;
+
+    @Value("${mqtt.admission.max-pending:2000}")
+    private volatile int admissionMaxPending;
+
+    @Value("${mqtt.admission.max-delay-ms:30000}")
+    private volatile long admissionMaxDelayMillis;
+
+    @Value("${mqtt.admission.pending-timeout-ms:10000}")
+    private long admissionPendingTimeoutMillis;
+
+    @Value("${mqtt.admission.backlog:8192}")
+    private int admissionBacklog;
+
+    // 认证与拦截器配置（可热更新）
+    @Value("${mqtt.auth.users:}")
+    private volatile String authUsers;
+
+    @Value("${mqtt.interceptors.disabled:}")
+    private volatile String interceptorsDisabled;
+
+    // 会话持久化目录，为空时会话仅保存在内存中，重启后丢失
+    @Value("${mqtt.persistence.path:}")
+    private String persistencePath;
+
+    // 性能配置：传输层、内存分配器与socket参数
+    @Value("${mqtt.netty.transport:}")
+    private volatile String nettyTransport;
+
+    @Value("${mqtt.netty.boss-threads:1}")
+    private int nettyBossThreads;
+
+    @Value("${mqtt.netty.worker-threads:0}")
+    private int nettyWorkerThreads;
+
+    @Value("${mqtt.netty.allocator:pooled}")
+    private String nettyAllocator;
+
+    @Value("${mqtt.netty.prefer-direct:true}")
+    private boolean nettyPreferDirect;
+
+    @Value("${mqtt.netty.direct-arenas:0}")
+    private int nettyDirectArenas;
+
+    @Value("${mqtt.netty.so-backlog:1024}")
+    private int nettySoBacklog;
+
+    @Value("${mqtt.netty.tcp-nodelay:true}")
+    private boolean nettyTcpNoDelay;
+
+    @Value("${mqtt.netty.so-keepalive:true}")
+    private boolean nettySoKeepalive;
+
+    @Value("${mqtt.netty.write-buffer-low:32768}")
+    private int nettyWriteBufferLow;
+
+    @Value("${mqtt.netty.write-buffer-high:65536}")
+    private int nettyWriteBufferHigh;
+
+    @Value("${mqtt.grpc.server.boss-threads:1}")
+    private int grpcBossThreads;
+
+    @Value("${mqtt.grpc.server.worker-threads:0}")
+    private int grpcWorkerThreads;
+
+    @Value("${mqtt.grpc.server.executor-threads:0}")
+    private int grpcExecutorThreads;
+
+    @Value("${mqtt.grpc.server.flow-control-window:1048576}")
+    private int grpcFlowControlWindow;
+
+    // WatchStats 的采样周期
+    @Value("${mqtt.grpc.stats.tick-ms:1000}")
+    private long grpcStatsTickMillis;
+
+    @Value("${mqtt.grpc.server.max-inbound-message-size:4194304}")
+    private int grpcMaxInboundMessageSize;
+
+    // 启动配置：快速启动时MQTT与gRPC监听并行启动，插件注册在后台进行
+    @Value("${mqtt.startup.fast:true}")
+    private boolean startupFast;
+
+    @Value("${mqtt.startup.registration-attempts:5}")
+    private int startupRegistrationAttempts;
+
+    @Value("${mqtt.startup.report-path:}")
+    private String startupReportPath;
+
+    @Value("${mqtt.startup.exit-after-ready:false}")
+    private boolean startupExitAfterReady;
+
+    // 主题驻留表容量，驻留的主题不会释放，超出后新主题不再驻留
+    @Value("${mqtt.topics.intern-capacity:65536}")
+    private int topicInternCapacity;
+
+    // 借用MQTT 5语义、在插件层实现（代理仍为MQTT 3.1.1）：消息过期与单主题排队上限只作用于插件的发布通道，
+    // 离线会话过期由 SessionExpiryService 执行；0表示不限制
+    @Value("${mqtt.mqtt5.message-expiry-seconds:0}")
+    private long messageExpirySeconds;
+
+    @Value("${mqtt.mqtt5.max-message-expiry-seconds:0}")
+    private long maxMessageExpirySeconds;
+
+    @Value("${mqtt.mqtt5.receive-maximum:1000}")
+    private int receiveMaximum;
+
+    @Value("${mqtt.mqtt5.session-expiry-seconds:0}")
+    private long sessionExpirySeconds;
+
+    // 持久会话消息队列上限，0表示不限制；policy为 drop-oldest、drop-newest（超限时丢弃消息）或 none（不限制）
+    @Value("${mqtt.offline-queue.max-messages:10000}")
+    private int offlineQueueMaxMessages;
+
+    @Value("${mqtt.offline-queue.max-bytes:16777216}")
+    private long offlineQueueMaxBytes;
+
+    @Value("${mqtt.offline-queue.policy:drop-oldest}")
+    private String offlineQueuePolicy;
+
+    // HTTP投递目标会向配置的地址发请求：默认关闭，目标地址的主机与协议须在白名单内
+    @Value("${mqtt.sink.enabled:false}")
+    private boolean sinkEnabled;
+
+    @Value("${mqtt.sink.allowed-hosts:}")
+    private String sinkAllowedHosts;
+
+    @Value("${mqtt.sink.allowed-schemes:https}")
+    private String sinkAllowedSchemes;
+
+    // HTTP投递目标数量上限，以及移除/替换目标时等待排队消息发送完的时间
+    @Value("${mqtt.sink.max-sinks:16}")
+    private int sinkMaxSinks;
+
+    @Value("${mqtt.sink.drain-timeout-ms:5000}")
+    private long sinkDrainTimeoutMillis;
+
+    // WebSocket扇出端点：默认关闭，握手需 mqtt.auth.users 中的凭据；allowed-origins 为空时只允许同源；
+    // 每个连接的待发送上限、默认是否按主题合并、发送线程数、阻塞发送超时与帧类型
+    @Value("${mqtt.fanout.enabled:false}")
+    private boolean fanoutEnabled;
+
+    @Value("${mqtt.fanout.path:/ws/mqtt}")
+    private String fanoutPath;
+
+    @Value("${mqtt.fanout.allowed-origins:}")
+    private String fanoutAllowedOrigins;
+
+    @Value("${mqtt.fanout.max-pending:1000}")
+    private int fanoutMaxPending;
+
+    @Value("${mqtt.fanout.conflate:true}")
+    private boolean fanoutConflate;
+
+    @Value("${mqtt.fanout.threads:2}")
+    private int fanoutThreads;
+
+    @Value("${mqtt.fanout.send-timeout-ms:5000}")
+    private long fanoutSendTimeoutMillis;
+
+    @Value("${mqtt.fanout.encoding:text}")
+    private String fanoutEncoding;
+
+    @Value("${mqtt.fanout.frame-type:binary}")
+    private String fanoutFrameType;
+
     public int getPluginGrpcPort() {
         return pluginGrpcPort;
     }
@@ -104,4 +367,427 @@ public class MqttConfig {
     public int getDataApiPort() {
         return dataApiPort;
     }
+
+    public boolean isHistoryEnabled() {
+        return historyEnabled;
+    }
+
+    public String getHistoryTopics() {
+        return historyTopics;
+    }
+
+    public String getHistoryValueField() {
+        return historyValueField;
+    }
+
+    public int getHistoryMaxSeries() {
+        return historyMaxSeries;
+    }
+
+    public int getHistoryBlocksPerSeries() {
+        return historyBlocksPerSeries;
+    }
+
+    public int getHistoryBlockSize() {
+        return historyBlockSize;
+    }
+
+    public String getHistoryMmapDir() {
+        return historyMmapDir;
+    }
+
+    public String getGrpcServerCompression() {
+        return grpcServerCompression;
+    }
+
+    public String getGrpcClientCompression() {
+        return grpcClientCompression;
+    }
+
+    public int getZstdLevel() {
+        return zstdLevel;
+    }
+
+    public String getPayloadCompressionTopics() {
+        return payloadCompressionTopics;
+    }
+
+    public String getPayloadCompressionCodec() {
+        return payloadCompressionCodec;
+    }
+
+    public int getPayloadCompressionMinSize() {
+        return payloadCompressionMinSize;
+    }
+
+    public boolean isPriorityEnabled() {
+        return priorityEnabled;
+    }
+
+    public String getPriorityControlTopics() {
+        return priorityControlTopics;
+    }
+
+    public int getPriorityControlCapacity() {
+        return priorityControlCapacity;
+    }
+
+    public int getPriorityTelemetryCapacity() {
+        return priorityTelemetryCapacity;
+    }
+
+    public int getPriorityControlWeight() {
+        return priorityControlWeight;
+    }
+
+    public long getPriorityDrainTimeoutMillis() {
+        return priorityDrainTimeoutMillis;
+    }
+
+    public String getScheduleJournalPath() {
+        return scheduleJournalPath;
+    }
+
+    public long getScheduleTickMs() {
+        return scheduleTickMs;
+    }
+
+    public int getScheduleWheelSize() {
+        return scheduleWheelSize;
+    }
+
+    public int getScheduleMaxPending() {
+        return scheduleMaxPending;
+    }
+
+    public int getScheduleMaxRetries() {
+        return scheduleMaxRetries;
+    }
+
+    public long getScheduleRetryDelayMs() {
+        return scheduleRetryDelayMs;
+    }
+
+    public long getScheduleCompactThreshold() {
+        return scheduleCompactThreshold;
+    }
+
+    public boolean isAdmissionEnabled() {
+        return admissionEnabled;
+    }
+
+    public int getAdmissionInternalPort() {
+        return admissionInternalPort;
+    }
+
+    public int getAdmissionInternalWebsocketPort() {
+        return admissionInternalWebsocketPort;
+    }
+
+    public double getAdmissionRatePerSecond() {
+        return admissionRatePerSecond;
+    }
+
+    public double getAdmissionBurst() {
+        return admissionBurst;
+    }
+
+    public int getAdmissionMaxPending() {
+        return admissionMaxPending;
+    }
+
+    public long getAdmissionMaxDelayMillis() {
+        return admissionMaxDelayMillis;
+    }
+
+    public long getAdmissionPendingTimeoutMillis() {
+        return admissionPendingTimeoutMillis;
+    }
+
+    public int getAdmissionBacklog() {
+        return admissionBacklog;
+    }
+
+    public String getAuthUsers() {
+        return authUsers;
+    }
+
+    public String getInterceptorsDisabled() {
+        return interceptorsDisabled;
+    }
+
+    public String getPersistencePath() {
+        return persistencePath;
+    }
+
+    public String getNettyTransport() {
+        return nettyTransport;
+    }
+
+    public int getNettyBossThreads() {
+        return nettyBossThreads;
+    }
+
+    public int getNettyWorkerThreads() {
+        return nettyWorkerThreads;
+    }
+
+    public String getNettyAllocator() {
+        return nettyAllocator;
+    }
+
+    public boolean isNettyPreferDirect() {
+        return nettyPreferDirect;
+    }
+
+    public int getNettyDirectArenas() {
+        return nettyDirectArenas;
+    }
+
+    public int getNettySoBacklog() {
+        return nettySoBacklog;
+    }
+
+    public boolean isNettyTcpNoDelay() {
+        return nettyTcpNoDelay;
+    }
+
+    public boolean isNettySoKeepalive() {
+        return nettySoKeepalive;
+    }
+
+    public int getNettyWriteBufferLow() {
+        return nettyWriteBufferLow;
+    }
+
+    public int getNettyWriteBufferHigh() {
+        return nettyWriteBufferHigh;
+    }
+
+    public int getGrpcBossThreads() {
+        return grpcBossThreads;
+    }
+
+    public int getGrpcWorkerThreads() {
+        return grpcWorkerThreads;
+    }
+
+    public int getGrpcExecutorThreads() {
+        return grpcExecutorThreads;
+    }
+
+    public int getGrpcFlowControlWindow() {
+        return grpcFlowControlWindow;
+    }
+
+    public int getGrpcMaxInboundMessageSize() {
+        return grpcMaxInboundMessageSize;
+    }
+
+    public boolean isStartupFast() {
+        return startupFast;
+    }
+
+    public int getStartupRegistrationAttempts() {
+        return startupRegistrationAttempts;
+    }
+
+    public String getStartupReportPath() {
+        return startupReportPath;
+    }
+
+    public boolean isStartupExitAfterReady() {
+        return startupExitAfterReady;
+    }
+
+    public long getGrpcStatsTickMillis() {
+        return grpcStatsTickMillis;
+    }
+
+    public int getTopicInternCapacity() {
+        return topicInternCapacity;
+    }
+
+    public long getMessageExpirySeconds() {
+        return messageExpirySeconds;
+    }
+
+    public long getMaxMessageExpirySeconds() {
+        return maxMessageExpirySeconds;
+    }
+
+    public int getReceiveMaximum() {
+        return receiveMaximum;
+    }
+
+    public long getSessionExpirySeconds() {
+        return sessionExpirySeconds;
+    }
+
+    public int getOfflineQueueMaxMessages() {
+        return offlineQueueMaxMessages;
+    }
+
+    public long getOfflineQueueMaxBytes() {
+        return offlineQueueMaxBytes;
+    }
+
+    public String getOfflineQueuePolicy() {
+        return offlineQueuePolicy;
+    }
+
+    public boolean isSinkEnabled() {
+        return sinkEnabled;
+    }
+
+    public String getSinkAllowedHosts() {
+        return sinkAllowedHosts;
+    }
+
+    public String getSinkAllowedSchemes() {
+        return sinkAllowedSchemes;
+    }
+
+    public int getSinkMaxSinks() {
+        return sinkMaxSinks;
+    }
+
+    public long getSinkDrainTimeoutMillis() {
+        return sinkDrainTimeoutMillis;
+    }
+
+    public boolean isFanoutEnabled() {
+        return fanoutEnabled;
+    }
+
+    public String getFanoutPath() {
+        return fanoutPath;
+    }
+
+    public String getFanoutAllowedOrigins() {
+        return fanoutAllowedOrigins;
+    }
+
+    public int getFanoutMaxPending() {
+        return fanoutMaxPending;
+    }
+
+    public boolean isFanoutConflate() {
+        return fanoutConflate;
+    }
+
+    public int getFanoutThreads() {
+        return fanoutThreads;
+    }
+
+    public long getFanoutSendTimeoutMillis() {
+        return fanoutSendTimeoutMillis;
+    }
+
+    public boolean isFanoutBase64() {
+        return "base64".equalsIgnoreCase(fanoutEncoding);
+    }
+
+    public boolean isFanoutTextFrames() {
+        return "text".equalsIgnoreCase(fanoutFrameType);
+    }
+
+    /**
+     * 运行时可修改的配置项。监听相关的配置项需要平滑重启代理才能生效，其余配置项立即生效。
+     */
+    public static final List<String> LISTENER_KEYS = List.of(
+            "mqtt.host", "mqtt.port", "mqtt.websocket.port", "mqtt.netty.epoll", "mqtt.netty.transport",
+            "mqtt.allow.anonymous");
+
+    public static final List<String> HOT_KEYS = List.of(
+            "mqtt.admission.rate-per-second", "mqtt.admission.burst",
+            "mqtt.admission.max-pending", "mqtt.admission.max-delay-ms",
+            "mqtt.priority.control-topics", "mqtt.priority.control-weight",
+            "mqtt.history.enabled", "mqtt.history.topics",
+            "mqtt.compression.payload.topics", "mqtt.compression.payload.min-size",
+            "mqtt.auth.users", "mqtt.interceptors.disabled");
+
+    public String getRuntimeValue(String key) {
+        switch (key) {
+            case "mqtt.host": return host;
+            case "mqtt.port": return String.valueOf(port);
+            case "mqtt.websocket.port": return String.valueOf(websocketPort);
+            case "mqtt.netty.epoll": return String.valueOf(nettyEpoll);
+            case "mqtt.netty.transport": return nettyTransport;
+            case "mqtt.allow.anonymous": return String.valueOf(allowAnonymous);
+            case "mqtt.admission.rate-per-second": return String.valueOf(admissionRatePerSecond);
+            case "mqtt.admission.burst": return String.valueOf(admissionBurst);
+            case "mqtt.admission.max-pending": return String.valueOf(admissionMaxPending);
+            case "mqtt.admission.max-delay-ms": return String.valueOf(admissionMaxDelayMillis);
+            case "mqtt.priority.control-topics": return priorityControlTopics;
+            case "mqtt.priority.control-weight": return String.valueOf(priorityControlWeight);
+            case "mqtt.history.enabled": return String.valueOf(historyEnabled);
+            case "mqtt.history.topics": return historyTopics;
+            case "mqtt.compression.payload.topics": return payloadCompressionTopics;
+            case "mqtt.compression.payload.min-size": return String.valueOf(payloadCompressionMinSize);
+            case "mqtt.auth.users": return authUsers;
+            case "mqtt.interceptors.disabled": return interceptorsDisabled;
+            default: throw new IllegalArgumentException("Configuration key cannot be changed at runtime: " + key);
+        }
+    }
+
+    public void setRuntimeValue(String key, String value) {
+        String v = value == null ? "" : value.trim();
+        switch (key) {
+            case "mqtt.host": host = v; break;
+            case "mqtt.port": port = parsePort(key, v); break;
+            case "mqtt.websocket.port": websocketPort = parsePort(key, v); break;
+            case "mqtt.netty.epoll": nettyEpoll = parseBoolean(key, v); break;
+            case "mqtt.netty.transport":
+                if (!v.isEmpty()) {
+                    NettyTransport.parse(v);
+                }
+                nettyTransport = v;
+                break;
+            case "mqtt.allow.anonymous": allowAnonymous = parseBoolean(key, v); break;
+            case "mqtt.admission.rate-per-second": admissionRatePerSecond = parsePositive(key, Double.parseDouble(v)); break;
+            case "mqtt.admission.burst": admissionBurst = parseAtLeastOne(key, Double.parseDouble(v)); break;
+            case "mqtt.admission.max-pending": admissionMaxPending = (int) parsePositive(key, Integer.parseInt(v)); break;
+            case "mqtt.admission.max-delay-ms": admissionMaxDelayMillis = Long.parseLong(v); break;
+            case "mqtt.priority.control-topics": priorityControlTopics = v; break;
+            case "mqtt.priority.control-weight": priorityControlWeight = (int) parsePositive(key, Integer.parseInt(v)); break;
+            case "mqtt.history.enabled": historyEnabled = parseBoolean(key, v); break;
+            case "mqtt.history.topics": historyTopics = v; break;
+            case "mqtt.compression.payload.topics": payloadCompressionTopics = v; break;
+            case "mqtt.compression.payload.min-size": payloadCompressionMinSize = Integer.parseInt(v); break;
+            case "mqtt.auth.users": authUsers = v; break;
+            case "mqtt.interceptors.disabled": interceptorsDisabled = v; break;
+            default: throw new IllegalArgumentException("Configuration key cannot be changed at runtime: " + key);
+        }
+    }
+
+    private static boolean parseBoolean(String key, String value) {
+        if (!"true".equalsIgnoreCase(value) && !"false".equalsIgnoreCase(value)) {
+            throw new IllegalArgumentException(key + " must be true or false");
+        }
+        return Boolean.parseBoolean(value);
+    }
+
+    private static int parsePort(String key, String value) {
+        int port = Integer.parseInt(value);
+        if (port < 1 || port > 65535) {
+            throw new IllegalArgumentException(key + " must be a valid port");
+        }
+        return port;
+    }
+
+    // 令牌桶每次放行消耗一个令牌，突发容量小于1时永远无法放行
+    private static double parseAtLeastOne(String key, double value) {
+        if (!(value >= 1)) {
+            throw new IllegalArgumentException(key + " must be at least 1");
+        }
+        return value;
+    }
+
+    private static double parsePositive(String key, double value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(key + " must be positive");
+        }
+        return value;
+    }
 }
\ No newline at end of file
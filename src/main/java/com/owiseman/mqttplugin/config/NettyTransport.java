@@ -0,0 +1,115 @@
+package com.owiseman.mqttplugin.config;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+/**
+ * 网关使用的Netty传输层。
+ * <p>
+ * io_uring 来自 netty-incubator-transport-native-io_uring，仅在使用 {@code io-uring} Maven profile
+ * 构建时存在，因此通过反射加载；类不存在或内核不支持时视为不可用。
+ */
+public enum NettyTransport {
+
+    NIO,
+    EPOLL,
+    IO_URING;
+
+    private static final String IO_URING_PACKAGE = "io.netty.incubator.channel.uring.";
+
+    /**
+     * 解析配置值：auto/nio/epoll/io_uring，大小写不敏感；auto返回null，表示选择可用的最优传输层。
+     */
+    public static NettyTransport parse(String value) {
+        String normalized = value == null ? "" : value.trim().toLowerCase().replace('-', '_');
+        switch (normalized) {
+            case "auto":
+                return null;
+            case "nio":
+                return NIO;
+            case "epoll":
+                return EPOLL;
+            case "io_uring":
+            case "iouring":
+                return IO_URING;
+            default:
+                throw new IllegalArgumentException("Unsupported netty transport: " + value + " (auto, nio, epoll, io_uring)");
+        }
+    }
+
+    public String getName() {
+        return name().toLowerCase();
+    }
+
+    public boolean isAvailable() {
+        switch (this) {
+            case EPOLL:
+                return Epoll.isAvailable();
+            case IO_URING:
+                try {
+                    return (Boolean) Class.forName(IO_URING_PACKAGE + "IOUring").getMethod("isAvailable").invoke(null);
+                } catch (ReflectiveOperationException | LinkageError e) {
+                    return false;
+                }
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * @param threads 线程数，0表示使用Netty默认值（CPU核数 * 2）
+     */
+    public EventLoopGroup newEventLoopGroup(int threads) {
+        switch (this) {
+            case EPOLL:
+                return new EpollEventLoopGroup(threads);
+            case IO_URING:
+                try {
+                    return (EventLoopGroup) Class.forName(IO_URING_PACKAGE + "IOUringEventLoopGroup")
+                            .getConstructor(int.class).newInstance(threads);
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("io_uring transport not available", e);
+                }
+            default:
+                return new NioEventLoopGroup(threads);
+        }
+    }
+
+    public Class<? extends ServerChannel> serverChannelClass() {
+        switch (this) {
+            case EPOLL:
+                return EpollServerSocketChannel.class;
+            case IO_URING:
+                return loadChannelClass("IOUringServerSocketChannel").asSubclass(ServerChannel.class);
+            default:
+                return NioServerSocketChannel.class;
+        }
+    }
+
+    public Class<? extends Channel> channelClass() {
+        switch (this) {
+            case EPOLL:
+                return EpollSocketChannel.class;
+            case IO_URING:
+                return loadChannelClass("IOUringSocketChannel");
+            default:
+                return NioSocketChannel.class;
+        }
+    }
+
+    private static Class<? extends Channel> loadChannelClass(String name) {
+        try {
+            return Class.forName(IO_URING_PACKAGE + name).asSubclass(Channel.class);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("io_uring transport not available", e);
+        }
+    }
+}
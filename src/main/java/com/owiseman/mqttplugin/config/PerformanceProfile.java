@@ -0,0 +1,215 @@
+package com.owiseman.mqttplugin.config;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.util.internal.PlatformDependent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * 代理与gRPC服务器的性能配置：传输层选择、内存分配器与socket参数。
+ * <p>
+ * Moquette只能通过配置项选择epoll/NIO并设置部分socket参数，事件循环线程数与分配器只能通过Netty的系统属性设置，
+ * 因此这里在Netty首次分配内存之前写入系统属性（JVM启动参数中显式给出的值优先）。
+ * {@link #getEffectiveSettings()} 返回的是实际生效的值，而不是配置值。
+ */
+@Component
+public class PerformanceProfile {
+
+    private static final Logger logger = LoggerFactory.getLogger(PerformanceProfile.class);
+
+    private final MqttConfig mqttConfig;
+    private volatile String grpcTransport = "none";
+    private volatile boolean fallbackLogged;
+
+    @Autowired
+    public PerformanceProfile(MqttConfig mqttConfig) {
+        this.mqttConfig = mqttConfig;
+        validate();
+        applySystemProperties();
+        logger.info("Netty transport {} (requested: {}), allocator {}", getTransport().getName(),
+                getRequestedTransportName(), ByteBufAllocator.DEFAULT.getClass().getSimpleName());
+    }
+
+    /**
+     * 实际使用的传输层。请求的传输层不可用时依次回退到epoll、NIO。
+     */
+    public NettyTransport getTransport() {
+        NettyTransport requested = getRequestedTransport();
+        if (requested == null) {
+            // auto：选择可用的最优传输层
+            for (NettyTransport candidate : new NettyTransport[]{NettyTransport.IO_URING, NettyTransport.EPOLL}) {
+                if (candidate.isAvailable()) {
+                    return candidate;
+                }
+            }
+            return NettyTransport.NIO;
+        }
+        if (requested.isAvailable()) {
+            return requested;
+        }
+        NettyTransport fallback = requested == NettyTransport.IO_URING && NettyTransport.EPOLL.isAvailable()
+                ? NettyTransport.EPOLL : NettyTransport.NIO;
+        if (!fallbackLogged) {
+            fallbackLogged = true;
+            logger.warn("Netty transport {} not available on this host, using {}", requested.getName(), fallback.getName());
+        }
+        return fallback;
+    }
+
+    /**
+     * Moquette只支持epoll与NIO：io_uring对代理自身退化为epoll，对准入网关仍然生效。
+     */
+    public boolean isBrokerEpoll() {
+        NettyTransport transport = getTransport();
+        return (transport == NettyTransport.EPOLL || transport == NettyTransport.IO_URING) && NettyTransport.EPOLL.isAvailable();
+    }
+
+    public void applyBrokerProperties(Properties properties) {
+        properties.setProperty("netty.epoll", String.valueOf(isBrokerEpoll()));
+        properties.setProperty("netty.so_backlog", String.valueOf(mqttConfig.getNettySoBacklog()));
+        properties.setProperty("netty.tcp_nodelay", String.valueOf(mqttConfig.isNettyTcpNoDelay()));
+        properties.setProperty("netty.so_keepalive", String.valueOf(mqttConfig.isNettySoKeepalive()));
+    }
+
+    public boolean isTcpNoDelay() {
+        return mqttConfig.isNettyTcpNoDelay();
+    }
+
+    public boolean isSoKeepalive() {
+        return mqttConfig.isNettySoKeepalive();
+    }
+
+    public ByteBufAllocator getAllocator() {
+        return "unpooled".equals(mqttConfig.getNettyAllocator())
+                ? new UnpooledByteBufAllocator(PlatformDependent.directBufferPreferred())
+                : PooledByteBufAllocator.DEFAULT;
+    }
+
+    public WriteBufferWaterMark getWriteBufferWaterMark() {
+        return new WriteBufferWaterMark(mqttConfig.getNettyWriteBufferLow(), mqttConfig.getNettyWriteBufferHigh());
+    }
+
+    public void setGrpcTransport(String grpcTransport) {
+        this.grpcTransport = grpcTransport;
+    }
+
+    public Map<String, Object> getEffectiveSettings() {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("transport", getTransport().getName());
+        settings.put("requestedTransport", getRequestedTransportName());
+        settings.put("brokerEpoll", isBrokerEpoll());
+        settings.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+
+        ByteBufAllocator allocator = ByteBufAllocator.DEFAULT;
+        Map<String, Object> allocatorSettings = new LinkedHashMap<>();
+        allocatorSettings.put("type", allocator.getClass().getSimpleName());
+        allocatorSettings.put("preferDirect", PlatformDependent.directBufferPreferred());
+        if (allocator instanceof PooledByteBufAllocator) {
+            PooledByteBufAllocator pooled = (PooledByteBufAllocator) allocator;
+            allocatorSettings.put("directArenas", pooled.metric().numDirectArenas());
+            allocatorSettings.put("heapArenas", pooled.metric().numHeapArenas());
+            allocatorSettings.put("chunkSize", pooled.metric().chunkSize());
+            allocatorSettings.put("usedDirectMemory", pooled.metric().usedDirectMemory());
+        }
+        settings.put("allocator", allocatorSettings);
+
+        Map<String, Object> socket = new LinkedHashMap<>();
+        socket.put("soBacklog", mqttConfig.getNettySoBacklog());
+        socket.put("tcpNoDelay", mqttConfig.isNettyTcpNoDelay());
+        socket.put("soKeepalive", mqttConfig.isNettySoKeepalive());
+        socket.put("writeBufferLow", mqttConfig.getNettyWriteBufferLow());
+        socket.put("writeBufferHigh", mqttConfig.getNettyWriteBufferHigh());
+        settings.put("socket", socket);
+
+        Map<String, Object> eventLoops = new LinkedHashMap<>();
+        eventLoops.put("boss", mqttConfig.getNettyBossThreads());
+        eventLoops.put("worker", effectiveThreads(mqttConfig.getNettyWorkerThreads()));
+        eventLoops.put("brokerWorker", effectiveThreads(Integer.getInteger("io.netty.eventLoopThreads", 0)));
+        settings.put("eventLoops", eventLoops);
+
+        Map<String, Object> grpc = new LinkedHashMap<>();
+        grpc.put("transport", grpcTransport);
+        grpc.put("bossThreads", mqttConfig.getGrpcBossThreads());
+        grpc.put("workerThreads", effectiveThreads(mqttConfig.getGrpcWorkerThreads()));
+        grpc.put("executorThreads", mqttConfig.getGrpcExecutorThreads() > 0 ? mqttConfig.getGrpcExecutorThreads() : "cached");
+        grpc.put("flowControlWindow", mqttConfig.getGrpcFlowControlWindow());
+        grpc.put("maxInboundMessageSize", mqttConfig.getGrpcMaxInboundMessageSize());
+        settings.put("grpc", grpc);
+        return settings;
+    }
+
+    private NettyTransport getRequestedTransport() {
+        String transport = mqttConfig.getNettyTransport();
+        if (transport == null || transport.isBlank()) {
+            // 兼容旧配置：未设置transport时按 mqtt.netty.epoll 选择
+            return mqttConfig.isNettyEpoll() ? NettyTransport.EPOLL : NettyTransport.NIO;
+        }
+        return NettyTransport.parse(transport);
+    }
+
+    private String getRequestedTransportName() {
+        NettyTransport requested = getRequestedTransport();
+        return requested == null ? "auto" : requested.getName();
+    }
+
+    private static int effectiveThreads(int configured) {
+        return configured > 0 ? configured : Runtime.getRuntime().availableProcessors() * 2;
+    }
+
+    private void validate() {
+        try {
+            getRequestedTransport();
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Invalid mqtt.netty.transport: " + e.getMessage());
+        }
+        String allocator = mqttConfig.getNettyAllocator();
+        if (!"pooled".equals(allocator) && !"unpooled".equals(allocator)) {
+            throw new IllegalStateException("mqtt.netty.allocator must be pooled or unpooled");
+        }
+        if (mqttConfig.getNettyBossThreads() < 1) {
+            throw new IllegalStateException("mqtt.netty.boss-threads must be at least 1");
+        }
+        if (mqttConfig.getNettyWorkerThreads() < 0 || mqttConfig.getNettyDirectArenas() < 0) {
+            throw new IllegalStateException("mqtt.netty.worker-threads and mqtt.netty.direct-arenas must not be negative");
+        }
+        if (mqttConfig.getNettySoBacklog() < 1) {
+            throw new IllegalStateException("mqtt.netty.so-backlog must be positive");
+        }
+        if (mqttConfig.getNettyWriteBufferLow() < 1 || mqttConfig.getNettyWriteBufferLow() > mqttConfig.getNettyWriteBufferHigh()) {
+            throw new IllegalStateException("mqtt.netty.write-buffer-low must be positive and not above write-buffer-high");
+        }
+        if (mqttConfig.getGrpcBossThreads() < 1 || mqttConfig.getGrpcWorkerThreads() < 0 || mqttConfig.getGrpcExecutorThreads() < 0) {
+            throw new IllegalStateException("Invalid mqtt.grpc.server thread counts");
+        }
+        if (mqttConfig.getGrpcFlowControlWindow() < 1 || mqttConfig.getGrpcMaxInboundMessageSize() < 1) {
+            throw new IllegalStateException("mqtt.grpc.server.flow-control-window and max-inbound-message-size must be positive");
+        }
+    }
+
+    private void applySystemProperties() {
+        setDefaultProperty("io.netty.allocator.type", mqttConfig.getNettyAllocator());
+        setDefaultProperty("io.netty.noPreferDirect", String.valueOf(!mqttConfig.isNettyPreferDirect()));
+        if (mqttConfig.getNettyDirectArenas() > 0) {
+            setDefaultProperty("io.netty.allocator.numDirectArenas", String.valueOf(mqttConfig.getNettyDirectArenas()));
+        }
+        if (mqttConfig.getNettyWorkerThreads() > 0) {
+            // Moquette使用Netty默认线程数创建事件循环
+            setDefaultProperty("io.netty.eventLoopThreads", String.valueOf(mqttConfig.getNettyWorkerThreads()));
+        }
+    }
+
+    private static void setDefaultProperty(String name, String value) {
+        if (System.getProperty(name) == null) {
+            System.setProperty(name, value);
+        }
+    }
+}
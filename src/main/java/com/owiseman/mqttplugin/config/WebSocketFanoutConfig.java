@@ -0,0 +1,52 @@
+package com.owiseman.mqttplugin.config;
+
+import com.owiseman.mqttplugin.bridge.FanoutHandshakeInterceptor;
+import com.owiseman.mqttplugin.bridge.FanoutWebSocketHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistration;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+import java.util.Arrays;
+
+/**
+ * 在Spring应用的HTTP端口上注册WebSocket扇出端点（与代理自身的MQTT over WebSocket端口无关）。
+ * 握手经 {@link FanoutHandshakeInterceptor} 认证；未配置 allowed-origins 时只接受同源或不带Origin头的握手。
+ */
+@Configuration
+@EnableWebSocket
+public class WebSocketFanoutConfig implements WebSocketConfigurer {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketFanoutConfig.class);
+
+    @Autowired
+    private MqttConfig mqttConfig;
+
+    @Autowired
+    private FanoutWebSocketHandler fanoutWebSocketHandler;
+
+    @Autowired
+    private FanoutHandshakeInterceptor fanoutHandshakeInterceptor;
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        if (!mqttConfig.isFanoutEnabled()) {
+            logger.info("WebSocket fan-out endpoint disabled");
+            return;
+        }
+        WebSocketHandlerRegistration registration = registry.addHandler(fanoutWebSocketHandler, mqttConfig.getFanoutPath())
+                .addInterceptors(fanoutHandshakeInterceptor);
+        String[] origins = Arrays.stream(mqttConfig.getFanoutAllowedOrigins().split(","))
+                .map(String::trim)
+                .filter(origin -> !origin.isEmpty())
+                .toArray(String[]::new);
+        if (origins.length > 0) {
+            registration.setAllowedOriginPatterns(origins);
+        }
+        logger.info("WebSocket fan-out endpoint registered at {}", mqttConfig.getFanoutPath());
+    }
+}
@@ -1,11 +1,29 @@
 package com.owiseman.mqttplugin.controller;
 
+import com.owiseman.mqttplugin.admission.ConnectionAdmissionService;
+import com.owiseman.mqttplugin.auth.ReloadableAuthenticator;
+import com.owiseman.mqttplugin.bridge.FanoutService;
+import com.owiseman.mqttplugin.compression.CompressionMetrics;
+import com.owiseman.mqttplugin.config.PerformanceProfile;
+import com.owiseman.mqttplugin.history.TopicHistoryStore;
+import com.owiseman.mqttplugin.schedule.ScheduledPublish;
+import com.owiseman.mqttplugin.schedule.ScheduledPublishService;
+import com.owiseman.mqttplugin.service.BrokerReconfigurationService;
 import com.owiseman.mqttplugin.service.MqttService;
+import com.owiseman.mqttplugin.service.PublishPriority;
+import com.owiseman.mqttplugin.service.PublishReason;
+import com.owiseman.mqttplugin.session.OfflineQueueLimiter;
+import com.owiseman.mqttplugin.session.SessionExpiryService;
+import com.owiseman.mqttplugin.sink.HttpSinkService;
+import com.owiseman.mqttplugin.sink.HttpSinkSettings;
+import com.owiseman.mqttplugin.startup.StartupService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -15,11 +33,49 @@ public class MqttController {
     @Autowired
     private MqttService mqttService;
 
+    @Autowired
+    private TopicHistoryStore topicHistoryStore;
+
+    @Autowired
+    private CompressionMetrics compressionMetrics;
+
+    @Autowired
+    private ScheduledPublishService scheduledPublishService;
+
+    @Autowired
+    private ConnectionAdmissionService connectionAdmissionService;
+
+    @Autowired
+    private BrokerReconfigurationService reconfigurationService;
+
+    @Autowired
+    private PerformanceProfile performanceProfile;
+
+    @Autowired
+    private StartupService startupService;
+
+    @Autowired
+    private SessionExpiryService sessionExpiryService;
+
+    @Autowired
+    private OfflineQueueLimiter offlineQueueLimiter;
+
+    @Autowired
+    private HttpSinkService httpSinkService;
+
+    @Autowired
+    private ReloadableAuthenticator authenticator;
+
+    @Autowired
+    private FanoutService fanoutService;
+
     @GetMapping("/status")
     public ResponseEntity<Map<String, Object>> getStatus() {
         Map<String, Object> status = new HashMap<>();
         status.put("running", mqttService.isRunning());
         status.put("uptime", mqttService.getUptime());
+        status.put("performance", performanceProfile.getEffectiveSettings());
+        status.put("startup", startupService.getStartupStats());
         
         return ResponseEntity.ok(status);
     }
@@ -28,14 +84,329 @@ public class MqttController {
     public ResponseEntity<Map<String, String>> publishMessage(
             @RequestParam String topic,
             @RequestParam String message,
-            @RequestParam(defaultValue = "0") int qos) {
-        
-        mqttService.publishMessage(topic, message, qos);
+            @RequestParam(defaultValue = "0") int qos,
+            @RequestParam(required = false) String priority,
+            @RequestParam(required = false) Long expiry) {
         
         Map<String, String> response = new HashMap<>();
+        PublishPriority lane;
+        try {
+            lane = PublishPriority.parse(priority);
+        } catch (IllegalArgumentException e) {
+            response.put("status", "error");
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+
+        PublishReason reason = mqttService.publishMessage(topic, message, qos, lane, expiry != null ? expiry : -1);
+        response.put("reason", reason.name());
+        response.put("reasonCode", String.valueOf(reason.getCode()));
+        if (!reason.isSuccess()) {
+            response.put("status", "error");
+            response.put("message", reason == PublishReason.IMPLEMENTATION_SPECIFIC_ERROR
+                    ? "Message expiry requires mqtt.priority.enabled=true"
+                    : "Message rejected: " + reason);
+            int status = reason == PublishReason.TOPIC_NAME_INVALID || reason == PublishReason.IMPLEMENTATION_SPECIFIC_ERROR ? 400
+                    : reason == PublishReason.QUOTA_EXCEEDED ? 429 : 503;
+            return ResponseEntity.status(status).body(response);
+        }
+
         response.put("status", "success");
         response.put("message", "Message published to topic: " + topic);
         
         return ResponseEntity.ok(response);
     }
-}
\ No newline at end of file
+
+    @GetMapping("/lanes")
+    public ResponseEntity<Map<String, Object>> getLaneStats() {
+        return ResponseEntity.ok(mqttService.getLaneStats());
+    }
+
+    @GetMapping("/sessions")
+    public ResponseEntity<Map<String, Object>> getSessionStats() {
+        return ResponseEntity.ok(sessionExpiryService.getStats());
+    }
+
+    @GetMapping("/sessions/offline-queues")
+    public ResponseEntity<Map<String, Object>> getOfflineQueueStats() {
+        return ResponseEntity.ok(offlineQueueLimiter.getStats());
+    }
+
+    @GetMapping("/fanout")
+    public ResponseEntity<Map<String, Object>> getFanoutStats(
+            @RequestParam(defaultValue = "false") boolean connections) {
+        return ResponseEntity.ok(fanoutService.getStats(connections));
+    }
+
+    @GetMapping("/topics")
+    public ResponseEntity<Map<String, Object>> getTopicTableStats() {
+        return ResponseEntity.ok(mqttService.getTopicTableStats());
+    }
+
+    @GetMapping("/history")
+    public ResponseEntity<Map<String, Object>> getHistory(
+            @RequestParam String topic,
+            @RequestParam(required = false) Long from,
+            @RequestParam(required = false) Long to) {
+
+        long end = to != null ? to : System.currentTimeMillis();
+        long start = from != null ? from : end - 3600_000L;
+        List<Map<String, Object>> points = topicHistoryStore.range(topic, start, end);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("topic", topic);
+        response.put("from", start);
+        response.put("to", end);
+        response.put("points", points);
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/history/downsample")
+    public ResponseEntity<Map<String, Object>> downsampleHistory(
+            @RequestParam String topic,
+            @RequestParam(required = false) Long from,
+            @RequestParam(required = false) Long to,
+            @RequestParam(defaultValue = "60000") long bucket) {
+
+        long end = to != null ? to : System.currentTimeMillis();
+        long start = from != null ? from : end - 3600_000L;
+
+        Map<String, Object> response = new HashMap<>();
+        try {
+            response.put("buckets", topicHistoryStore.downsample(topic, start, end, bucket));
+        } catch (IllegalArgumentException e) {
+            response.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+        response.put("topic", topic);
+        response.put("from", start);
+        response.put("to", end);
+        response.put("bucket", bucket);
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/history/series")
+    public ResponseEntity<Map<String, Object>> getHistorySeries() {
+        Map<String, Object> response = topicHistoryStore.getStats();
+        response.put("topics", topicHistoryStore.listTopics());
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/compression")
+    public ResponseEntity<Map<String, Object>> getCompressionStats() {
+        return ResponseEntity.ok(compressionMetrics.snapshot());
+    }
+
+    @PostMapping("/schedule")
+    public ResponseEntity<Map<String, Object>> schedulePublish(
+            @RequestParam String topic,
+            @RequestParam String message,
+            @RequestParam(defaultValue = "1") int qos,
+            @RequestParam(required = false) String priority,
+            @RequestParam(required = false) String at,
+            @RequestParam(required = false) String delay) {
+
+        Map<String, Object> response = new HashMap<>();
+        try {
+            long fireAt = ScheduledPublishService.resolveFireTime(at, delay);
+            ScheduledPublish scheduled = scheduledPublishService.schedule(
+                    topic, message, qos, PublishPriority.parse(priority), fireAt);
+            response.put("status", "success");
+            response.put("schedule", scheduled.toMap());
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            response.put("status", "error");
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (IllegalStateException e) {
+            response.put("status", "error");
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(503).body(response);
+        }
+    }
+
+    @DeleteMapping("/schedule/{id}")
+    public ResponseEntity<Map<String, Object>> cancelSchedule(@PathVariable long id) {
+        Map<String, Object> response = new HashMap<>();
+        if (!scheduledPublishService.cancel(id)) {
+            response.put("status", "error");
+            response.put("message", "No pending scheduled publish with id " + id);
+            return ResponseEntity.status(404).body(response);
+        }
+        response.put("status", "success");
+        response.put("message", "Scheduled publish " + id + " cancelled");
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/schedule")
+    public ResponseEntity<Map<String, Object>> listSchedules(@RequestParam(defaultValue = "100") int limit) {
+        Map<String, Object> response = scheduledPublishService.getStats();
+        response.put("schedules", scheduledPublishService.list(limit));
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/admission")
+    public ResponseEntity<Map<String, Object>> getAdmissionStats() {
+        return ResponseEntity.ok(connectionAdmissionService.getStats());
+    }
+
+    @GetMapping("/config")
+    public ResponseEntity<Map<String, Object>> getConfig() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("config", reconfigurationService.getRuntimeConfig());
+        response.put("interceptors", mqttService.getActiveInterceptors());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 修改运行时配置，请求体为 {"配置项": "值"}。监听相关配置项会触发重启。
+     * <p>
+     * 只有 mqtt.admission.enabled=true 时重启期间的新连接才在准入网关排队，只有配置了 mqtt.persistence.path
+     * 时会话才能跨重启保留；两项默认都未开启，此时重启会断开所有客户端并丢弃所有持久会话，
+     * 响应中的 warnings 列出缺少的前提。
+     */
+    @PostMapping("/config")
+    public ResponseEntity<Map<String, Object>> updateConfig(@RequestBody Map<String, String> changes) {
+        Map<String, Object> response = reconfigurationService.reconfigure(changes);
+        if (Boolean.TRUE.equals(response.get("success"))) {
+            return ResponseEntity.ok(response);
+        }
+        return ResponseEntity.status(response.containsKey("rejected") ? 400 : 500).body(response);
+    }
+
+    @GetMapping("/sinks")
+    public ResponseEntity<Map<String, Object>> listSinks(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        ResponseEntity<Map<String, Object>> denied = checkSinkAccess(authorization);
+        if (denied != null) {
+            return denied;
+        }
+        return ResponseEntity.ok(httpSinkService.list());
+    }
+
+    @GetMapping("/sinks/{name}")
+    public ResponseEntity<Map<String, Object>> getSink(
+            @PathVariable String name,
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        ResponseEntity<Map<String, Object>> denied = checkSinkAccess(authorization);
+        if (denied != null) {
+            return denied;
+        }
+        Map<String, Object> sink = httpSinkService.get(name);
+        if (sink == null) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("status", "error");
+            response.put("message", "No HTTP sink named " + name);
+            return ResponseEntity.status(404).body(response);
+        }
+        return ResponseEntity.ok(sink);
+    }
+
+    /**
+     * 新建或替换HTTP投递目标，请求体为 {"url": ..., "topics": "a/#,b/+", "batch-size": "100", ...}。
+     */
+    @PutMapping("/sinks/{name}")
+    public ResponseEntity<Map<String, Object>> putSink(
+            @PathVariable String name,
+            @RequestBody Map<String, String> settings,
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        ResponseEntity<Map<String, Object>> denied = checkSinkAccess(authorization);
+        if (denied != null) {
+            return denied;
+        }
+        Map<String, Object> response = new HashMap<>();
+        try {
+            HttpSinkSettings applied = httpSinkService.put(name, settings);
+            response.put("status", "success");
+            response.put("settings", applied.toMap());
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            response.put("status", "error");
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (IllegalStateException e) {
+            response.put("status", "error");
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(409).body(response);
+        }
+    }
+
+    @DeleteMapping("/sinks/{name}")
+    public ResponseEntity<Map<String, Object>> removeSink(
+            @PathVariable String name,
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        ResponseEntity<Map<String, Object>> denied = checkSinkAccess(authorization);
+        if (denied != null) {
+            return denied;
+        }
+        Map<String, Object> response = new HashMap<>();
+        if (!httpSinkService.remove(name)) {
+            response.put("status", "error");
+            response.put("message", "No HTTP sink named " + name);
+            return ResponseEntity.status(404).body(response);
+        }
+        response.put("status", "success");
+        response.put("message", "HTTP sink " + name + " removed");
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 向目标同步发送一条测试消息，不经过队列与熔断，返回目标的HTTP状态码。
+     */
+    @PostMapping("/sinks/{name}/test")
+    public ResponseEntity<Map<String, Object>> testSink(
+            @PathVariable String name,
+            @RequestParam(defaultValue = "test") String topic,
+            @RequestParam(defaultValue = "test") String message,
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        ResponseEntity<Map<String, Object>> denied = checkSinkAccess(authorization);
+        if (denied != null) {
+            return denied;
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        try {
+            int status = httpSinkService.test(name, topic, message);
+            response.put("status", status >= 200 && status < 300 ? "success" : "error");
+            response.put("httpStatus", status);
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            response.put("status", "error");
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(404).body(response);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response.put("status", "error");
+            response.put("message", "Interrupted");
+            return ResponseEntity.status(500).body(response);
+        } catch (Exception e) {
+            response.put("status", "error");
+            response.put("message", e.getClass().getSimpleName() + ": " + e.getMessage());
+            return ResponseEntity.status(502).body(response);
+        }
+    }
+
+    /**
+     * HTTP投递目标管理接口的访问检查：需开启 mqtt.sink.enabled，并以 mqtt.auth.users 中的用户做Basic认证。
+     * 放行时返回null。
+     */
+    private ResponseEntity<Map<String, Object>> checkSinkAccess(String authorization) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "error");
+        if (!httpSinkService.isEnabled()) {
+            response.put("message", "HTTP sinks are disabled (mqtt.sink.enabled=false)");
+            return ResponseEntity.status(403).body(response);
+        }
+        if (authenticator.getUserCount() == 0) {
+            response.put("message", "HTTP sink management requires mqtt.auth.users");
+            return ResponseEntity.status(403).body(response);
+        }
+        if (authenticator.checkBasic("http-sink-api", ReloadableAuthenticator.basicToken(authorization)) == null) {
+            response.put("message", "Authentication required");
+            return ResponseEntity.status(401)
+                    .header(HttpHeaders.WWW_AUTHENTICATE, "Basic realm=\"mqtt-sinks\"")
+                    .body(response);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,195 @@
+package com.owiseman.mqttplugin.grpc;
+
+import com.owiseman.dataapi.proto.*;
+import com.owiseman.mqttplugin.schedule.ScheduledPublish;
+import com.owiseman.mqttplugin.schedule.ScheduledPublishService;
+import com.owiseman.mqttplugin.service.BrokerReconfigurationService;
+import com.owiseman.mqttplugin.service.MqttService;
+import com.owiseman.mqttplugin.service.PublishPriority;
+import com.owiseman.mqttplugin.service.PublishReason;
+import com.owiseman.mqttplugin.session.ClientRegistry;
+import com.owiseman.mqttplugin.session.SessionExpiryService;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 强类型的MQTT管理接口。请求字段直接映射到服务方法，不经过字符串命令与map参数。
+ */
+@Service
+public class MqttAdminGrpcService extends MqttAdminServiceGrpc.MqttAdminServiceImplBase {
+
+    private static final Logger logger = LoggerFactory.getLogger(MqttAdminGrpcService.class);
+
+    private static final int DEFAULT_LIST_LIMIT = 100;
+
+    @Autowired
+    private MqttService mqttService;
+
+    @Autowired
+    private ClientRegistry clientRegistry;
+
+    @Autowired
+    private SessionExpiryService sessionExpiryService;
+
+    @Autowired
+    private BrokerReconfigurationService reconfigurationService;
+
+    @Autowired
+    private ScheduledPublishService scheduledPublishService;
+
+    @Autowired
+    private StatsWatchDispatcher statsWatchDispatcher;
+
+    @Override
+    public void publish(PublishRequest request, StreamObserver<PublishResponse> responseObserver) {
+        if (request.getQos() < 0 || request.getQos() > 2) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription("qos must be 0, 1 or 2").asRuntimeException());
+            return;
+        }
+        PublishReason reason = mqttService.publishMessage(request.getTopic(), request.getPayload().toByteArray(),
+                request.getQos(), toPriority(request.getLane()),
+                request.hasExpirySeconds() ? request.getExpirySeconds() : -1);
+        responseObserver.onNext(PublishResponse.newBuilder()
+                .setReasonCode(reason.getCode())
+                .setReason(reason.name())
+                .build());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void listClients(ListClientsRequest request, StreamObserver<ListClientsResponse> responseObserver) {
+        int limit = request.getLimit() > 0 ? request.getLimit() : DEFAULT_LIST_LIMIT;
+        ListClientsResponse.Builder response = ListClientsResponse.newBuilder().setTotal(clientRegistry.size());
+        for (ClientRegistry.ConnectedClient client : clientRegistry.list(request.getPrefix(), limit)) {
+            ClientInfo.Builder info = ClientInfo.newBuilder()
+                    .setClientId(client.getClientId())
+                    .setCleanSession(client.isCleanSession())
+                    .setConnectedAt(client.getConnectedAt());
+            if (client.getUsername() != null) {
+                info.setUsername(client.getUsername());
+            }
+            response.addClients(info);
+        }
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void disconnectClient(DisconnectClientRequest request, StreamObserver<DisconnectClientResponse> responseObserver) {
+        String clientId = request.getClientId();
+        DisconnectClientResponse.Builder response = DisconnectClientResponse.newBuilder();
+        if (clientId.isEmpty()) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription("client_id is required").asRuntimeException());
+            return;
+        }
+        if (!request.getDiscardSession() && !clientRegistry.isConnected(clientId)) {
+            response.setSuccess(false).setMessage("Client " + clientId + " is not connected");
+        } else {
+            try {
+                sessionExpiryService.disconnect(clientId, request.getDiscardSession());
+                response.setSuccess(true).setMessage("Client " + clientId + " disconnected"
+                        + (request.getDiscardSession() ? ", session discarded" : ""));
+            } catch (Exception e) {
+                logger.error("Failed to disconnect client {}: {}", clientId, e.getMessage());
+                response.setSuccess(false).setMessage("Failed to disconnect client: " + e.getMessage());
+            }
+        }
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void getStats(StatsRequest request, StreamObserver<BrokerStats> responseObserver) {
+        responseObserver.onNext(statsWatchDispatcher.snapshot());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void restart(RestartRequest request, StreamObserver<RestartResponse> responseObserver) {
+        RestartResponse.Builder response = RestartResponse.newBuilder();
+        try {
+            long downtime = mqttService.restart(request.getRebindListeners());
+            response.setSuccess(true).setDowntimeMs(downtime)
+                    .setMessage("MQTT broker restarted successfully in " + downtime + " ms");
+        } catch (Exception e) {
+            response.setSuccess(false).setMessage("Failed to restart MQTT broker: " + e.getMessage());
+        }
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void reconfigure(ReconfigureRequest request, StreamObserver<ReconfigureResponse> responseObserver) {
+        Map<String, Object> result = reconfigurationService.reconfigure(request.getSettingsMap());
+        ReconfigureResponse.Builder response = ReconfigureResponse.newBuilder()
+                .setSuccess(Boolean.TRUE.equals(result.get("success")))
+                .setRestarted(Boolean.TRUE.equals(result.get("restarted")));
+        if (result.get("applied") instanceof List) {
+            response.addAllApplied((List<String>) result.get("applied"));
+        }
+        if (result.get("downtimeMillis") instanceof Number) {
+            response.setDowntimeMs(((Number) result.get("downtimeMillis")).longValue());
+        }
+        if (result.get("rejected") instanceof Map) {
+            response.putAllRejected((Map<String, String>) result.get("rejected"));
+        }
+        if (result.get("error") != null) {
+            response.setMessage(String.valueOf(result.get("error")));
+        }
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void schedulePublish(SchedulePublishRequest request, StreamObserver<SchedulePublishResponse> responseObserver) {
+        SchedulePublishResponse.Builder response = SchedulePublishResponse.newBuilder();
+        try {
+            long fireAt = request.getFireAt() > 0 ? request.getFireAt()
+                    : System.currentTimeMillis() + Math.max(0, request.getDelayMs());
+            ScheduledPublish scheduled = scheduledPublishService.schedule(request.getTopic(), request.getMessage(),
+                    request.getQos(), toPriority(request.getLane()), fireAt);
+            response.setSuccess(true).setId(scheduled.getId()).setFireAt(scheduled.getFireAt());
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            response.setSuccess(false).setMessage(e.getMessage());
+        }
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void cancelSchedule(CancelScheduleRequest request, StreamObserver<CancelScheduleResponse> responseObserver) {
+        boolean cancelled = scheduledPublishService.cancel(request.getId());
+        responseObserver.onNext(CancelScheduleResponse.newBuilder()
+                .setSuccess(cancelled)
+                .setMessage(cancelled ? "Scheduled publish " + request.getId() + " cancelled"
+                        : "No pending scheduled publish with id " + request.getId())
+                .build());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void watchStats(WatchStatsRequest request, StreamObserver<BrokerStats> responseObserver) {
+        statsWatchDispatcher.watch((ServerCallStreamObserver<BrokerStats>) responseObserver,
+                Math.max(0, request.getIntervalMs()));
+    }
+
+    private static PublishPriority toPriority(PublishLane lane) {
+        switch (lane) {
+            case PUBLISH_LANE_CONTROL:
+                return PublishPriority.CONTROL;
+            case PUBLISH_LANE_TELEMETRY:
+                return PublishPriority.TELEMETRY;
+            default:
+                return null;
+        }
+    }
+}
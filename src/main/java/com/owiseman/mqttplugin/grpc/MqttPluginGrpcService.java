@@ -1,6 +1,7 @@
 package com.owiseman.mqttplugin.grpc;
 
 import com.owiseman.dataapi.proto.*;
+import com.owiseman.mqttplugin.service.CommandHandler;
 import com.owiseman.mqttplugin.service.MqttService;
 import io.grpc.stub.StreamObserver;
 import org.slf4j.Logger;
@@ -9,6 +10,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.FileDescriptor;
+import java.util.Map;
 
 @Service
 public class MqttPluginGrpcService extends PluginServiceGrpc.PluginServiceImplBase {
@@ -18,80 +20,32 @@ public class MqttPluginGrpcService extends PluginServiceGrpc.PluginServiceImplBa
     @Autowired
     private MqttService mqttService;
 
+    @Autowired
+    private CommandHandler commandHandler;
+
+    // 所有命令统一由CommandHandler分发；强类型调用见 MqttAdminGrpcService
     @Override
     public void executeCommand(CommandRequest request, StreamObserver<CommandResponse> responseObserver) {
         String command = request.getCommand();
         logger.info("收到命令: {}", command);
         
+        CommandResponse.Builder responseBuilder = CommandResponse.newBuilder();
         try {
-            if ("publish".equals(command) || "message".equals(command)) {  // 添加对"message"命令的支持
-                String topic = request.getParametersMap().getOrDefault("topic", "");
-                String message = request.getParametersMap().getOrDefault("message", "");
-                
-                if (topic.isEmpty()) {
-                    throw new IllegalArgumentException("主题不能为空");
-                }
-                
-                // 发布MQTT消息
-                boolean success = mqttService.publish(topic, message);
-                
-                if (success) {
-                    CommandResponse response = CommandResponse.newBuilder()
-                            .setSuccess(true)
-                            .setResult("消息已发布到主题: " + topic)
-                            .build();
-                    
-                    responseObserver.onNext(response);
-                    responseObserver.onCompleted();
-                } else {
-                    throw new RuntimeException("发布消息失败");
-                }
-            } else if ("start".equals(command)) {
-                // 处理启动命令
-                try {
-                    mqttService.start();
-                    CommandResponse response = CommandResponse.newBuilder()
-                            .setSuccess(true)
-                            .setResult("MQTT服务已成功启动")
-                            .build();
-                    responseObserver.onNext(response);
-                    responseObserver.onCompleted();
-                } catch (Exception e) {
-                    throw new RuntimeException("启动MQTT服务失败: " + e.getMessage());
-                }
-            } else if ("stop".equals(command)) {
-                // 处理停止命令
-                try {
-                    mqttService.stop();
-                    CommandResponse response = CommandResponse.newBuilder()
-                            .setSuccess(true)
-                            .setResult("MQTT服务已成功停止")
-                            .build();
-                    responseObserver.onNext(response);
-                    responseObserver.onCompleted();
-                } catch (Exception e) {
-                    throw new RuntimeException("停止MQTT服务失败: " + e.getMessage());
-                }
+            Map<String, Object> result = commandHandler.handleCommand(command, request.getParametersMap());
+            boolean success = (boolean) result.getOrDefault("success", false);
+            responseBuilder.setSuccess(success);
+            if (success) {
+                responseBuilder.setResult(String.valueOf(result.getOrDefault("message", "")));
             } else {
-                CommandResponse response = CommandResponse.newBuilder()
-                        .setSuccess(false)
-                        .setErrorMessage("不支持的命令: " + command)
-                        .build();
-                
-                responseObserver.onNext(response);
-                responseObserver.onCompleted();
+                responseBuilder.setErrorMessage(String.valueOf(result.getOrDefault("error", "Unknown error")));
             }
         } catch (Exception e) {
             logger.error("执行命令时发生错误: {}", e.getMessage());
-            
-            CommandResponse response = CommandResponse.newBuilder()
-                    .setSuccess(false)
-                    .setErrorMessage("错误: " + e.getMessage())
-                    .build();
-            
-            responseObserver.onNext(response);
-            responseObserver.onCompleted();
+            responseBuilder.setSuccess(false).setErrorMessage("错误: " + e.getMessage());
         }
+        
+        responseObserver.onNext(responseBuilder.build());
+        responseObserver.onCompleted();
     }
     
     // 添加心跳方法
@@ -0,0 +1,211 @@
+package com.owiseman.mqttplugin.grpc;
+
+import com.google.protobuf.Descriptors;
+import com.owiseman.dataapi.proto.BrokerStats;
+import com.owiseman.mqttplugin.config.MqttConfig;
+import com.owiseman.mqttplugin.history.TopicHistoryStore;
+import com.owiseman.mqttplugin.schedule.ScheduledPublishService;
+import com.owiseman.mqttplugin.service.MqttService;
+import com.owiseman.mqttplugin.session.ClientRegistry;
+import com.owiseman.mqttplugin.session.OfflineQueueLimiter;
+import com.owiseman.mqttplugin.session.SessionExpiryService;
+import io.grpc.stub.ServerCallStreamObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WatchStats 的统一分发器。
+ * <p>
+ * 单个线程每 mqtt.grpc.stats.tick-ms 采集一次统计快照，所有订阅者共用这一份快照；
+ * 每个订阅者按自己的间隔只收到相对上次推送有变化的字段。流暂时不可写时跳过本次推送，
+ * 变化会在下一次推送中合并发出，慢订阅者不会积压消息。
+ */
+@Component
+public class StatsWatchDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatsWatchDispatcher.class);
+
+    private final MqttConfig mqttConfig;
+    private final MqttService mqttService;
+    private final ClientRegistry clientRegistry;
+    private final OfflineQueueLimiter offlineQueueLimiter;
+    private final SessionExpiryService sessionExpiryService;
+    private final TopicHistoryStore topicHistoryStore;
+    private final ScheduledPublishService scheduledPublishService;
+    private final List<Watcher> watchers = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService executor;
+
+    @Autowired
+    public StatsWatchDispatcher(MqttConfig mqttConfig, MqttService mqttService, ClientRegistry clientRegistry,
+                                OfflineQueueLimiter offlineQueueLimiter, SessionExpiryService sessionExpiryService,
+                                TopicHistoryStore topicHistoryStore, ScheduledPublishService scheduledPublishService) {
+        this.mqttConfig = mqttConfig;
+        this.mqttService = mqttService;
+        this.clientRegistry = clientRegistry;
+        this.offlineQueueLimiter = offlineQueueLimiter;
+        this.sessionExpiryService = sessionExpiryService;
+        this.topicHistoryStore = topicHistoryStore;
+        this.scheduledPublishService = scheduledPublishService;
+    }
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "grpc-stats-watch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long tick = mqttConfig.getGrpcStatsTickMillis();
+        executor.scheduleAtFixedRate(this::tick, tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        for (Watcher watcher : watchers) {
+            try {
+                watcher.observer.onCompleted();
+            } catch (RuntimeException e) {
+                // 流已关闭
+            }
+        }
+        watchers.clear();
+    }
+
+    /**
+     * 注册订阅者，立即推送一次完整快照。
+     */
+    public void watch(ServerCallStreamObserver<BrokerStats> observer, int intervalMillis) {
+        long tick = mqttConfig.getGrpcStatsTickMillis();
+        int everyTicks = (int) Math.max(1, (intervalMillis + tick - 1) / tick);
+        Watcher watcher = new Watcher(observer, everyTicks);
+        // 在调用线程上注册，取消回调总在注册之后执行，不会留下已取消的订阅者
+        watchers.add(watcher);
+        observer.setOnCancelHandler(() -> watchers.remove(watcher));
+        // 首次推送与tick同在调度线程上执行；tick先到时同样推送完整快照
+        executor.execute(() -> send(watcher, snapshot()));
+    }
+
+    public int getWatcherCount() {
+        return watchers.size();
+    }
+
+    /**
+     * 当前统计的完整快照。
+     */
+    public BrokerStats snapshot() {
+        BrokerStats.Builder builder = BrokerStats.newBuilder()
+                .setTimestamp(System.currentTimeMillis())
+                .setRunning(mqttService.isRunning())
+                .setUptimeMs(mqttService.getUptime())
+                .setConnectedClients(clientRegistry.size())
+                .setInternedTopics(number(mqttService.getTopicTableStats(), "topics"))
+                .setHistorySeries(number(topicHistoryStore.getStats(), "series"))
+                .setPendingSchedules(number(scheduledPublishService.getStats(), "pending"))
+                .setExpiredSessions(number(sessionExpiryService.getStats(), "expired"));
+
+        Map<String, Object> lanes = mqttService.getLaneStats();
+        if (!lanes.isEmpty()) {
+            Map<String, Object> control = nested(lanes, "control");
+            Map<String, Object> telemetry = nested(lanes, "telemetry");
+            builder.setControlDepth(number(control, "depth"))
+                    .setTelemetryDepth(number(telemetry, "depth"))
+                    .setPublished(number(control, "published") + number(telemetry, "published"))
+                    .setDropped(number(control, "dropped") + number(telemetry, "dropped"))
+                    .setExpired(number(lanes, "expired"))
+                    .setQuotaExceeded(number(lanes, "quotaExceeded"));
+        }
+
+        Map<String, Object> offline = offlineQueueLimiter.getStats();
+        builder.setOfflineClients(number(offline, "queuedClients"))
+                .setOfflineQueuedMessages(number(offline, "queuedMessages"))
+                .setOfflineQueuedBytes(number(offline, "queuedBytes"))
+                .setOfflineDroppedMessages(number(offline, "droppedMessages"));
+        return builder.build();
+    }
+
+    private void tick() {
+        if (watchers.isEmpty()) {
+            return;
+        }
+        BrokerStats current = null;
+        for (Watcher watcher : watchers) {
+            if (++watcher.ticks < watcher.everyTicks) {
+                continue;
+            }
+            watcher.ticks = 0;
+            if (current == null) {
+                current = snapshot();
+            }
+            send(watcher, current);
+        }
+    }
+
+    private void send(Watcher watcher, BrokerStats current) {
+        if (!watcher.observer.isReady()) {
+            return;
+        }
+        BrokerStats message = watcher.last == null ? current : delta(watcher.last, current);
+        if (message == null) {
+            return;
+        }
+        try {
+            watcher.observer.onNext(message);
+            watcher.last = current;
+        } catch (RuntimeException e) {
+            logger.debug("Stats watcher closed: {}", e.getMessage());
+            watchers.remove(watcher);
+        }
+    }
+
+    // 只保留有变化的字段，没有变化时返回null
+    private static BrokerStats delta(BrokerStats last, BrokerStats current) {
+        BrokerStats.Builder builder = BrokerStats.newBuilder().setTimestamp(current.getTimestamp());
+        boolean changed = false;
+        for (Descriptors.FieldDescriptor field : BrokerStats.getDescriptor().getFields()) {
+            if (field.getNumber() == BrokerStats.TIMESTAMP_FIELD_NUMBER || !current.hasField(field)) {
+                continue;
+            }
+            Object value = current.getField(field);
+            if (!last.hasField(field) || !value.equals(last.getField(field))) {
+                builder.setField(field, value);
+                changed = true;
+            }
+        }
+        return changed ? builder.build() : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> nested(Map<String, Object> stats, String key) {
+        Object value = stats.get(key);
+        return value instanceof Map ? (Map<String, Object>) value : Map.of();
+    }
+
+    private static long number(Map<String, Object> stats, String key) {
+        Object value = stats.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    private static final class Watcher {
+        final ServerCallStreamObserver<BrokerStats> observer;
+        final int everyTicks;
+        int ticks;
+        BrokerStats last;
+
+        Watcher(ServerCallStreamObserver<BrokerStats> observer, int everyTicks) {
+            this.observer = observer;
+            this.everyTicks = everyTicks;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.owiseman.mqttplugin.history;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.owiseman.mqttplugin.compression.PayloadCompressor;
+import com.owiseman.mqttplugin.config.MqttConfig;
+import io.moquette.interception.AbstractInterceptHandler;
+import io.moquette.interception.messages.InterceptPublishMessage;
+import io.netty.buffer.ByteBufUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 从发布消息中提取数值并写入 {@link TopicHistoryStore}。
+ * <p>
+ * 负载为纯数字时直接记录；为JSON对象时读取 {@code mqtt.history.value-field} 指定的字段。
+ */
+@Component
+public class HistoryInterceptHandler extends AbstractInterceptHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoryInterceptHandler.class);
+
+    private final TopicHistoryStore historyStore;
+    private final ObjectMapper objectMapper;
+    private final PayloadCompressor payloadCompressor;
+    private final String valueField;
+
+    @Autowired
+    public HistoryInterceptHandler(TopicHistoryStore historyStore, ObjectMapper objectMapper,
+                                   PayloadCompressor payloadCompressor, MqttConfig mqttConfig) {
+        this.historyStore = historyStore;
+        this.objectMapper = objectMapper;
+        this.payloadCompressor = payloadCompressor;
+        this.valueField = mqttConfig.getHistoryValueField();
+    }
+
+    @Override
+    public String getID() {
+        return "history";
+    }
+
+    @Override
+    public void onPublish(InterceptPublishMessage message) {
+        String topic = message.getTopicName();
+        if (!historyStore.accepts(topic)) {
+            return;
+        }
+
+        byte[] bytes = payloadCompressor.decode(ByteBufUtil.getBytes(message.getPayload()));
+        String payload = new String(bytes, StandardCharsets.UTF_8).trim();
+        Double value = extractValue(payload);
+        if (value != null) {
+            historyStore.record(topic, System.currentTimeMillis(), value);
+        }
+    }
+
+    private Double extractValue(String payload) {
+        if (payload.isEmpty()) {
+            return null;
+        }
+        if (payload.charAt(0) != '{') {
+            try {
+                return Double.parseDouble(payload);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        if (valueField.isEmpty()) {
+            return null;
+        }
+        try {
+            JsonNode node = objectMapper.readTree(payload).get(valueField);
+            return node != null && node.isNumber() ? node.asDouble() : null;
+        } catch (Exception e) {
+            logger.debug("Ignoring non-JSON payload for history: {}", e.getMessage());
+            return null;
+        }
+    }
+}
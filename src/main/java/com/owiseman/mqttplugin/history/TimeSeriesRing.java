@@ -0,0 +1,314 @@
+package com.owiseman.mqttplugin.history;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 固定大小的时间序列环形缓冲区。
+ * <p>
+ * 缓冲区被划分为若干个定长块，每个块内使用Gorilla风格压缩（时间戳二阶差分 + 数值XOR）。
+ * 当前块写满后切换到下一个块，最旧的块被覆盖，因此每个序列占用的内存是固定的：
+ * {@code HEADER_SIZE + blockCount * blockSize}。底层可以是堆外内存，也可以是内存映射文件。
+ */
+public class TimeSeriesRing {
+
+    static final int MAGIC = 0x54535231; // "TSR1"
+    static final int HEADER_SIZE = 16;
+    static final int BLOCK_HEADER_SIZE = 32;
+
+    // 单个数据点最坏情况下占用的位数：时间戳 4+64，数值 2+5+6+64
+    private static final int MAX_POINT_BITS = 145;
+
+    private final ByteBuffer buffer;
+    private final int blockCount;
+    private final int blockSize;
+
+    private int head;
+
+    // 当前块的编码状态
+    private long prevTimestamp;
+    private long prevDelta;
+    private long prevValueBits;
+    private int prevLeading = -1;
+    private int prevTrailing;
+
+    public static long bytesFor(int blockCount, int blockSize) {
+        return HEADER_SIZE + (long) blockCount * blockSize;
+    }
+
+    public TimeSeriesRing(ByteBuffer buffer, int blockCount, int blockSize) {
+        if (blockSize <= BLOCK_HEADER_SIZE + MAX_POINT_BITS / 8 + 1) {
+            throw new IllegalArgumentException("Block size too small: " + blockSize);
+        }
+        if (buffer.capacity() < bytesFor(blockCount, blockSize)) {
+            throw new IllegalArgumentException("Buffer too small for " + blockCount + " blocks of " + blockSize + " bytes");
+        }
+        this.buffer = buffer;
+        this.blockCount = blockCount;
+        this.blockSize = blockSize;
+
+        if (buffer.getInt(0) == MAGIC && buffer.getInt(4) == blockCount && buffer.getInt(8) == blockSize) {
+            // 重新打开已有的映射文件：编码状态不可恢复，从下一个块开始写入
+            this.head = Math.floorMod(buffer.getInt(12), blockCount);
+            if (blockPoints(head) > 0) {
+                advance();
+            }
+        } else {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, blockCount);
+            buffer.putInt(8, blockSize);
+            for (int i = 0; i < blockCount; i++) {
+                resetBlock(i);
+            }
+            this.head = 0;
+            buffer.putInt(12, head);
+        }
+    }
+
+    public synchronized void append(long timestamp, double value) {
+        int count = blockPoints(head);
+        if (count > 0 && blockBits(head) + MAX_POINT_BITS > (blockSize - BLOCK_HEADER_SIZE) * 8) {
+            advance();
+            count = 0;
+        }
+
+        int base = blockOffset(head);
+        BitWriter writer = new BitWriter(buffer, base + BLOCK_HEADER_SIZE, blockBits(head));
+        long valueBits = Double.doubleToRawLongBits(value);
+
+        if (count == 0) {
+            writer.write(timestamp, 64);
+            writer.write(valueBits, 64);
+            buffer.putLong(base + 8, timestamp);
+            prevDelta = 0;
+            prevLeading = -1;
+            prevTrailing = 0;
+        } else {
+            // 时钟回拨时保持时间单调
+            if (timestamp < prevTimestamp) {
+                timestamp = prevTimestamp;
+            }
+            long delta = timestamp - prevTimestamp;
+            writeTimestamp(writer, delta - prevDelta);
+            writeValue(writer, valueBits ^ prevValueBits);
+            prevDelta = delta;
+        }
+
+        prevTimestamp = timestamp;
+        prevValueBits = valueBits;
+
+        buffer.putInt(base, count + 1);
+        buffer.putInt(base + 4, writer.position());
+        buffer.putLong(base + 16, timestamp);
+    }
+
+    /**
+     * 按时间顺序遍历 [from, to] 范围内的数据点。
+     */
+    public synchronized void scan(long from, long to, PointConsumer consumer) {
+        for (int i = 1; i <= blockCount; i++) {
+            int block = (head + i) % blockCount;
+            int count = blockPoints(block);
+            if (count == 0) {
+                continue;
+            }
+            int base = blockOffset(block);
+            if (buffer.getLong(base + 16) < from || buffer.getLong(base + 8) > to) {
+                continue;
+            }
+            decodeBlock(base, count, from, to, consumer);
+        }
+    }
+
+    public synchronized int size() {
+        int total = 0;
+        for (int i = 0; i < blockCount; i++) {
+            total += blockPoints(i);
+        }
+        return total;
+    }
+
+    public long capacityBytes() {
+        return bytesFor(blockCount, blockSize);
+    }
+
+    private void decodeBlock(int base, int count, long from, long to, PointConsumer consumer) {
+        BitReader reader = new BitReader(buffer, base + BLOCK_HEADER_SIZE);
+        long timestamp = reader.read(64);
+        long valueBits = reader.read(64);
+        long delta = 0;
+        int leading = 0;
+        int trailing = 0;
+
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                delta += readTimestamp(reader);
+                timestamp += delta;
+
+                if (reader.read(1) != 0) {
+                    if (reader.read(1) != 0) {
+                        leading = (int) reader.read(5);
+                        int meaningful = (int) reader.read(6) + 1;
+                        trailing = 64 - leading - meaningful;
+                    }
+                    int meaningful = 64 - leading - trailing;
+                    valueBits ^= reader.read(meaningful) << trailing;
+                }
+            }
+            if (timestamp > to) {
+                return;
+            }
+            if (timestamp >= from) {
+                consumer.accept(timestamp, Double.longBitsToDouble(valueBits));
+            }
+        }
+    }
+
+    private void writeTimestamp(BitWriter writer, long dod) {
+        if (dod == 0) {
+            writer.write(0, 1);
+        } else if (dod >= -64 && dod <= 63) {
+            writer.write(0b10, 2);
+            writer.write(dod, 7);
+        } else if (dod >= -256 && dod <= 255) {
+            writer.write(0b110, 3);
+            writer.write(dod, 9);
+        } else if (dod >= -2048 && dod <= 2047) {
+            writer.write(0b1110, 4);
+            writer.write(dod, 12);
+        } else {
+            writer.write(0b1111, 4);
+            writer.write(dod, 64);
+        }
+    }
+
+    private long readTimestamp(BitReader reader) {
+        if (reader.read(1) == 0) {
+            return 0;
+        }
+        if (reader.read(1) == 0) {
+            return signExtend(reader.read(7), 7);
+        }
+        if (reader.read(1) == 0) {
+            return signExtend(reader.read(9), 9);
+        }
+        if (reader.read(1) == 0) {
+            return signExtend(reader.read(12), 12);
+        }
+        return reader.read(64);
+    }
+
+    private void writeValue(BitWriter writer, long xor) {
+        if (xor == 0) {
+            writer.write(0, 1);
+            return;
+        }
+        int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        int trailing = Long.numberOfTrailingZeros(xor);
+
+        if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing) {
+            // 有效位落在上一个窗口内，复用窗口
+            writer.write(0b10, 2);
+            writer.write(xor >>> prevTrailing, 64 - prevLeading - prevTrailing);
+        } else {
+            int meaningful = 64 - leading - trailing;
+            writer.write(0b11, 2);
+            writer.write(leading, 5);
+            writer.write(meaningful - 1, 6);
+            writer.write(xor >>> trailing, meaningful);
+            prevLeading = leading;
+            prevTrailing = trailing;
+        }
+    }
+
+    private static long signExtend(long value, int bits) {
+        int shift = 64 - bits;
+        return (value << shift) >> shift;
+    }
+
+    private void advance() {
+        head = (head + 1) % blockCount;
+        resetBlock(head);
+        buffer.putInt(12, head);
+    }
+
+    private void resetBlock(int block) {
+        int base = blockOffset(block);
+        buffer.putInt(base, 0);
+        buffer.putInt(base + 4, 0);
+        buffer.putLong(base + 8, Long.MAX_VALUE);
+        buffer.putLong(base + 16, Long.MIN_VALUE);
+    }
+
+    private int blockOffset(int block) {
+        return HEADER_SIZE + block * blockSize;
+    }
+
+    private int blockPoints(int block) {
+        return buffer.getInt(blockOffset(block));
+    }
+
+    private int blockBits(int block) {
+        return buffer.getInt(blockOffset(block) + 4);
+    }
+
+    @FunctionalInterface
+    public interface PointConsumer {
+        void accept(long timestamp, double value);
+    }
+
+    private static final class BitWriter {
+        private final ByteBuffer buffer;
+        private final int base;
+        private int bitPosition;
+
+        BitWriter(ByteBuffer buffer, int base, int bitPosition) {
+            this.buffer = buffer;
+            this.base = base;
+            this.bitPosition = bitPosition;
+        }
+
+        void write(long value, int bits) {
+            while (bits > 0) {
+                int index = base + (bitPosition >>> 3);
+                int offset = bitPosition & 7;
+                int free = 8 - offset;
+                int n = Math.min(free, bits);
+                int chunk = (int) ((value >>> (bits - n)) & ((1 << n) - 1));
+                int current = offset == 0 ? 0 : buffer.get(index) & 0xFF;
+                buffer.put(index, (byte) (current | (chunk << (free - n))));
+                bitPosition += n;
+                bits -= n;
+            }
+        }
+
+        int position() {
+            return bitPosition;
+        }
+    }
+
+    private static final class BitReader {
+        private final ByteBuffer buffer;
+        private final int base;
+        private int bitPosition;
+
+        BitReader(ByteBuffer buffer, int base) {
+            this.buffer = buffer;
+            this.base = base;
+        }
+
+        long read(int bits) {
+            long result = 0;
+            while (bits > 0) {
+                int index = base + (bitPosition >>> 3);
+                int offset = bitPosition & 7;
+                int available = 8 - offset;
+                int n = Math.min(available, bits);
+                int chunk = ((buffer.get(index) & 0xFF) >>> (available - n)) & ((1 << n) - 1);
+                result = (result << n) | chunk;
+                bitPosition += n;
+                bits -= n;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.owiseman.mqttplugin.history;
+
+import com.owiseman.mqttplugin.config.MqttConfig;
+import com.owiseman.mqttplugin.service.TopicFilterSet;
+import com.owiseman.mqttplugin.service.TopicMatcher;
+import com.owiseman.mqttplugin.service.TopicTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按主题保存最近一段时间的数值历史，每个主题对应一个固定大小的 {@link TimeSeriesRing}。
+ * 序列以 {@link TopicTable} 中的规范主题字符串为键。
+ */
+@Service
+public class TopicHistoryStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(TopicHistoryStore.class);
+
+    private final MqttConfig mqttConfig;
+    private final TopicTable topicTable;
+    private volatile TopicFilterSet topicFilters;
+    private final Map<String, TimeSeriesRing> series = new ConcurrentHashMap<>();
+    // 已占用的序列名额，在分配内存之前占用，保证并发创建新序列时不超过 max-series
+    private final AtomicInteger reservedSeries = new AtomicInteger();
+    private final AtomicLong rejectedSeries = new AtomicLong();
+
+    @Autowired
+    public TopicHistoryStore(MqttConfig mqttConfig, TopicTable topicTable) {
+        this.mqttConfig = mqttConfig;
+        this.topicTable = topicTable;
+        this.topicFilters = topicTable.filterSet(TopicMatcher.parseFilters(mqttConfig.getHistoryTopics()));
+        if (TimeSeriesRing.bytesFor(mqttConfig.getHistoryBlocksPerSeries(), mqttConfig.getHistoryBlockSize()) > Integer.MAX_VALUE) {
+            throw new IllegalStateException("mqtt.history.blocks-per-series * mqtt.history.block-size must stay below 2GB");
+        }
+    }
+
+    /**
+     * 重新读取 mqtt.history.topics，已有序列保留，仅影响之后的写入。
+     */
+    public void refreshTopics() {
+        this.topicFilters = topicTable.filterSet(TopicMatcher.parseFilters(mqttConfig.getHistoryTopics()));
+    }
+
+    public boolean isEnabled() {
+        return mqttConfig.isHistoryEnabled();
+    }
+
+    public boolean accepts(String topic) {
+        return isEnabled() && topicFilters.matches(topic);
+    }
+
+    public void record(String topic, long timestamp, double value) {
+        TimeSeriesRing ring = getSeries(topic, true);
+        if (ring != null) {
+            ring.append(timestamp, value);
+        }
+    }
+
+    public List<Map<String, Object>> range(String topic, long from, long to) {
+        List<Map<String, Object>> points = new ArrayList<>();
+        TimeSeriesRing ring = getSeries(topic, false);
+        if (ring == null) {
+            return points;
+        }
+        ring.scan(from, to, (timestamp, value) -> {
+            Map<String, Object> point = new HashMap<>();
+            point.put("timestamp", timestamp);
+            point.put("value", value);
+            points.add(point);
+        });
+        return points;
+    }
+
+    /**
+     * 将 [from, to] 按 bucketMillis 分桶聚合，返回每个非空桶的 count/min/max/avg/last。
+     */
+    public List<Map<String, Object>> downsample(String topic, long from, long to, long bucketMillis) {
+        if (bucketMillis <= 0) {
+            throw new IllegalArgumentException("bucket must be positive");
+        }
+        List<Map<String, Object>> buckets = new ArrayList<>();
+        TimeSeriesRing ring = getSeries(topic, false);
+        if (ring == null) {
+            return buckets;
+        }
+
+        Aggregator aggregator = new Aggregator(from, bucketMillis, buckets);
+        ring.scan(from, to, aggregator::accept);
+        aggregator.flush();
+        return buckets;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long bytesPerSeries = TimeSeriesRing.bytesFor(mqttConfig.getHistoryBlocksPerSeries(), mqttConfig.getHistoryBlockSize());
+        stats.put("enabled", isEnabled());
+        stats.put("series", series.size());
+        stats.put("maxSeries", mqttConfig.getHistoryMaxSeries());
+        stats.put("bytesPerSeries", bytesPerSeries);
+        stats.put("allocatedBytes", bytesPerSeries * series.size());
+        stats.put("rejectedSeries", rejectedSeries.get());
+        stats.put("mmap", !mqttConfig.getHistoryMmapDir().isEmpty());
+        return stats;
+    }
+
+    public List<String> listTopics() {
+        return new ArrayList<>(series.keySet());
+    }
+
+    private TimeSeriesRing getSeries(String topic, boolean create) {
+        TimeSeriesRing ring = series.get(topic);
+        if (ring != null) {
+            return ring;
+        }
+        // 查询时仅在存在映射文件的情况下重新打开序列
+        if (!create && (mqttConfig.getHistoryMmapDir().isEmpty() || !Files.exists(seriesFile(topic)))) {
+            return null;
+        }
+        return series.computeIfAbsent(create ? topicTable.canonical(topic) : topic, this::allocate);
+    }
+
+    /**
+     * 在 computeIfAbsent 中调用：先占用名额再分配，超出上限时返回null（不建立映射），分配失败时归还名额。
+     */
+    private TimeSeriesRing allocate(String topic) {
+        if (!reserveSeries()) {
+            if (rejectedSeries.getAndIncrement() == 0) {
+                logger.warn("History series limit {} reached, new topics are not recorded", mqttConfig.getHistoryMaxSeries());
+            }
+            return null;
+        }
+        try {
+            return map(topic);
+        } catch (RuntimeException | Error e) {
+            reservedSeries.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private boolean reserveSeries() {
+        int limit = mqttConfig.getHistoryMaxSeries();
+        int current;
+        do {
+            current = reservedSeries.get();
+            if (current >= limit) {
+                return false;
+            }
+        } while (!reservedSeries.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    private TimeSeriesRing map(String topic) {
+        int blockCount = mqttConfig.getHistoryBlocksPerSeries();
+        int blockSize = mqttConfig.getHistoryBlockSize();
+        int bytes = (int) TimeSeriesRing.bytesFor(blockCount, blockSize);
+
+        ByteBuffer buffer;
+        if (mqttConfig.getHistoryMmapDir().isEmpty()) {
+            buffer = ByteBuffer.allocateDirect(bytes);
+        } else {
+            Path file = seriesFile(topic);
+            try {
+                Files.createDirectories(file.getParent());
+                try (FileChannel channel = FileChannel.open(file,
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+                }
+            } catch (IOException e) {
+                logger.error("Failed to map history file {}, falling back to direct memory: {}", file, e.getMessage());
+                buffer = ByteBuffer.allocateDirect(bytes);
+            }
+        }
+
+        logger.debug("Allocated history series for topic {} ({} bytes)", topic, bytes);
+        return new TimeSeriesRing(buffer, blockCount, blockSize);
+    }
+
+    private Path seriesFile(String topic) {
+        String name = UUID.nameUUIDFromBytes(topic.getBytes(StandardCharsets.UTF_8)) + ".tsr";
+        return Paths.get(mqttConfig.getHistoryMmapDir(), name);
+    }
+
+    private static final class Aggregator {
+        private final long from;
+        private final long bucketMillis;
+        private final List<Map<String, Object>> buckets;
+
+        private long bucket = Long.MIN_VALUE;
+        private long count;
+        private double min;
+        private double max;
+        private double sum;
+        private double last;
+
+        Aggregator(long from, long bucketMillis, List<Map<String, Object>> buckets) {
+            this.from = from;
+            this.bucketMillis = bucketMillis;
+            this.buckets = buckets;
+        }
+
+        void accept(long timestamp, double value) {
+            long current = from + Math.floorDiv(timestamp - from, bucketMillis) * bucketMillis;
+            if (current != bucket) {
+                flush();
+                bucket = current;
+                min = value;
+                max = value;
+            }
+            count++;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum += value;
+            last = value;
+        }
+
+        void flush() {
+            if (count == 0) {
+                return;
+            }
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("timestamp", bucket);
+            entry.put("count", count);
+            entry.put("min", min);
+            entry.put("max", max);
+            entry.put("avg", sum / count);
+            entry.put("last", last);
+            buckets.add(entry);
+            count = 0;
+            sum = 0;
+        }
+    }
+}
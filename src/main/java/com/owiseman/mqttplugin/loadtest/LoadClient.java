@@ -0,0 +1,233 @@
+package com.owiseman.mqttplugin.loadtest;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.mqtt.MqttConnAckMessage;
+import io.netty.handler.codec.mqtt.MqttConnectReturnCode;
+import io.netty.handler.codec.mqtt.MqttDecoder;
+import io.netty.handler.codec.mqtt.MqttEncoder;
+import io.netty.handler.codec.mqtt.MqttMessage;
+import io.netty.handler.codec.mqtt.MqttMessageBuilders;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.netty.handler.codec.mqtt.MqttVersion;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 轻量级MQTT 3.1.1压测客户端：所有客户端共享同一组事件循环，不为每个连接创建线程。
+ * <p>
+ * 发布负载的前8字节是发送时的 {@link System#nanoTime()}，订阅端据此计算端到端延迟（同一JVM内时钟一致）。
+ * 重连时同一个客户端对象会加入新的连接，因此标记为可共享。
+ */
+@ChannelHandler.Sharable
+class LoadClient extends SimpleChannelInboundHandler<MqttMessage> {
+
+    private static final int MAX_MESSAGE_BYTES = 1024 * 1024;
+
+    private final String clientId;
+    private final LoadTestMetrics metrics;
+
+    private volatile Channel channel;
+    private volatile CompletableFuture<Void> connectFuture;
+    private volatile CompletableFuture<Void> subscribeFuture;
+    private ScheduledFuture<?> publishTask;
+    private long connectStartedAt;
+    private int nextPacketId;
+
+    LoadClient(String clientId, LoadTestMetrics metrics) {
+        this.clientId = clientId;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 建立TCP连接并完成MQTT CONNECT，收到成功的CONNACK后完成。
+     */
+    CompletableFuture<Void> connect(Bootstrap bootstrap, String host, int port) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        connectFuture = future;
+        metrics.connectAttempts.increment();
+        connectStartedAt = System.nanoTime();
+
+        bootstrap.clone()
+                .handler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.pipeline().addLast(new MqttDecoder(MAX_MESSAGE_BYTES), MqttEncoder.INSTANCE, LoadClient.this);
+                    }
+                })
+                .connect(host, port)
+                .addListener(f -> {
+                    if (!f.isSuccess()) {
+                        fail(future, f.cause());
+                    }
+                });
+        return future;
+    }
+
+    CompletableFuture<Void> subscribe(String topic, MqttQoS qos) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        subscribeFuture = future;
+        Channel ch = channel;
+        if (ch == null || !ch.isActive()) {
+            future.completeExceptionally(new IllegalStateException("Client " + clientId + " not connected"));
+            return future;
+        }
+        ch.eventLoop().execute(() -> ch.writeAndFlush(MqttMessageBuilders.subscribe()
+                .messageId(packetId())
+                .addSubscription(qos, topic)
+                .build()));
+        return future;
+    }
+
+    /**
+     * 在客户端所属的事件循环上按固定周期发布，初始延迟随机打散以避免所有发布者同时触发。
+     *
+     * @param fanout 该主题的订阅者数量，用于计算期望投递数
+     */
+    void startPublishing(String topic, long periodNanos, int payloadSize, MqttQoS qos, int fanout) {
+        Channel ch = channel;
+        if (ch == null) {
+            return;
+        }
+        long initialDelay = ThreadLocalRandom.current().nextLong(periodNanos);
+        publishTask = ch.eventLoop().scheduleAtFixedRate(() -> {
+            if (!ch.isActive()) {
+                return;
+            }
+            // 写缓冲超过高水位时跳过本次发布，避免在客户端堆积
+            if (!ch.isWritable()) {
+                metrics.publishBackpressure.increment();
+                return;
+            }
+            ByteBuf payload = ch.alloc().buffer(payloadSize);
+            payload.writeLong(System.nanoTime());
+            payload.writeZero(payloadSize - Long.BYTES);
+            MqttPublishMessage message = MqttMessageBuilders.publish()
+                    .topicName(topic)
+                    .qos(qos)
+                    .messageId(qos == MqttQoS.AT_MOST_ONCE ? 0 : packetId())
+                    .retained(false)
+                    .payload(payload)
+                    .build();
+            ch.writeAndFlush(message, ch.voidPromise());
+            metrics.published.increment();
+            metrics.expectedDeliveries.add(fanout);
+        }, initialDelay, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void stopPublishing() {
+        ScheduledFuture<?> task = publishTask;
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    void close() {
+        stopPublishing();
+        Channel ch = channel;
+        if (ch != null) {
+            ch.close();
+        }
+    }
+
+    /**
+     * 不发送DISCONNECT直接断开TCP连接，模拟设备掉线。
+     */
+    CompletableFuture<Void> drop() {
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        Channel ch = channel;
+        if (ch == null) {
+            closed.complete(null);
+            return closed;
+        }
+        ch.close().addListener(f -> closed.complete(null));
+        return closed;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) {
+        channel = ctx.channel();
+        ctx.writeAndFlush(MqttMessageBuilders.connect()
+                .clientId(clientId)
+                .protocolVersion(MqttVersion.MQTT_3_1_1)
+                .cleanSession(true)
+                .keepAlive(0)
+                .build());
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, MqttMessage msg) {
+        switch (msg.fixedHeader().messageType()) {
+            case CONNACK:
+                MqttConnectReturnCode code = ((MqttConnAckMessage) msg).variableHeader().connectReturnCode();
+                if (code == MqttConnectReturnCode.CONNECTION_ACCEPTED) {
+                    metrics.connected.increment();
+                    metrics.connectLatency.recordNanos(System.nanoTime() - connectStartedAt);
+                    connectFuture.complete(null);
+                } else {
+                    fail(connectFuture, new IllegalStateException("CONNACK " + code));
+                    ctx.close();
+                }
+                break;
+            case SUBACK:
+                CompletableFuture<Void> subscribed = subscribeFuture;
+                if (subscribed != null) {
+                    subscribed.complete(null);
+                }
+                break;
+            case PUBLISH:
+                MqttPublishMessage publish = (MqttPublishMessage) msg;
+                ByteBuf payload = publish.payload();
+                if (payload.readableBytes() >= Long.BYTES) {
+                    metrics.endToEndLatency.recordNanos(System.nanoTime() - payload.getLong(payload.readerIndex()));
+                }
+                metrics.received.increment();
+                if (publish.fixedHeader().qosLevel() == MqttQoS.AT_LEAST_ONCE) {
+                    ctx.writeAndFlush(MqttMessageBuilders.pubAck()
+                            .packetId(publish.variableHeader().packetId())
+                            .build(), ctx.voidPromise());
+                }
+                break;
+            case PUBACK:
+                metrics.acked.increment();
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        stopPublishing();
+        metrics.disconnects.increment();
+        CompletableFuture<Void> future = connectFuture;
+        if (future != null && !future.isDone()) {
+            fail(future, new IllegalStateException("Connection closed before CONNACK"));
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        ctx.close();
+    }
+
+    private void fail(CompletableFuture<Void> future, Throwable cause) {
+        if (future.completeExceptionally(cause)) {
+            metrics.connectFailures.increment();
+        }
+    }
+
+    private int packetId() {
+        nextPacketId = nextPacketId % 0xFFFF + 1;
+        return nextPacketId;
+    }
+}
@@ -0,0 +1,40 @@
+package com.owiseman.mqttplugin.loadtest;
+
+import com.owiseman.mqttplugin.metrics.LatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 压测客户端共享的计数器。发布/接收计数与端到端延迟在预热结束后通过 {@link #resetTraffic()} 清零。
+ */
+class LoadTestMetrics {
+
+    final LongAdder connectAttempts = new LongAdder();
+    final LongAdder connected = new LongAdder();
+    final LongAdder connectFailures = new LongAdder();
+    final LongAdder disconnects = new LongAdder();
+    final LatencyHistogram connectLatency = new LatencyHistogram();
+
+    final LongAdder published = new LongAdder();
+    final LongAdder expectedDeliveries = new LongAdder();
+    final LongAdder acked = new LongAdder();
+    final LongAdder publishBackpressure = new LongAdder();
+    final LongAdder received = new LongAdder();
+    final LatencyHistogram endToEndLatency = new LatencyHistogram();
+
+    void resetTraffic() {
+        published.reset();
+        expectedDeliveries.reset();
+        acked.reset();
+        publishBackpressure.reset();
+        received.reset();
+        endToEndLatency.reset();
+    }
+
+    void resetConnects() {
+        connectAttempts.reset();
+        connected.reset();
+        connectFailures.reset();
+        connectLatency.reset();
+    }
+}
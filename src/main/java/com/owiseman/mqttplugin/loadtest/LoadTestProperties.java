@@ -0,0 +1,183 @@
+package com.owiseman.mqttplugin.loadtest;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * 压测场景配置，仅在 loadtest profile 下加载（见 application-loadtest.properties）。
+ */
+@Component
+@Profile("loadtest")
+public class LoadTestProperties {
+
+    @Value("${loadtest.host:127.0.0.1}")
+    private String host;
+
+    @Value("${loadtest.port:${mqtt.port}}")
+    private int port;
+
+    @Value("${loadtest.publishers:200}")
+    private int publishers;
+
+    @Value("${loadtest.subscribers:800}")
+    private int subscribers;
+
+    @Value("${loadtest.topics:100}")
+    private int topics;
+
+    @Value("${loadtest.publish-rate:10}")
+    private double publishRate;
+
+    @Value("${loadtest.payload-size:64}")
+    private int payloadSize;
+
+    @Value("${loadtest.qos:0}")
+    private int qos;
+
+    // 建连速率（每秒），0表示不限速
+    @Value("${loadtest.connect-rate:500}")
+    private double connectRate;
+
+    @Value("${loadtest.connect-timeout-seconds:60}")
+    private int connectTimeoutSeconds;
+
+    @Value("${loadtest.warmup-seconds:5}")
+    private int warmupSeconds;
+
+    @Value("${loadtest.duration-seconds:30}")
+    private int durationSeconds;
+
+    @Value("${loadtest.reconnect-storm:true}")
+    private boolean reconnectStorm;
+
+    @Value("${loadtest.event-loop-threads:0}")
+    private int eventLoopThreads;
+
+    @Value("${loadtest.report-path:target/loadtest-report.json}")
+    private String reportPath;
+
+    // 压测结束后退出进程，退出码表示是否通过门限
+    @Value("${loadtest.exit:true}")
+    private boolean exitAfterRun;
+
+    // 回归门限，0表示不检查
+    @Value("${loadtest.gate.min-publish-throughput:0}")
+    private double gateMinPublishThroughput;
+
+    @Value("${loadtest.gate.min-delivery-ratio:0}")
+    private double gateMinDeliveryRatio;
+
+    @Value("${loadtest.gate.max-p99-millis:0}")
+    private double gateMaxP99Millis;
+
+    @Value("${loadtest.gate.min-connect-rate:0}")
+    private double gateMinConnectRate;
+
+    // 允许的建连失败数，-1表示不检查
+    @Value("${loadtest.gate.max-connect-failures:-1}")
+    private int gateMaxConnectFailures;
+
+    /**
+     * 启动时校验场景参数，避免压测进行到一半才失败或卡住。
+     * 负载客户端只处理PUBACK，不实现QoS 2的PUBREC/PUBREL/PUBCOMP握手，因此只支持QoS 0与1。
+     */
+    @PostConstruct
+    public void validate() {
+        if (topics < 1) {
+            throw new IllegalStateException("loadtest.topics must be at least 1: " + topics);
+        }
+        if (!(publishRate > 0)) {
+            throw new IllegalStateException("loadtest.publish-rate must be greater than 0: " + publishRate);
+        }
+        if (qos < 0 || qos > 1) {
+            throw new IllegalStateException("loadtest.qos must be 0 or 1: " + qos);
+        }
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getPublishers() {
+        return publishers;
+    }
+
+    public int getSubscribers() {
+        return subscribers;
+    }
+
+    public int getTopics() {
+        return topics;
+    }
+
+    public double getPublishRate() {
+        return publishRate;
+    }
+
+    public int getPayloadSize() {
+        return payloadSize;
+    }
+
+    public int getQos() {
+        return qos;
+    }
+
+    public double getConnectRate() {
+        return connectRate;
+    }
+
+    public int getConnectTimeoutSeconds() {
+        return connectTimeoutSeconds;
+    }
+
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public boolean isReconnectStorm() {
+        return reconnectStorm;
+    }
+
+    public int getEventLoopThreads() {
+        return eventLoopThreads;
+    }
+
+    public String getReportPath() {
+        return reportPath;
+    }
+
+    public boolean isExitAfterRun() {
+        return exitAfterRun;
+    }
+
+    public double getGateMinPublishThroughput() {
+        return gateMinPublishThroughput;
+    }
+
+    public double getGateMinDeliveryRatio() {
+        return gateMinDeliveryRatio;
+    }
+
+    public double getGateMaxP99Millis() {
+        return gateMaxP99Millis;
+    }
+
+    public double getGateMinConnectRate() {
+        return gateMinConnectRate;
+    }
+
+    public int getGateMaxConnectFailures() {
+        return gateMaxConnectFailures;
+    }
+}
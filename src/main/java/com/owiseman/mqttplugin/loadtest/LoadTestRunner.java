@@ -0,0 +1,312 @@
+package com.owiseman.mqttplugin.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.owiseman.mqttplugin.admission.ConnectionAdmissionService;
+import com.owiseman.mqttplugin.admission.TokenBucket;
+import com.owiseman.mqttplugin.config.NettyTransport;
+import com.owiseman.mqttplugin.config.PerformanceProfile;
+import com.owiseman.mqttplugin.service.MqttService;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 单机压测：在同一个JVM内启动代理，用共享事件循环上的数千个 {@link LoadClient} 建连、订阅并按配置速率发布，
+ * 输出JSON报告。配置了门限（loadtest.gate.*）时可作为回归检查，未达标时进程以非0退出码结束。
+ * <p>
+ * 运行：{@code mvn -Ploadtest spring-boot:run} 或 {@code java -jar mqtt-plugin.jar --spring.profiles.active=loadtest}。
+ */
+@Component
+@Profile("loadtest")
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class LoadTestRunner implements CommandLineRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadTestRunner.class);
+
+    private final LoadTestProperties properties;
+    private final MqttService mqttService;
+    private final ConnectionAdmissionService admissionService;
+    private final PerformanceProfile performanceProfile;
+    private final ObjectMapper objectMapper;
+    private final ConfigurableApplicationContext applicationContext;
+    private final LoadTestMetrics metrics = new LoadTestMetrics();
+
+    @Autowired
+    public LoadTestRunner(LoadTestProperties properties, MqttService mqttService,
+                          ConnectionAdmissionService admissionService, PerformanceProfile performanceProfile,
+                          ObjectMapper objectMapper, ConfigurableApplicationContext applicationContext) {
+        this.properties = properties;
+        this.mqttService = mqttService;
+        this.admissionService = admissionService;
+        this.performanceProfile = performanceProfile;
+        this.objectMapper = objectMapper;
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void run(String... args) throws Exception {
+        mqttService.start();
+
+        NettyTransport transport = performanceProfile.getTransport();
+        EventLoopGroup group = transport.newEventLoopGroup(properties.getEventLoopThreads());
+        Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(transport.channelClass())
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 10000);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        List<LoadClient> subscribers = new ArrayList<>();
+        List<LoadClient> publishers = new ArrayList<>();
+        boolean passed;
+        try {
+            report.put("scenario", describeScenario(transport));
+            MqttQoS qos = MqttQoS.valueOf(properties.getQos());
+
+            for (int i = 0; i < properties.getSubscribers(); i++) {
+                subscribers.add(new LoadClient("loadtest-sub-" + i, metrics));
+            }
+            for (int i = 0; i < properties.getPublishers(); i++) {
+                publishers.add(new LoadClient("loadtest-pub-" + i, metrics));
+            }
+            List<LoadClient> all = new ArrayList<>(subscribers);
+            all.addAll(publishers);
+
+            // 建连阶段
+            logger.info("Load test: connecting {} clients at {} connects/s", all.size(), properties.getConnectRate());
+            report.put("connect", connectAll(bootstrap, all, properties.getConnectRate()));
+            Set<LoadClient> connectedSubscribers = new HashSet<>(subscribeAll(subscribers, qos));
+
+            // 发布阶段：预热后清零计数再开始统计
+            int[] fanout = new int[properties.getTopics()];
+            for (int i = 0; i < subscribers.size(); i++) {
+                if (connectedSubscribers.contains(subscribers.get(i))) {
+                    fanout[i % properties.getTopics()]++;
+                }
+            }
+            long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / properties.getPublishRate());
+            int payloadSize = Math.max(properties.getPayloadSize(), Long.BYTES);
+            for (int i = 0; i < publishers.size(); i++) {
+                int topic = i % properties.getTopics();
+                publishers.get(i).startPublishing(topicName(topic), periodNanos, payloadSize, qos, fanout[topic]);
+            }
+            logger.info("Load test: warming up for {} s", properties.getWarmupSeconds());
+            Thread.sleep(TimeUnit.SECONDS.toMillis(properties.getWarmupSeconds()));
+            metrics.resetTraffic();
+
+            logger.info("Load test: measuring for {} s", properties.getDurationSeconds());
+            long measureStart = System.nanoTime();
+            Thread.sleep(TimeUnit.SECONDS.toMillis(properties.getDurationSeconds()));
+            publishers.forEach(LoadClient::stopPublishing);
+            double measuredSeconds = (System.nanoTime() - measureStart) / 1e9;
+            // 等待在途消息投递完成
+            Thread.sleep(2000);
+            report.put("traffic", describeTraffic(measuredSeconds));
+
+            if (properties.isReconnectStorm()) {
+                report.put("reconnectStorm", reconnectStorm(bootstrap, subscribers, qos));
+            }
+
+            Map<String, Object> broker = new LinkedHashMap<>();
+            broker.put("lanes", mqttService.getLaneStats());
+            broker.put("admission", admissionService.getStats());
+            broker.put("performance", performanceProfile.getEffectiveSettings());
+            report.put("broker", broker);
+
+            List<String> failures = checkGates(report);
+            passed = failures.isEmpty();
+            Map<String, Object> gate = new LinkedHashMap<>();
+            gate.put("passed", passed);
+            gate.put("failures", failures);
+            report.put("gate", gate);
+        } finally {
+            subscribers.forEach(LoadClient::close);
+            publishers.forEach(LoadClient::close);
+            group.shutdownGracefully().syncUninterruptibly();
+        }
+
+        File reportFile = new File(properties.getReportPath());
+        if (reportFile.getParentFile() != null) {
+            reportFile.getParentFile().mkdirs();
+        }
+        objectMapper.writer().with(SerializationFeature.INDENT_OUTPUT).writeValue(reportFile, report);
+        logger.info("Load test finished ({}), report written to {}", passed ? "passed" : "FAILED", reportFile.getAbsolutePath());
+
+        if (properties.isExitAfterRun()) {
+            int exitCode = SpringApplication.exit(applicationContext, () -> passed ? 0 : 1);
+            System.exit(exitCode);
+        }
+    }
+
+    private Map<String, Object> connectAll(Bootstrap bootstrap, List<LoadClient> clients, double ratePerSecond)
+            throws InterruptedException {
+        metrics.resetConnects();
+        TokenBucket bucket = ratePerSecond > 0 ? new TokenBucket(ratePerSecond, Math.max(1, ratePerSecond / 10)) : null;
+
+        long start = System.nanoTime();
+        List<CompletableFuture<Void>> futures = new ArrayList<>(clients.size());
+        for (LoadClient client : clients) {
+            while (bucket != null && !bucket.tryAcquire()) {
+                TimeUnit.NANOSECONDS.sleep(Math.max(bucket.nanosUntilAvailable(), 1000));
+            }
+            futures.add(client.connect(bootstrap, properties.getHost(), properties.getPort()));
+        }
+        awaitAll(futures);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Map<String, Object> connect = new LinkedHashMap<>();
+        connect.put("attempted", metrics.connectAttempts.sum());
+        connect.put("succeeded", metrics.connected.sum());
+        connect.put("failed", metrics.connectFailures.sum());
+        connect.put("seconds", seconds);
+        connect.put("connectsPerSecond", metrics.connected.sum() / seconds);
+        connect.put("latency", metrics.connectLatency.snapshot());
+        return connect;
+    }
+
+    /**
+     * 订阅者i订阅主题 i % topics；返回订阅成功的客户端。
+     */
+    private List<LoadClient> subscribeAll(List<LoadClient> subscribers, MqttQoS qos) throws InterruptedException {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(subscribers.size());
+        for (int i = 0; i < subscribers.size(); i++) {
+            futures.add(subscribers.get(i).subscribe(topicName(i % properties.getTopics()), qos));
+        }
+        awaitAll(futures);
+
+        List<LoadClient> subscribed = new ArrayList<>();
+        for (int i = 0; i < subscribers.size(); i++) {
+            CompletableFuture<Void> future = futures.get(i);
+            if (future.isDone() && !future.isCompletedExceptionally()) {
+                subscribed.add(subscribers.get(i));
+            }
+        }
+        if (subscribed.size() < subscribers.size()) {
+            logger.warn("Load test: {} of {} subscriptions failed", subscribers.size() - subscribed.size(), subscribers.size());
+        }
+        return subscribed;
+    }
+
+    /**
+     * 所有订阅者同时掉线后立即不限速重连，测量全部恢复订阅所需的时间。
+     */
+    private Map<String, Object> reconnectStorm(Bootstrap bootstrap, List<LoadClient> subscribers, MqttQoS qos)
+            throws InterruptedException {
+        logger.info("Load test: reconnect storm with {} clients", subscribers.size());
+        List<CompletableFuture<Void>> dropped = new ArrayList<>();
+        subscribers.forEach(client -> dropped.add(client.drop()));
+        awaitAll(dropped);
+
+        long start = System.nanoTime();
+        Map<String, Object> storm = connectAll(bootstrap, subscribers, 0);
+        int resubscribed = subscribeAll(subscribers, qos).size();
+        storm.put("resubscribed", resubscribed);
+        storm.put("recoverySeconds", (System.nanoTime() - start) / 1e9);
+        return storm;
+    }
+
+    private Map<String, Object> describeTraffic(double seconds) {
+        long published = metrics.published.sum();
+        long expected = metrics.expectedDeliveries.sum();
+        long received = metrics.received.sum();
+
+        Map<String, Object> traffic = new LinkedHashMap<>();
+        traffic.put("seconds", seconds);
+        traffic.put("published", published);
+        traffic.put("publishedPerSecond", published / seconds);
+        traffic.put("acked", metrics.acked.sum());
+        traffic.put("publishBackpressure", metrics.publishBackpressure.sum());
+        traffic.put("expectedDeliveries", expected);
+        traffic.put("received", received);
+        traffic.put("receivedPerSecond", received / seconds);
+        traffic.put("deliveryRatio", expected == 0 ? 0.0 : (double) received / expected);
+        traffic.put("endToEndLatency", metrics.endToEndLatency.snapshot());
+        return traffic;
+    }
+
+    private Map<String, Object> describeScenario(NettyTransport transport) {
+        Map<String, Object> scenario = new LinkedHashMap<>();
+        scenario.put("target", properties.getHost() + ":" + properties.getPort());
+        scenario.put("publishers", properties.getPublishers());
+        scenario.put("subscribers", properties.getSubscribers());
+        scenario.put("topics", properties.getTopics());
+        scenario.put("publishRatePerClient", properties.getPublishRate());
+        scenario.put("payloadSize", properties.getPayloadSize());
+        scenario.put("qos", properties.getQos());
+        scenario.put("connectRate", properties.getConnectRate());
+        scenario.put("warmupSeconds", properties.getWarmupSeconds());
+        scenario.put("durationSeconds", properties.getDurationSeconds());
+        scenario.put("clientTransport", transport.getName());
+        scenario.put("startedAt", System.currentTimeMillis());
+        return scenario;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> checkGates(Map<String, Object> report) {
+        List<String> failures = new ArrayList<>();
+        Map<String, Object> connect = (Map<String, Object>) report.get("connect");
+        Map<String, Object> traffic = (Map<String, Object>) report.get("traffic");
+        Map<String, Object> latency = (Map<String, Object>) traffic.get("endToEndLatency");
+
+        double throughput = (double) traffic.get("publishedPerSecond");
+        if (properties.getGateMinPublishThroughput() > 0 && throughput < properties.getGateMinPublishThroughput()) {
+            failures.add("publish throughput " + throughput + "/s below " + properties.getGateMinPublishThroughput());
+        }
+        double ratio = (double) traffic.get("deliveryRatio");
+        if (properties.getGateMinDeliveryRatio() > 0 && ratio < properties.getGateMinDeliveryRatio()) {
+            failures.add("delivery ratio " + ratio + " below " + properties.getGateMinDeliveryRatio());
+        }
+        double p99Millis = ((Number) latency.get("p99Micros")).longValue() / 1000.0;
+        if (properties.getGateMaxP99Millis() > 0 && p99Millis > properties.getGateMaxP99Millis()) {
+            failures.add("p99 latency " + p99Millis + " ms above " + properties.getGateMaxP99Millis());
+        }
+        double connectRate = (double) connect.get("connectsPerSecond");
+        if (properties.getGateMinConnectRate() > 0 && connectRate < properties.getGateMinConnectRate()) {
+            failures.add("connect rate " + connectRate + "/s below " + properties.getGateMinConnectRate());
+        }
+        long connectFailures = (long) connect.get("failed");
+        if (properties.getGateMaxConnectFailures() >= 0 && connectFailures > properties.getGateMaxConnectFailures()) {
+            failures.add(connectFailures + " connect failures, at most " + properties.getGateMaxConnectFailures() + " allowed");
+        }
+        return failures;
+    }
+
+    private void awaitAll(List<CompletableFuture<Void>> futures) throws InterruptedException {
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                    .get(properties.getConnectTimeoutSeconds(), TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            // 单个客户端失败已计入指标
+        } catch (TimeoutException e) {
+            logger.warn("Load test: timed out after {} s waiting for clients", properties.getConnectTimeoutSeconds());
+        }
+    }
+
+    private static String topicName(int index) {
+        return "loadtest/t/" + index;
+    }
+}
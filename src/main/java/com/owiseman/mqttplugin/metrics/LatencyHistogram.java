@@ -0,0 +1,103 @@
+package com.owiseman.mqttplugin.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁的延迟直方图，以微秒为单位按对数-线性分桶（每个2的幂区间再分为8个子桶，相对误差约12%）。
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS + SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    public void recordNanos(long nanos) {
+        recordMicros(Math.max(0, nanos / 1000));
+    }
+
+    public void recordMicros(long micros) {
+        counts.incrementAndGet(bucketOf(micros));
+        total.increment();
+        sumMicros.add(micros);
+        maxMicros.accumulate(micros);
+    }
+
+    public long count() {
+        return total.sum();
+    }
+
+    /**
+     * 返回给定分位数（0-100）对应桶的上界，单位微秒。
+     */
+    public long percentileMicros(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            sum += snapshot[i];
+        }
+        if (sum == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(sum * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= Math.max(target, 1)) {
+                return Math.min(upperBoundOf(i), maxMicros.get());
+            }
+        }
+        return maxMicros.get();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new HashMap<>();
+        long count = count();
+        result.put("count", count);
+        result.put("meanMicros", count == 0 ? 0 : sumMicros.sum() / count);
+        result.put("p50Micros", percentileMicros(50));
+        result.put("p90Micros", percentileMicros(90));
+        result.put("p99Micros", percentileMicros(99));
+        result.put("p999Micros", percentileMicros(99.9));
+        result.put("maxMicros", maxMicros.get());
+        return result;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        sumMicros.reset();
+        maxMicros.reset();
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        long base = 1L << exponent;
+        long step = 1L << (exponent - SUB_BUCKET_BITS);
+        return base + (sub + 1) * step - 1;
+    }
+}
@@ -0,0 +1,104 @@
+package com.owiseman.mqttplugin.schedule;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 基于分层时间轮的定时器，插入和取消都是O(1)。
+ * <p>
+ * 只有一个推进线程在最近到期的桶上阻塞等待，到期任务交给单独的执行线程，不会为每个待执行任务占用线程。
+ */
+public class HierarchicalTimer {
+
+    private static final Logger logger = LoggerFactory.getLogger(HierarchicalTimer.class);
+
+    private final DelayQueue<TimerTaskList> delayQueue = new DelayQueue<>();
+    private final AtomicInteger taskCounter = new AtomicInteger();
+    private final TimingWheel timingWheel;
+    private final ExecutorService taskExecutor;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Thread reaper;
+
+    private volatile boolean running = true;
+
+    public HierarchicalTimer(String name, long tickMs, int wheelSize) {
+        this.timingWheel = new TimingWheel(tickMs, wheelSize, System.currentTimeMillis(), taskCounter, delayQueue);
+        this.taskExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, name + "-executor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.reaper = new Thread(this::reap, name + "-reaper");
+        this.reaper.setDaemon(true);
+        this.reaper.start();
+    }
+
+    /**
+     * 在指定的绝对时间执行任务，返回的条目可用于取消。
+     */
+    public TimerTaskEntry schedule(long expirationMs, Runnable task) {
+        TimerTaskEntry entry = new TimerTaskEntry(expirationMs, task);
+        lock.readLock().lock();
+        try {
+            addEntry(entry);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return entry;
+    }
+
+    public int size() {
+        return taskCounter.get();
+    }
+
+    public void shutdown() {
+        running = false;
+        reaper.interrupt();
+        taskExecutor.shutdown();
+        try {
+            taskExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void addEntry(TimerTaskEntry entry) {
+        if (!timingWheel.add(entry) && !entry.isCancelled()) {
+            // 已到期，直接执行
+            taskExecutor.execute(entry.task);
+        }
+    }
+
+    private void reap() {
+        while (running) {
+            try {
+                TimerTaskList bucket = delayQueue.poll(200, TimeUnit.MILLISECONDS);
+                if (bucket == null) {
+                    continue;
+                }
+                lock.writeLock().lock();
+                try {
+                    while (bucket != null) {
+                        timingWheel.advanceClock(bucket.fireTime());
+                        bucket.flush(this::addEntry);
+                        bucket = delayQueue.poll();
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("Timer reaper error: {}", e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.owiseman.mqttplugin.schedule;
+
+import com.owiseman.mqttplugin.service.PublishPriority;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 定时发布的追加式日志。ADD记录新增或重新调度，DONE记录已执行或已取消；
+ * 启动时重放得到仍待执行的条目，已完成记录过多时整体压缩重写。
+ */
+class ScheduleJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScheduleJournal.class);
+
+    private static final byte ADD = 1;
+    private static final byte DONE = 2;
+
+    private final Path file;
+    private DataOutputStream out;
+    private long records;
+
+    ScheduleJournal(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * 重放日志，返回仍待执行的条目（按id排序）。损坏的尾部记录会被忽略。
+     */
+    synchronized Map<Long, ScheduledPublish> replay() throws IOException {
+        Map<Long, ScheduledPublish> pending = new LinkedHashMap<>();
+        if (!Files.exists(file)) {
+            return pending;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                byte type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                long id = in.readLong();
+                if (type == ADD) {
+                    long fireAt = in.readLong();
+                    int qos = in.readByte();
+                    int priority = in.readByte();
+                    int attempts = in.readInt();
+                    String topic = in.readUTF();
+                    byte[] payload = new byte[in.readInt()];
+                    in.readFully(payload);
+                    pending.put(id, new ScheduledPublish(id, topic, new String(payload, StandardCharsets.UTF_8), qos,
+                            priority < 0 ? null : PublishPriority.values()[priority], fireAt, attempts));
+                } else if (type == DONE) {
+                    pending.remove(id);
+                } else {
+                    logger.warn("Corrupt schedule journal record type {}, ignoring the rest of {}", type, file);
+                    break;
+                }
+            }
+        } catch (EOFException e) {
+            logger.warn("Truncated record at the end of schedule journal {}", file);
+        }
+        return pending;
+    }
+
+    /**
+     * 用当前待执行条目重写日志，然后以追加模式打开。
+     */
+    synchronized void compact(Collection<ScheduledPublish> pending) throws IOException {
+        close();
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream tmpOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            for (ScheduledPublish publish : pending) {
+                writeAdd(tmpOut, publish);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        records = pending.size();
+    }
+
+    synchronized void appendAdd(ScheduledPublish publish) throws IOException {
+        ensureOpen();
+        writeAdd(out, publish);
+        out.flush();
+        records++;
+    }
+
+    synchronized void appendDone(long id) throws IOException {
+        ensureOpen();
+        out.writeByte(DONE);
+        out.writeLong(id);
+        out.flush();
+        records++;
+    }
+
+    synchronized long getRecords() {
+        return records;
+    }
+
+    synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (out == null) {
+            throw new IOException("Schedule journal " + file + " is closed");
+        }
+    }
+
+    private static void writeAdd(DataOutputStream out, ScheduledPublish publish) throws IOException {
+        byte[] payload = publish.getMessage().getBytes(StandardCharsets.UTF_8);
+        out.writeByte(ADD);
+        out.writeLong(publish.getId());
+        out.writeLong(publish.getFireAt());
+        out.writeByte(publish.getQos());
+        out.writeByte(publish.getPriority() == null ? -1 : publish.getPriority().ordinal());
+        out.writeInt(publish.getAttempts());
+        out.writeUTF(publish.getTopic());
+        out.writeInt(payload.length);
+        out.write(payload);
+    }
+}
@@ -0,0 +1,73 @@
+package com.owiseman.mqttplugin.schedule;
+
+import com.owiseman.mqttplugin.service.PublishPriority;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 一条待执行的定时发布。
+ */
+public class ScheduledPublish {
+
+    private final long id;
+    private final String topic;
+    private final String message;
+    private final int qos;
+    private final PublishPriority priority;
+    private final long fireAt;
+    private final int attempts;
+
+    public ScheduledPublish(long id, String topic, String message, int qos, PublishPriority priority, long fireAt, int attempts) {
+        this.id = id;
+        this.topic = topic;
+        this.message = message;
+        this.qos = qos;
+        this.priority = priority;
+        this.fireAt = fireAt;
+        this.attempts = attempts;
+    }
+
+    public ScheduledPublish retryAt(long nextFireAt) {
+        return new ScheduledPublish(id, topic, message, qos, priority, nextFireAt, attempts + 1);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public int getQos() {
+        return qos;
+    }
+
+    public PublishPriority getPriority() {
+        return priority;
+    }
+
+    public long getFireAt() {
+        return fireAt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("id", id);
+        result.put("topic", topic);
+        result.put("qos", qos);
+        result.put("priority", priority == null ? null : priority.name().toLowerCase());
+        result.put("fireAt", fireAt);
+        result.put("attempts", attempts);
+        return result;
+    }
+}
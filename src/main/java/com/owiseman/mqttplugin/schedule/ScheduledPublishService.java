@@ -0,0 +1,290 @@
+package com.owiseman.mqttplugin.schedule;
+
+import com.owiseman.mqttplugin.config.MqttConfig;
+import com.owiseman.mqttplugin.service.MqttService;
+import com.owiseman.mqttplugin.service.PublishPriority;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 定时/延迟发布。条目挂在分层时间轮上，并写入本地日志文件，重启后未执行的条目会重新调度（已过期的立即发布）。
+ * 恢复的条目在应用就绪（代理已启动）后才挂到时间轮上，避免对尚未启动的代理发布而白白消耗一次重试。
+ */
+@Service
+public class ScheduledPublishService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScheduledPublishService.class);
+
+    private final MqttConfig mqttConfig;
+    private final MqttService mqttService;
+    private final Map<Long, ScheduledPublish> pending = new ConcurrentHashMap<>();
+    private final Map<Long, TimerTaskEntry> timerEntries = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final AtomicLong fired = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+
+    private ScheduleJournal journal;
+    private HierarchicalTimer timer;
+    private List<ScheduledPublish> restored = List.of();
+
+    @Autowired
+    public ScheduledPublishService(MqttConfig mqttConfig, MqttService mqttService) {
+        this.mqttConfig = mqttConfig;
+        this.mqttService = mqttService;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        timer = new HierarchicalTimer("mqtt-schedule", mqttConfig.getScheduleTickMs(), mqttConfig.getScheduleWheelSize());
+        journal = new ScheduleJournal(Paths.get(mqttConfig.getScheduleJournalPath()));
+
+        Map<Long, ScheduledPublish> replayed = journal.replay();
+        journal.compact(replayed.values());
+        for (ScheduledPublish publish : replayed.values()) {
+            nextId.accumulateAndGet(publish.getId() + 1, Math::max);
+            pending.put(publish.getId(), publish);
+        }
+        restored = new ArrayList<>(replayed.values());
+        if (!restored.isEmpty()) {
+            logger.info("Restored {} scheduled publishes from {}", restored.size(), mqttConfig.getScheduleJournalPath());
+        }
+    }
+
+    /**
+     * 代理在 CommandLineRunner 中启动，应用就绪事件在其之后发出，此时再调度恢复的条目。
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void armRestored() {
+        for (ScheduledPublish publish : restored) {
+            // 就绪前已被取消的条目不再调度
+            if (pending.get(publish.getId()) == publish) {
+                arm(publish);
+            }
+        }
+        restored = List.of();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (timer != null) {
+            timer.shutdown();
+        }
+        try {
+            if (journal != null) {
+                journal.close();
+            }
+        } catch (IOException e) {
+            logger.error("Error closing schedule journal: {}", e.getMessage());
+        }
+    }
+
+    public ScheduledPublish schedule(String topic, String message, int qos, PublishPriority priority, long fireAt) {
+        if (!MqttService.isValidTopicName(topic)) {
+            throw new IllegalArgumentException("Invalid topic name: " + topic);
+        }
+        if (qos < 0 || qos > 2) {
+            throw new IllegalArgumentException("qos must be 0, 1 or 2");
+        }
+        if (message == null) {
+            throw new IllegalArgumentException("Missing required parameter: message");
+        }
+        if (pending.size() >= mqttConfig.getScheduleMaxPending()) {
+            throw new IllegalStateException("Too many pending scheduled publishes: " + pending.size());
+        }
+        ScheduledPublish publish = new ScheduledPublish(nextId.getAndIncrement(), topic, message, qos, priority, fireAt, 0);
+        // 先放入内存表再写日志，保证并发压缩时不会丢失该条目；写日志失败时移出内存表
+        pending.put(publish.getId(), publish);
+        try {
+            persistAdd(publish);
+        } catch (IllegalStateException e) {
+            pending.remove(publish.getId(), publish);
+            throw e;
+        }
+        arm(publish);
+        logger.debug("Scheduled publish {} to topic {} at {}", publish.getId(), topic, fireAt);
+        return publish;
+    }
+
+    public boolean cancel(long id) {
+        ScheduledPublish publish = pending.remove(id);
+        if (publish == null) {
+            return false;
+        }
+        TimerTaskEntry entry = timerEntries.remove(id);
+        if (entry != null) {
+            entry.cancel();
+        }
+        persistDone(id);
+        cancelled.incrementAndGet();
+        return true;
+    }
+
+    public List<Map<String, Object>> list(int limit) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        pending.values().stream()
+                .sorted(Comparator.comparingLong(ScheduledPublish::getFireAt))
+                .limit(limit)
+                .forEach(publish -> result.add(publish.toMap()));
+        return result;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("pending", pending.size());
+        stats.put("timerEntries", timer.size());
+        stats.put("fired", fired.get());
+        stats.put("failed", failed.get());
+        stats.put("cancelled", cancelled.get());
+        stats.put("journalRecords", journal.getRecords());
+        return stats;
+    }
+
+    /**
+     * 解析触发时间：at支持毫秒时间戳、ISO日期时间或 "HH:mm"（下一次出现的该时刻），否则使用 delay 毫秒。
+     */
+    public static long resolveFireTime(String at, String delay) {
+        long now = System.currentTimeMillis();
+        if (at != null && !at.isBlank()) {
+            String value = at.trim();
+            if (value.chars().allMatch(Character::isDigit)) {
+                return Long.parseLong(value);
+            }
+            ZoneId zone = ZoneId.systemDefault();
+            try {
+                return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+            } catch (DateTimeParseException ignored) {
+                // 尝试其他格式
+            }
+            try {
+                return LocalDateTime.parse(value).atZone(zone).toInstant().toEpochMilli();
+            } catch (DateTimeParseException ignored) {
+                // 尝试其他格式
+            }
+            try {
+                ZonedDateTime today = ZonedDateTime.now(zone).with(LocalTime.parse(value));
+                if (today.toInstant().toEpochMilli() <= now) {
+                    today = today.plusDays(1);
+                }
+                return today.toInstant().toEpochMilli();
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid schedule time: " + at);
+            }
+        }
+        if (delay != null && !delay.isBlank()) {
+            try {
+                return now + Long.parseLong(delay.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid delay: " + delay);
+            }
+        }
+        throw new IllegalArgumentException("Missing required parameter: at or delay");
+    }
+
+    /**
+     * 把已在内存表中的条目挂到时间轮上。条目在此期间被取消（或被重试替换）时不调度。
+     */
+    private void arm(ScheduledPublish publish) {
+        long id = publish.getId();
+        if (pending.get(id) != publish) {
+            return;
+        }
+        TimerTaskEntry entry = timer.schedule(publish.getFireAt(), () -> fire(publish));
+        timerEntries.put(id, entry);
+        // cancel 可能在上面的检查之后、登记时间轮条目之前执行，此时由这里撤销
+        if (pending.get(id) != publish && timerEntries.remove(id, entry)) {
+            entry.cancel();
+        }
+    }
+
+    private void fire(ScheduledPublish publish) {
+        long id = publish.getId();
+        // 已取消或已被重试替换的条目：不动新条目的时间轮登记
+        if (pending.get(id) != publish) {
+            return;
+        }
+        timerEntries.remove(id);
+
+        boolean success;
+        try {
+            success = mqttService.publishMessage(publish.getTopic(), publish.getMessage(), publish.getQos(), publish.getPriority());
+        } catch (Exception e) {
+            logger.error("Scheduled publish {} failed: {}", id, e.getMessage());
+            success = false;
+        }
+
+        if (success) {
+            pending.remove(id, publish);
+            persistDone(id);
+            fired.incrementAndGet();
+        } else if (publish.getAttempts() < mqttConfig.getScheduleMaxRetries()) {
+            ScheduledPublish retry = publish.retryAt(System.currentTimeMillis() + mqttConfig.getScheduleRetryDelayMs());
+            // 发布期间被取消时不再重试
+            if (!pending.replace(id, publish, retry)) {
+                return;
+            }
+            try {
+                persistAdd(retry);
+            } catch (IllegalStateException e) {
+                pending.remove(id, retry);
+                persistDone(id);
+                failed.incrementAndGet();
+                logger.error("Scheduled publish {} to topic {} dropped, retry could not be persisted: {}",
+                        id, publish.getTopic(), e.getMessage());
+                return;
+            }
+            arm(retry);
+            logger.warn("Scheduled publish {} to topic {} failed, retrying at {}", id, publish.getTopic(), retry.getFireAt());
+        } else {
+            pending.remove(id, publish);
+            persistDone(id);
+            failed.incrementAndGet();
+            logger.error("Scheduled publish {} to topic {} dropped after {} attempts", id, publish.getTopic(), publish.getAttempts() + 1);
+        }
+    }
+
+    private void persistAdd(ScheduledPublish publish) {
+        try {
+            journal.appendAdd(publish);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to persist scheduled publish: " + e.getMessage(), e);
+        }
+    }
+
+    private void persistDone(long id) {
+        try {
+            synchronized (journal) {
+                journal.appendDone(id);
+                // 日志中的已完成记录远多于待执行条目时压缩
+                if (journal.getRecords() > mqttConfig.getScheduleCompactThreshold()
+                        && journal.getRecords() > 2L * pending.size()) {
+                    journal.compact(new ArrayList<>(pending.values()));
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Failed to update schedule journal: {}", e.getMessage());
+        }
+    }
+}
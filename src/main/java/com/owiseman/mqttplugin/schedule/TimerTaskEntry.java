@@ -0,0 +1,46 @@
+package com.owiseman.mqttplugin.schedule;
+
+/**
+ * 时间轮中的一个定时任务，同时是所在 {@link TimerTaskList} 双向链表的节点，支持O(1)取消。
+ */
+public class TimerTaskEntry {
+
+    final long expirationMs;
+    final Runnable task;
+
+    volatile TimerTaskList list;
+    TimerTaskEntry prev;
+    TimerTaskEntry next;
+
+    private volatile boolean cancelled;
+
+    public TimerTaskEntry(long expirationMs, Runnable task) {
+        this.expirationMs = expirationMs;
+        this.task = task;
+    }
+
+    public long getExpirationMs() {
+        return expirationMs;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 取消任务并从所在的桶中摘除。
+     */
+    public void cancel() {
+        cancelled = true;
+        remove();
+    }
+
+    void remove() {
+        // 任务可能在此期间被移动到其他桶（时间轮降级），循环直到确实摘除
+        TimerTaskList current = list;
+        while (current != null) {
+            current.remove(this);
+            current = list;
+        }
+    }
+}
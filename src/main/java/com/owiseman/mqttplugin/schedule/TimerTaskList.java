@@ -0,0 +1,107 @@
+package com.owiseman.mqttplugin.schedule;
+
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 时间轮的一个桶：带哨兵节点的循环双向链表，以桶的到期时间参与 DelayQueue 排序。
+ * <p>
+ * fireOffsetMs 为桶实际出队时间相对区间起点的偏移，最底层为一个tick，即区间结束时出队。
+ */
+class TimerTaskList implements Delayed {
+
+    private final AtomicInteger taskCounter;
+    private final long fireOffsetMs;
+    private final AtomicLong expiration = new AtomicLong(-1L);
+    private final TimerTaskEntry root = new TimerTaskEntry(-1L, null);
+
+    TimerTaskList(AtomicInteger taskCounter, long fireOffsetMs) {
+        this.taskCounter = taskCounter;
+        this.fireOffsetMs = fireOffsetMs;
+        root.next = root;
+        root.prev = root;
+    }
+
+    /**
+     * 设置桶的到期时间，返回值表示到期时间是否变化（变化时需要重新放入 DelayQueue）。
+     */
+    boolean setExpiration(long expirationMs) {
+        return expiration.getAndSet(expirationMs) != expirationMs;
+    }
+
+    long getExpiration() {
+        return expiration.get();
+    }
+
+    void add(TimerTaskEntry entry) {
+        boolean done = false;
+        while (!done) {
+            // 先从旧桶摘除，避免同一任务出现在两个桶中
+            entry.remove();
+
+            synchronized (this) {
+                synchronized (entry) {
+                    if (entry.list == null) {
+                        TimerTaskEntry tail = root.prev;
+                        entry.next = root;
+                        entry.prev = tail;
+                        entry.list = this;
+                        tail.next = entry;
+                        root.prev = entry;
+                        taskCounter.incrementAndGet();
+                        done = true;
+                    }
+                }
+            }
+        }
+    }
+
+    synchronized void remove(TimerTaskEntry entry) {
+        synchronized (entry) {
+            if (entry.list == this) {
+                entry.next.prev = entry.prev;
+                entry.prev.next = entry.next;
+                entry.next = null;
+                entry.prev = null;
+                entry.list = null;
+                taskCounter.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 取出所有任务并交给回调（重新插入低层时间轮或执行），然后重置到期时间。
+     */
+    synchronized void flush(Consumer<TimerTaskEntry> consumer) {
+        TimerTaskEntry head = root.next;
+        while (head != root) {
+            remove(head);
+            consumer.accept(head);
+            head = root.next;
+        }
+        expiration.set(-1L);
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(Math.max(fireTime() - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+        TimerTaskList that = (TimerTaskList) other;
+        int result = Long.compare(fireTime(), that.fireTime());
+        // 同时出队时先处理底层的桶，否则上层降级下来的任务可能复用一个尚未出队的底层桶
+        return result != 0 ? result : Long.compare(getExpiration(), that.getExpiration());
+    }
+
+    /**
+     * 桶实际出队的时间，时间轮推进到该时间后桶内任务才会被降级或执行。
+     */
+    long fireTime() {
+        return getExpiration() + fireOffsetMs;
+    }
+}
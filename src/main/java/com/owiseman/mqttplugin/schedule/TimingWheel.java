@@ -0,0 +1,86 @@
+package com.owiseman.mqttplugin.schedule;
+
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分层时间轮的一层。超出本层范围的任务交给上一层（溢出轮），上一层的桶到期时任务再降级插入下层。
+ * <p>
+ * 最底层的桶在其时间区间结束时才到期，保证任务不会早于到期时间执行（最多晚一个tick）。
+ */
+class TimingWheel {
+
+    private final long tickMs;
+    private final int wheelSize;
+    private final long interval;
+    private final AtomicInteger taskCounter;
+    private final DelayQueue<TimerTaskList> queue;
+    private final TimerTaskList[] buckets;
+    private final boolean lowest;
+
+    private long currentTime;
+    private volatile TimingWheel overflowWheel;
+
+    TimingWheel(long tickMs, int wheelSize, long startMs, AtomicInteger taskCounter, DelayQueue<TimerTaskList> queue) {
+        this(tickMs, wheelSize, startMs, taskCounter, queue, true);
+    }
+
+    private TimingWheel(long tickMs, int wheelSize, long startMs, AtomicInteger taskCounter,
+                        DelayQueue<TimerTaskList> queue, boolean lowest) {
+        this.lowest = lowest;
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.interval = tickMs * wheelSize;
+        this.taskCounter = taskCounter;
+        this.queue = queue;
+        this.buckets = new TimerTaskList[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new TimerTaskList(taskCounter, lowest ? tickMs : 0);
+        }
+        this.currentTime = startMs - (startMs % tickMs);
+    }
+
+    /**
+     * 插入任务；任务已取消或已到期时返回false，由调用方决定是否立即执行。
+     */
+    boolean add(TimerTaskEntry entry) {
+        long expiration = entry.expirationMs;
+
+        if (entry.isCancelled()) {
+            return false;
+        } else if (expiration < (lowest ? currentTime : currentTime + tickMs)) {
+            return false;
+        } else if (expiration < currentTime + interval) {
+            long virtualId = expiration / tickMs;
+            TimerTaskList bucket = buckets[(int) (virtualId % wheelSize)];
+            bucket.add(entry);
+            if (bucket.setExpiration(virtualId * tickMs)) {
+                queue.offer(bucket);
+            }
+            return true;
+        } else {
+            return getOverflowWheel().add(entry);
+        }
+    }
+
+    void advanceClock(long timeMs) {
+        if (timeMs >= currentTime + tickMs) {
+            currentTime = timeMs - (timeMs % tickMs);
+            TimingWheel overflow = overflowWheel;
+            if (overflow != null) {
+                overflow.advanceClock(currentTime);
+            }
+        }
+    }
+
+    private TimingWheel getOverflowWheel() {
+        if (overflowWheel == null) {
+            synchronized (this) {
+                if (overflowWheel == null) {
+                    overflowWheel = new TimingWheel(interval, wheelSize, currentTime, taskCounter, queue, false);
+                }
+            }
+        }
+        return overflowWheel;
+    }
+}
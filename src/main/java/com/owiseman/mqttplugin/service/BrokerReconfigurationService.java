@@ -0,0 +1,180 @@
+package com.owiseman.mqttplugin.service;
+
+import com.owiseman.mqttplugin.admission.ConnectionAdmissionService;
+import com.owiseman.mqttplugin.auth.ReloadableAuthenticator;
+import com.owiseman.mqttplugin.compression.PayloadCompressor;
+import com.owiseman.mqttplugin.config.MqttConfig;
+import com.owiseman.mqttplugin.history.TopicHistoryStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 运行时配置变更。
+ * <p>
+ * {@link MqttConfig#HOT_KEYS} 中的配置项直接作用到对应组件，不影响已建立的连接；
+ * {@link MqttConfig#LISTENER_KEYS} 中的配置项通过 {@link MqttService#restart(boolean)} 平滑重启代理。
+ * 一次请求中的配置项全部校验通过才会生效，否则回滚并返回错误。
+ */
+@Service
+public class BrokerReconfigurationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BrokerReconfigurationService.class);
+
+    private final MqttConfig mqttConfig;
+    private final MqttService mqttService;
+    private final ConnectionAdmissionService admissionService;
+    private final ReloadableAuthenticator authenticator;
+    private final TopicHistoryStore historyStore;
+    private final PayloadCompressor payloadCompressor;
+
+    @Autowired
+    public BrokerReconfigurationService(MqttConfig mqttConfig, MqttService mqttService,
+                                        ConnectionAdmissionService admissionService,
+                                        ReloadableAuthenticator authenticator,
+                                        TopicHistoryStore historyStore, PayloadCompressor payloadCompressor) {
+        this.mqttConfig = mqttConfig;
+        this.mqttService = mqttService;
+        this.admissionService = admissionService;
+        this.authenticator = authenticator;
+        this.historyStore = historyStore;
+        this.payloadCompressor = payloadCompressor;
+    }
+
+    /**
+     * 当前可在运行时修改的配置项及其取值，用户列表只返回数量。
+     */
+    public Map<String, Object> getRuntimeConfig() {
+        Map<String, Object> config = new LinkedHashMap<>();
+        for (String key : MqttConfig.LISTENER_KEYS) {
+            config.put(key, mqttConfig.getRuntimeValue(key));
+        }
+        for (String key : MqttConfig.HOT_KEYS) {
+            config.put(key, "mqtt.auth.users".equals(key)
+                    ? authenticator.getUserCount() + " users"
+                    : mqttConfig.getRuntimeValue(key));
+        }
+        return config;
+    }
+
+    public synchronized Map<String, Object> reconfigure(Map<String, String> changes) {
+        Map<String, Object> result = new HashMap<>();
+        Map<String, String> previous = new LinkedHashMap<>();
+        Map<String, String> rejected = new LinkedHashMap<>();
+
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String key = change.getKey();
+            try {
+                String old = mqttConfig.getRuntimeValue(key);
+                if ("mqtt.auth.users".equals(key)) {
+                    ReloadableAuthenticator.parseUsers(change.getValue());
+                }
+                mqttConfig.setRuntimeValue(key, change.getValue());
+                previous.put(key, old);
+            } catch (IllegalArgumentException e) {
+                rejected.put(key, e.getMessage());
+            }
+        }
+
+        if (!rejected.isEmpty()) {
+            previous.forEach(mqttConfig::setRuntimeValue);
+            result.put("success", false);
+            result.put("error", "Invalid configuration");
+            result.put("rejected", rejected);
+            return result;
+        }
+
+        List<String> changed = new ArrayList<>();
+        previous.forEach((key, old) -> {
+            if (!Objects.equals(old, mqttConfig.getRuntimeValue(key))) {
+                changed.add(key);
+            }
+        });
+        try {
+            applyHotChanges(changed);
+        } catch (RuntimeException e) {
+            logger.error("Applying configuration {} failed, rolling back: {}", changed, e.getMessage(), e);
+            rollback(previous, changed);
+            result.put("success", false);
+            result.put("error", "Apply failed: " + e.getMessage());
+            result.put("rolledBack", true);
+            return result;
+        }
+
+        boolean restart = changed.stream().anyMatch(MqttConfig.LISTENER_KEYS::contains);
+        if (restart) {
+            boolean rebind = changed.contains("mqtt.host") || changed.contains("mqtt.port")
+                    || changed.contains("mqtt.websocket.port");
+            try {
+                result.put("downtimeMillis", mqttService.restart(rebind));
+            } catch (Exception e) {
+                // 例如新端口已被占用：恢复旧配置并按旧的监听设置重新启动代理
+                logger.error("Graceful restart after reconfiguration failed, rolling back: {}", e.getMessage(), e);
+                rollback(previous, changed);
+                result.put("success", false);
+                result.put("error", "Restart failed: " + e.getMessage());
+                try {
+                    result.put("downtimeMillis", mqttService.restart(rebind));
+                    result.put("rolledBack", true);
+                } catch (Exception restoreError) {
+                    logger.error("Restarting MQTT broker with previous configuration failed: {}",
+                            restoreError.getMessage(), restoreError);
+                    result.put("rolledBack", false);
+                    result.put("error", "Restart failed: " + e.getMessage()
+                            + "; restart with previous configuration failed: " + restoreError.getMessage());
+                }
+                return result;
+            }
+        }
+
+        logger.info("Configuration changed: {} (restart: {})", changed, restart);
+        result.put("success", true);
+        result.put("applied", changed);
+        result.put("restarted", restart);
+        if (restart) {
+            List<String> warnings = mqttService.getRestartWarnings();
+            if (!warnings.isEmpty()) {
+                result.put("warnings", warnings);
+            }
+        }
+        return result;
+    }
+
+    private void rollback(Map<String, String> previous, List<String> changed) {
+        previous.forEach(mqttConfig::setRuntimeValue);
+        try {
+            applyHotChanges(changed);
+        } catch (RuntimeException e) {
+            logger.error("Re-applying previous configuration failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void applyHotChanges(List<String> changed) {
+        if (changed.stream().anyMatch(key -> key.startsWith("mqtt.admission."))) {
+            admissionService.applyLimits();
+        }
+        if (changed.stream().anyMatch(key -> key.startsWith("mqtt.priority."))) {
+            mqttService.applyPriorityConfig();
+        }
+        if (changed.contains("mqtt.history.topics")) {
+            historyStore.refreshTopics();
+        }
+        if (changed.stream().anyMatch(key -> key.startsWith("mqtt.compression.payload."))) {
+            payloadCompressor.refresh();
+        }
+        if (changed.contains("mqtt.auth.users")) {
+            authenticator.reload();
+        }
+        if (changed.contains("mqtt.interceptors.disabled")) {
+            mqttService.applyInterceptorConfig();
+        }
+    }
+}
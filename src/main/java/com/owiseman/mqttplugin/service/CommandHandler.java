@@ -1,11 +1,17 @@
 package com.owiseman.mqttplugin.service;
 
+import com.owiseman.mqttplugin.schedule.ScheduledPublish;
+import com.owiseman.mqttplugin.schedule.ScheduledPublishService;
+import com.owiseman.mqttplugin.session.ClientRegistry;
+import com.owiseman.mqttplugin.session.SessionExpiryService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Component
@@ -16,6 +22,18 @@ public class CommandHandler {
     @Autowired
     private MqttService mqttService;
 
+    @Autowired
+    private ScheduledPublishService scheduledPublishService;
+
+    @Autowired
+    private BrokerReconfigurationService reconfigurationService;
+
+    @Autowired
+    private ClientRegistry clientRegistry;
+
+    @Autowired
+    private SessionExpiryService sessionExpiryService;
+
     public Map<String, Object> handleCommand(String command, Map<String, String> parameters) {
         logger.info("Handling command: {} with parameters: {}", command, parameters);
         
@@ -23,11 +41,28 @@ public class CommandHandler {
         
         switch (command.toLowerCase()) {
             case "publish":
+            case "message":
                 return handlePublish(parameters);
+            case "start":
+                return handleStart();
+            case "stop":
+                return handleStop();
             case "status":
                 return handleStatus();
+            case "list_clients":
+                return handleListClients(parameters);
+            case "disconnect":
+                return handleDisconnect(parameters);
             case "restart":
                 return handleRestart();
+            case "reconfigure":
+                return handleReconfigure(parameters);
+            case "schedule":
+                return handleSchedule(parameters);
+            case "cancel_schedule":
+                return handleCancelSchedule(parameters);
+            case "list_schedules":
+                return handleListSchedules(parameters);
             default:
                 result.put("success", false);
                 result.put("error", "Unknown command: " + command);
@@ -41,6 +76,18 @@ public class CommandHandler {
         String topic = parameters.get("topic");
         String message = parameters.get("message");
         String qosStr = parameters.get("qos");
+        String expiryStr = parameters.get("expiry");
+
+        PublishPriority priority;
+        long expiry;
+        try {
+            priority = PublishPriority.parse(parameters.get("priority"));
+            expiry = expiryStr != null ? Long.parseLong(expiryStr) : -1;
+        } catch (IllegalArgumentException e) {
+            result.put("success", false);
+            result.put("error", e.getMessage());
+            return result;
+        }
         
         if (topic == null || message == null) {
             result.put("success", false);
@@ -48,20 +95,25 @@ public class CommandHandler {
             return result;
         }
         
-        int qos = 0;
-        if (qosStr != null) {
-            try {
-                qos = Integer.parseInt(qosStr);
-                if (qos < 0 || qos > 2) {
-                    qos = 0;
-                }
-            } catch (NumberFormatException e) {
-                // 使用默认值
-            }
+        // 与原gRPC发布命令一致，默认QoS 1
+        int qos;
+        try {
+            qos = parseQos(qosStr);
+        } catch (IllegalArgumentException e) {
+            result.put("success", false);
+            result.put("error", e.getMessage());
+            return result;
         }
         
         try {
-            mqttService.publishMessage(topic, message, qos);
+            PublishReason reason = mqttService.publishMessage(topic, message, qos, priority, expiry);
+            result.put("reason", reason.name());
+            result.put("reasonCode", reason.getCode());
+            if (!reason.isSuccess()) {
+                result.put("success", false);
+                result.put("error", "Message rejected: " + reason);
+                return result;
+            }
             result.put("success", true);
             result.put("message", "Message published to topic: " + topic);
         } catch (Exception e) {
@@ -72,6 +124,151 @@ public class CommandHandler {
         return result;
     }
 
+    private Map<String, Object> handleSchedule(Map<String, String> parameters) {
+        Map<String, Object> result = new HashMap<>();
+
+        String topic = parameters.get("topic");
+        String message = parameters.get("message");
+        if (topic == null || message == null) {
+            result.put("success", false);
+            result.put("error", "Missing required parameters: topic and message");
+            return result;
+        }
+
+        try {
+            int qos = parseQos(parameters.get("qos"));
+            PublishPriority priority = PublishPriority.parse(parameters.get("priority"));
+            long fireAt = ScheduledPublishService.resolveFireTime(parameters.get("at"), parameters.get("delay"));
+
+            ScheduledPublish scheduled = scheduledPublishService.schedule(topic, message, qos, priority, fireAt);
+            result.put("success", true);
+            result.put("id", scheduled.getId());
+            result.put("fireAt", scheduled.getFireAt());
+            result.put("message", "Scheduled publish " + scheduled.getId() + " to topic " + topic + " at " + scheduled.getFireAt());
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            result.put("success", false);
+            result.put("error", "Failed to schedule message: " + e.getMessage());
+        }
+
+        return result;
+    }
+
+    private Map<String, Object> handleCancelSchedule(Map<String, String> parameters) {
+        Map<String, Object> result = new HashMap<>();
+
+        String id = parameters.get("id");
+        if (id == null) {
+            result.put("success", false);
+            result.put("error", "Missing required parameter: id");
+            return result;
+        }
+
+        try {
+            boolean cancelled = scheduledPublishService.cancel(Long.parseLong(id));
+            result.put("success", cancelled);
+            if (cancelled) {
+                result.put("message", "Scheduled publish " + id + " cancelled");
+            } else {
+                result.put("error", "No pending scheduled publish with id " + id);
+            }
+        } catch (NumberFormatException e) {
+            result.put("success", false);
+            result.put("error", "Invalid id: " + id);
+        }
+
+        return result;
+    }
+
+    private Map<String, Object> handleListSchedules(Map<String, String> parameters) {
+        Map<String, Object> result = new HashMap<>();
+        int limit = 100;
+        String limitStr = parameters.get("limit");
+        if (limitStr != null) {
+            try {
+                limit = Integer.parseInt(limitStr);
+            } catch (NumberFormatException e) {
+                // 使用默认值
+            }
+        }
+        List<Map<String, Object>> schedules = scheduledPublishService.list(limit);
+        result.put("success", true);
+        result.put("schedules", schedules);
+        result.put("stats", scheduledPublishService.getStats());
+        result.put("message", schedules.toString());
+        return result;
+    }
+
+    private Map<String, Object> handleStart() {
+        Map<String, Object> result = new HashMap<>();
+        try {
+            mqttService.start();
+            result.put("success", true);
+            result.put("message", "MQTT服务已成功启动");
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("error", "启动MQTT服务失败: " + e.getMessage());
+        }
+        return result;
+    }
+
+    private Map<String, Object> handleStop() {
+        Map<String, Object> result = new HashMap<>();
+        try {
+            mqttService.stop();
+            result.put("success", true);
+            result.put("message", "MQTT服务已成功停止");
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("error", "停止MQTT服务失败: " + e.getMessage());
+        }
+        return result;
+    }
+
+    private Map<String, Object> handleListClients(Map<String, String> parameters) {
+        Map<String, Object> result = new HashMap<>();
+        int limit = 100;
+        String limitStr = parameters.get("limit");
+        if (limitStr != null) {
+            try {
+                limit = Integer.parseInt(limitStr);
+            } catch (NumberFormatException e) {
+                // 使用默认值
+            }
+        }
+        List<String> clients = new ArrayList<>();
+        clientRegistry.list(parameters.get("prefix"), limit).forEach(client -> clients.add(client.getClientId()));
+        result.put("success", true);
+        result.put("clients", clients);
+        result.put("total", clientRegistry.size());
+        result.put("message", clients.toString());
+        return result;
+    }
+
+    private Map<String, Object> handleDisconnect(Map<String, String> parameters) {
+        Map<String, Object> result = new HashMap<>();
+        String clientId = parameters.get("clientId");
+        if (clientId == null || clientId.isEmpty()) {
+            result.put("success", false);
+            result.put("error", "Missing required parameter: clientId");
+            return result;
+        }
+        boolean discard = Boolean.parseBoolean(parameters.get("discardSession"));
+        if (!discard && !clientRegistry.isConnected(clientId)) {
+            result.put("success", false);
+            result.put("error", "Client " + clientId + " is not connected");
+            return result;
+        }
+        try {
+            sessionExpiryService.disconnect(clientId, discard);
+            result.put("success", true);
+            result.put("message", "Client " + clientId + " disconnected" + (discard ? ", session discarded" : ""));
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("error", "Failed to disconnect client: " + e.getMessage());
+        }
+        return result;
+    }
+
     private Map<String, Object> handleStatus() {
         Map<String, Object> result = new HashMap<>();
         result.put("success", true);
@@ -84,12 +281,15 @@ public class CommandHandler {
         Map<String, Object> result = new HashMap<>();
         
         try {
-            if (mqttService.isRunning()) {
-                mqttService.stop();
-            }
-            mqttService.start();
+            // 平滑重启：准入网关暂停放行、排空发布通道后再重启代理
+            long downtime = mqttService.restart(false);
             result.put("success", true);
-            result.put("message", "MQTT broker restarted successfully");
+            result.put("downtimeMillis", downtime);
+            result.put("message", "MQTT broker restarted successfully in " + downtime + " ms");
+            List<String> warnings = mqttService.getRestartWarnings();
+            if (!warnings.isEmpty()) {
+                result.put("warnings", warnings);
+            }
         } catch (Exception e) {
             result.put("success", false);
             result.put("error", "Failed to restart MQTT broker: " + e.getMessage());
@@ -97,4 +297,39 @@ public class CommandHandler {
         
         return result;
     }
-}
\ No newline at end of file
+
+    // 参数名即配置项名，例如 mqtt.admission.rate-per-second=200
+    private Map<String, Object> handleReconfigure(Map<String, String> parameters) {
+        if (parameters.isEmpty()) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", false);
+            result.put("error", "No configuration keys given");
+            return result;
+        }
+
+        Map<String, Object> result = reconfigurationService.reconfigure(parameters);
+        if (Boolean.TRUE.equals(result.get("success"))) {
+            result.put("message", "Applied " + result.get("applied")
+                    + (Boolean.TRUE.equals(result.get("restarted")) ? " with graceful restart" : " without restart"));
+        } else if (result.containsKey("rejected")) {
+            result.put("error", "Invalid configuration: " + result.get("rejected"));
+        }
+        return result;
+    }
+
+    // 未指定时默认QoS 1；非法值与gRPC接口一样拒绝，不静默改为其他QoS
+    private static int parseQos(String qos) {
+        if (qos == null) {
+            return 1;
+        }
+        try {
+            int value = Integer.parseInt(qos.trim());
+            if (value >= 0 && value <= 2) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // 按非法值处理
+        }
+        throw new IllegalArgumentException("qos must be 0, 1 or 2");
+    }
+}
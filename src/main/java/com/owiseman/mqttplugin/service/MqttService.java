@@ -1,21 +1,34 @@
 package com.owiseman.mqttplugin.service;
 
+import com.owiseman.mqttplugin.admission.ConnectionAdmissionService;
+import com.owiseman.mqttplugin.auth.ReloadableAuthenticator;
+import com.owiseman.mqttplugin.compression.PayloadCompressor;
 import com.owiseman.mqttplugin.config.MqttConfig;
+import com.owiseman.mqttplugin.config.PerformanceProfile;
+import com.owiseman.mqttplugin.session.OfflineQueueLimiter;
 import io.moquette.broker.Server;
 import io.moquette.broker.config.MemoryConfig;
 import io.moquette.interception.InterceptHandler;
 import io.moquette.interception.messages.*;
 import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.mqtt.MqttMessageBuilders;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
 import io.netty.handler.codec.mqtt.MqttQoS;
+import io.netty.util.ReferenceCountUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 @Service
 public class MqttService {
@@ -24,29 +37,80 @@ public class MqttService {
 
     private final MqttConfig mqttConfig;
     private final Server mqttBroker;
-    private boolean running = false;
+    private final ObjectProvider<InterceptHandler> extraInterceptHandlers;
+    private final PayloadCompressor payloadCompressor;
+    private final ConnectionAdmissionService admissionService;
+    private final ReloadableAuthenticator authenticator;
+    private final PerformanceProfile performanceProfile;
+    private final TopicTable topicTable;
+    private final OfflineQueueLimiter offlineQueueLimiter;
+    private final PublishLanes publishLanes;
+    private final Set<String> activeInterceptors = new HashSet<>();
+    private volatile TopicFilterSet controlTopics;
+    private volatile boolean running = false;
     private long startTime;
 
     @Autowired
-    public MqttService(MqttConfig mqttConfig) {
+    public MqttService(MqttConfig mqttConfig, ObjectProvider<InterceptHandler> extraInterceptHandlers,
+                       PayloadCompressor payloadCompressor, ConnectionAdmissionService admissionService,
+                       ReloadableAuthenticator authenticator, PerformanceProfile performanceProfile,
+                       TopicTable topicTable, OfflineQueueLimiter offlineQueueLimiter) {
         this.mqttConfig = mqttConfig;
         this.mqttBroker = new Server();
+        this.extraInterceptHandlers = extraInterceptHandlers;
+        this.payloadCompressor = payloadCompressor;
+        this.admissionService = admissionService;
+        this.authenticator = authenticator;
+        this.performanceProfile = performanceProfile;
+        this.topicTable = topicTable;
+        this.offlineQueueLimiter = offlineQueueLimiter;
+        this.controlTopics = topicTable.filterSet(TopicMatcher.parseFilters(mqttConfig.getPriorityControlTopics()));
+        this.publishLanes = mqttConfig.isPriorityEnabled()
+                ? new PublishLanes(message -> mqttBroker.internalPublish(message, "INTERNAL"),
+                        mqttConfig.getPriorityControlCapacity(),
+                        mqttConfig.getPriorityTelemetryCapacity(),
+                        mqttConfig.getPriorityControlWeight(),
+                        mqttConfig.getReceiveMaximum(),
+                        topicTable.getCapacity())
+                : null;
+        if (publishLanes == null && (mqttConfig.getMessageExpirySeconds() > 0 || mqttConfig.getMaxMessageExpirySeconds() > 0)) {
+            logger.warn("mqtt.mqtt5 message expiry is configured but mqtt.priority.enabled=false; "
+                    + "default expiry is ignored and publishes that request an expiry are rejected");
+        }
     }
 
-    public void start() throws Exception {
+    public synchronized void start() throws Exception {
         if (running) {
             return;
         }
 
         logger.info("Starting MQTT broker on port {} and websocket port {}", mqttConfig.getPort(), mqttConfig.getWebsocketPort());
+        startBroker();
+
+        if (publishLanes != null) {
+            publishLanes.start();
+        }
+        admissionService.start();
+
+        running = true;
+        startTime = System.currentTimeMillis();
+        logger.info("MQTT broker started successfully");
+    }
 
+    private void startBroker() throws Exception {
         // 配置MQTT服务器
         Properties properties = new Properties();
-        properties.setProperty("host", mqttConfig.getHost());
-        properties.setProperty("port", String.valueOf(mqttConfig.getPort()));
-        properties.setProperty("websocket_port", String.valueOf(mqttConfig.getWebsocketPort()));
+        // 启用准入控制时代理只监听内部端口，对外端口由准入网关接管
+        properties.setProperty("host", admissionService.getBrokerHost());
+        properties.setProperty("port", String.valueOf(admissionService.getBrokerPort()));
+        properties.setProperty("websocket_port", String.valueOf(admissionService.getBrokerWebsocketPort()));
         properties.setProperty("allow_anonymous", String.valueOf(mqttConfig.isAllowAnonymous()));
-        properties.setProperty("netty.epoll", String.valueOf(mqttConfig.isNettyEpoll()));
+        // 传输层与socket参数
+        performanceProfile.applyBrokerProperties(properties);
+        if (!mqttConfig.getPersistencePath().isEmpty()) {
+            // 会话与订阅落盘，平滑重启后客户端可以恢复原会话
+            properties.setProperty("persistent_store", mqttConfig.getPersistencePath());
+        }
 
         // 添加消息拦截器
         InterceptHandler interceptHandler = new InterceptHandler() {
@@ -98,21 +162,131 @@ public class MqttService {
             }
         };
 
+        // 其他模块（历史数据等）注册为Spring Bean的拦截器，mqtt.interceptors.disabled 中的除外
+        List<String> disabled = TopicMatcher.parseFilters(mqttConfig.getInterceptorsDisabled());
+        List<InterceptHandler> interceptHandlers = new ArrayList<>();
+        interceptHandlers.add(interceptHandler);
+        activeInterceptors.clear();
+        extraInterceptHandlers.orderedStream()
+                .filter(handler -> !disabled.contains(handler.getID()))
+                .forEach(handler -> {
+                    interceptHandlers.add(handler);
+                    activeInterceptors.add(handler.getID());
+                });
+
         // 启动MQTT服务器
         MemoryConfig config = new MemoryConfig(properties);
-        mqttBroker.startServer(config, Collections.singletonList(interceptHandler));
+        mqttBroker.startServer(config, interceptHandlers, null, authenticator, null);
+        offlineQueueLimiter.install(mqttBroker);
+    }
 
-        running = true;
+    /**
+     * 平滑重启代理，用于监听相关配置变更。
+     * <p>
+     * 准入网关先暂停放行，新连接在网关排队而不是被拒绝；发布通道排空后重启代理，再恢复放行。
+     * 配置了 mqtt.persistence.path 时会话与订阅保存在磁盘上，客户端重连后继续使用原会话。
+     * 对外监听地址变化时重新绑定准入网关。
+     *
+     * @return 代理不可用的时长（毫秒）
+     */
+    public synchronized long restart(boolean rebindListeners) throws Exception {
+        if (!running) {
+            start();
+            return 0;
+        }
+
+        logger.info("Gracefully restarting MQTT broker");
+        for (String warning : getRestartWarnings()) {
+            logger.warn("Restart is not graceful: {}", warning);
+        }
+        long begin = System.currentTimeMillis();
+        admissionService.setPaused(true);
+        try {
+            if (publishLanes != null) {
+                publishLanes.stop(mqttConfig.getPriorityDrainTimeoutMillis());
+            }
+            running = false;
+            mqttBroker.stopServer();
+            startBroker();
+            if (publishLanes != null) {
+                publishLanes.start();
+            }
+            running = true;
+        } finally {
+            if (rebindListeners && admissionService.isEnabled()) {
+                admissionService.rebind();
+            } else {
+                admissionService.setPaused(false);
+            }
+        }
+
+        long downtime = System.currentTimeMillis() - begin;
         startTime = System.currentTimeMillis();
-        logger.info("MQTT broker started successfully");
+        logger.info("MQTT broker restarted in {} ms", downtime);
+        return downtime;
+    }
+
+    /**
+     * 平滑重启缺少的前提。两项默认都未开启，此时重启会断开所有客户端并丢弃所有会话。
+     */
+    public List<String> getRestartWarnings() {
+        List<String> warnings = new ArrayList<>();
+        if (!admissionService.isEnabled()) {
+            warnings.add("mqtt.admission.enabled=false: clients connecting during the restart are refused "
+                    + "instead of queued at the admission gateway");
+        }
+        if (mqttConfig.getPersistencePath().isEmpty()) {
+            warnings.add("mqtt.persistence.path is empty: all sessions, subscriptions and queued messages "
+                    + "are lost on restart");
+        }
+        return warnings;
+    }
+
+    /**
+     * 按 mqtt.priority.* 更新控制主题与调度权重。
+     */
+    public void applyPriorityConfig() {
+        controlTopics = topicTable.filterSet(TopicMatcher.parseFilters(mqttConfig.getPriorityControlTopics()));
+        if (publishLanes != null) {
+            publishLanes.setControlWeight(mqttConfig.getPriorityControlWeight());
+        }
+    }
+
+    /**
+     * 按 mqtt.interceptors.disabled 在运行中的代理上挂载或卸载拦截器。
+     */
+    public synchronized void applyInterceptorConfig() {
+        if (!running) {
+            return;
+        }
+        List<String> disabled = TopicMatcher.parseFilters(mqttConfig.getInterceptorsDisabled());
+        extraInterceptHandlers.orderedStream().forEach(handler -> {
+            String id = handler.getID();
+            if (disabled.contains(id) && activeInterceptors.remove(id)) {
+                mqttBroker.removeInterceptHandler(handler);
+                logger.info("Interceptor {} disabled", id);
+            } else if (!disabled.contains(id) && activeInterceptors.add(id)) {
+                mqttBroker.addInterceptHandler(handler);
+                logger.info("Interceptor {} enabled", id);
+            }
+        });
+    }
+
+    public synchronized List<String> getActiveInterceptors() {
+        return new ArrayList<>(activeInterceptors);
     }
 
-    public void stop() throws Exception {
+    public synchronized void stop() throws Exception {
         if (!running) {
             return;
         }
 
         logger.info("Stopping MQTT broker");
+        admissionService.stop();
+        if (publishLanes != null) {
+            // 先把排队中的内部消息发布完
+            publishLanes.stop(mqttConfig.getPriorityDrainTimeoutMillis());
+        }
         mqttBroker.stopServer();
         running = false;
         logger.info("MQTT broker stopped");
@@ -131,27 +305,68 @@ public class MqttService {
         return System.currentTimeMillis() - startTime;
     }
 
-    public void publishMessage(String topic, String message, int qos) {
+    public boolean publishMessage(String topic, String message, int qos) {
+        return publishMessage(topic, message, qos, null);
+    }
+
+    public boolean publishMessage(String topic, String message, int qos, PublishPriority priority) {
+        return publishMessage(topic, message, qos, priority, -1).isSuccess();
+    }
+
+    /**
+     * 发布内部消息。priority为null时按 mqtt.priority.control-topics 判断所属通道。
+     *
+     * @param expirySeconds 消息过期秒数，超时仍在排队的消息被丢弃；负数使用 mqtt.mqtt5.message-expiry-seconds，0表示不过期
+     * @return 发布结果（启用优先级通道时SUCCESS表示已成功入队）
+     */
+    public PublishReason publishMessage(String topic, String message, int qos, PublishPriority priority, long expirySeconds) {
+        PublishReason reason = publishMessage(topic, message.getBytes(StandardCharsets.UTF_8), qos, priority, expirySeconds);
+        if (reason.isSuccess()) {
+            logger.debug("Published message to topic {}: {}", topic, message);
+        }
+        return reason;
+    }
+
+    /**
+     * 以原始字节发布内部消息，供不需要字符串转换的调用方（gRPC管理接口等）使用。
+     */
+    public PublishReason publishMessage(String topic, byte[] payload, int qos, PublishPriority priority, long expirySeconds) {
         if (!running) {
             logger.warn("Cannot publish message, MQTT broker is not running");
-            return;
+            return PublishReason.SERVER_UNAVAILABLE;
+        }
+        if (!isValidTopicName(topic)) {
+            return PublishReason.TOPIC_NAME_INVALID;
         }
 
-        mqttBroker.internalPublish(
-                MqttMessageBuilders.publish()
-                        .topicName(topic)
-                        .retained(false)
-                        .qos(MqttQoS.valueOf(qos))
-                        .payload(Unpooled.copiedBuffer(message.getBytes(StandardCharsets.UTF_8)))
-                        .build(),
-                "INTERNAL"
-        );
+        PublishReason reason = dispatch(topic, buildPublishMessage(topic, payload, qos), priority, expirySeconds);
+        if (!reason.isSuccess()) {
+            logger.warn("Publish to topic {} rejected: {}", topic, reason);
+        }
+        return reason;
+    }
 
-        logger.debug("Published message to topic {}: {}", topic, message);
+    public PublishPriority resolvePriority(String topic, PublishPriority requested) {
+        if (requested != null) {
+            return requested;
+        }
+        return controlTopics.matches(topic) ? PublishPriority.CONTROL : PublishPriority.TELEMETRY;
     }
-    
-    // 修改publish方法，使用mqttBroker而不是不存在的mqttClient
+
+    public Map<String, Object> getLaneStats() {
+        return publishLanes != null ? publishLanes.getStats() : Collections.emptyMap();
+    }
+
     public boolean publish(String topic, String message) {
+        return publish(topic, message, null);
+    }
+
+    public boolean publish(String topic, String message, PublishPriority priority) {
+        return publish(topic, message, priority, -1).isSuccess();
+    }
+
+    // 修改publish方法，使用mqttBroker而不是不存在的mqttClient
+    public PublishReason publish(String topic, String message, PublishPriority priority, long expirySeconds) {
         try {
             logger.info("发布消息到主题: {}", topic);
             
@@ -162,26 +377,75 @@ public class MqttService {
                     start();
                 } catch (Exception e) {
                     logger.error("启动MQTT服务器失败: {}", e.getMessage());
-                    return false;
+                    return PublishReason.SERVER_UNAVAILABLE;
                 }
             }
+            if (!isValidTopicName(topic)) {
+                logger.error("主题名称无效: {}", topic);
+                return PublishReason.TOPIC_NAME_INVALID;
+            }
             
             // 使用内部发布方法
-            mqttBroker.internalPublish(
-                    MqttMessageBuilders.publish()
-                            .topicName(topic)
-                            .retained(false)
-                            .qos(MqttQoS.valueOf(1))  // QoS 1
-                            .payload(Unpooled.copiedBuffer(message.getBytes(StandardCharsets.UTF_8)))
-                            .build(),
-                    "INTERNAL"
-            );
+            PublishReason reason = dispatch(topic, buildPublishMessage(topic, message.getBytes(StandardCharsets.UTF_8), 1), priority, expirySeconds);  // QoS 1
+            if (!reason.isSuccess()) {
+                logger.error("消息被拒绝 ({}): {}", reason, topic);
+                return reason;
+            }
             
             logger.info("消息已成功发布到主题: {}", topic);
-            return true;
+            return PublishReason.SUCCESS;
         } catch (Exception e) {
             logger.error("发布消息时发生错误: {}", e.getMessage());
-            return false;
+            return PublishReason.UNSPECIFIED_ERROR;
+        }
+    }
+
+    private PublishReason dispatch(String topic, MqttPublishMessage message, PublishPriority priority, long expirySeconds) {
+        if (publishLanes == null) {
+            if (expirySeconds > 0) {
+                // 过期只在内部发布队列中执行，未启用队列时无法保证，拒绝而不是静默忽略
+                ReferenceCountUtil.release(message);
+                return PublishReason.IMPLEMENTATION_SPECIFIC_ERROR;
+            }
+            mqttBroker.internalPublish(message, "INTERNAL");
+            return PublishReason.SUCCESS;
         }
+        long expiry = resolveExpirySeconds(expirySeconds);
+        long expiresAt = expiry > 0 ? System.nanoTime() + expiry * 1_000_000_000L : 0;
+        return publishLanes.offer(resolvePriority(topic, priority), message, topicTable.intern(topic), expiresAt);
+    }
+
+    // 未指定时取默认过期时间，并按 mqtt.mqtt5.max-message-expiry-seconds 截断
+    private long resolveExpirySeconds(long expirySeconds) {
+        long expiry = expirySeconds < 0 ? mqttConfig.getMessageExpirySeconds() : expirySeconds;
+        long max = mqttConfig.getMaxMessageExpirySeconds();
+        if (max > 0 && (expiry == 0 || expiry > max)) {
+            return max;
+        }
+        return expiry;
+    }
+
+    public Map<String, Object> getTopicTableStats() {
+        return topicTable.getStats();
+    }
+
+    /**
+     * 发布主题名是否合法：非空、不含通配符与空字符。
+     */
+    public static boolean isValidTopicName(String topic) {
+        return topic != null && !topic.isEmpty() && topic.indexOf('+') < 0 && topic.indexOf('#') < 0
+                && topic.indexOf('\u0000') < 0;
+    }
+
+    // 构建内部发布消息，按主题配置应用负载压缩信封；消息中使用规范主题实例，排队期间不再各持一份副本
+    private MqttPublishMessage buildPublishMessage(String topic, byte[] message, int qos) {
+        topic = topicTable.canonical(topic);
+        byte[] payload = payloadCompressor.encode(topic, message);
+        return MqttMessageBuilders.publish()
+                .topicName(topic)
+                .retained(false)
+                .qos(MqttQoS.valueOf(qos))
+                .payload(Unpooled.wrappedBuffer(payload))
+                .build();
     }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.owiseman.mqttplugin.service;
 
 import com.owiseman.dataapi.proto.*;
+import com.owiseman.mqttplugin.compression.GrpcCompression;
 import com.owiseman.mqttplugin.config.MqttConfig;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
@@ -14,6 +15,9 @@ import org.springframework.stereotype.Service;
 import javax.annotation.PreDestroy;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 @Service
@@ -23,14 +27,20 @@ public class PluginGrpcService {
 
     private final MqttConfig mqttConfig;
     private final MqttService mqttService;
+    private final GrpcCompression grpcCompression;
     private ManagedChannel channel;
     private PluginServiceGrpc.PluginServiceBlockingStub blockingStub;
-    private String pluginId;
+    private volatile String pluginId;
+    private ExecutorService registrationExecutor;
+    // 串行化注册，心跳与后台注册不会同时向主应用注册
+    private final Object registrationLock = new Object();
+    private volatile boolean backgroundRegistering;
 
     @Autowired
-    public PluginGrpcService(MqttConfig mqttConfig, MqttService mqttService) {
+    public PluginGrpcService(MqttConfig mqttConfig, MqttService mqttService, GrpcCompression grpcCompression) {
         this.mqttConfig = mqttConfig;
         this.mqttService = mqttService;
+        this.grpcCompression = grpcCompression;
         initGrpcChannel();
     }
 
@@ -50,6 +60,10 @@ public class PluginGrpcService {
         
         // 检查是否已注册
         if (pluginId == null || pluginId.isEmpty()) {
+            if (backgroundRegistering) {
+                logger.debug("后台注册进行中，跳过本次心跳");
+                return;
+            }
             logger.warn("插件ID为空，尝试注册插件");
             registerPlugin();
             
@@ -111,17 +125,19 @@ public class PluginGrpcService {
                     // 完全禁用客户端keepalive，避免发送ping
 //                    .disableKeepAlive()// 禁用keepalive
                     .maxInboundMessageSize(10 * 1024 * 1024)  // 10MB
+                    .compressorRegistry(grpcCompression.getCompressorRegistry())
+                    .decompressorRegistry(grpcCompression.getDecompressorRegistry())
                     .build();
                 
-            blockingStub = PluginServiceGrpc.newBlockingStub(channel)
+            PluginServiceGrpc.PluginServiceBlockingStub stub = PluginServiceGrpc.newBlockingStub(channel)
                     .withMaxInboundMessageSize(10 * 1024 * 1024);  // 10MB
+            if (grpcCompression.getClientCompression() != null) {
+                stub = stub.withCompression(grpcCompression.getClientCompression());
+            }
+            blockingStub = stub;
                 
+            // 通道按需建立连接，这里不再同步注册，注册由启动流程或心跳触发
             logger.info("gRPC通道初始化成功");
-            
-            // 立即尝试注册，确保连接有效
-            if (pluginId == null || pluginId.isEmpty()) {
-                registerPlugin();
-            }
         } catch (Exception e) {
             logger.error("初始化gRPC通道时发生错误: {}", e.getMessage());
             channel = null;
@@ -132,6 +148,15 @@ public class PluginGrpcService {
     // 修改注册方法，增加错误处理和重试逻辑
     // 修改注册方法
     public void registerPlugin() {
+        synchronized (registrationLock) {
+            if (isRegistered()) {
+                return;
+            }
+            doRegisterPlugin();
+        }
+    }
+
+    private void doRegisterPlugin() {
         if (blockingStub == null) {
             logger.warn("blockingStub为空，尝试重新初始化gRPC通道");
             initGrpcChannel();
@@ -191,6 +216,46 @@ public class PluginGrpcService {
         }
     }
 
+    public boolean isRegistered() {
+        return pluginId != null && !pluginId.isEmpty();
+    }
+
+    /**
+     * 在后台线程中注册插件，失败时按指数退避重试，不阻塞启动。重试用完后由心跳继续尝试。
+     */
+    public synchronized CompletableFuture<Boolean> registerPluginInBackground(int attempts) {
+        if (registrationExecutor == null) {
+            registrationExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "plugin-registration");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        backgroundRegistering = true;
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                for (int attempt = 1; attempt <= attempts && !isRegistered(); attempt++) {
+                    registerPlugin();
+                    if (isRegistered()) {
+                        break;
+                    }
+                    try {
+                        Thread.sleep(Math.min(1000L << (attempt - 1), 30000L));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                if (!isRegistered()) {
+                    logger.warn("后台注册插件失败，将由心跳继续重试");
+                }
+                return isRegistered();
+            } finally {
+                backgroundRegistering = false;
+            }
+        }, registrationExecutor);
+    }
+
     public StatusResponse getStatus() {
         if (pluginId == null) {
             logger.warn("Cannot get status, plugin not registered");
@@ -267,6 +332,11 @@ public class PluginGrpcService {
     @PreDestroy
     public void shutdown() {
         logger.info("Shutting down gRPC channel");
+        synchronized (this) {
+            if (registrationExecutor != null) {
+                registrationExecutor.shutdownNow();
+            }
+        }
         try {
             stopPlugin();
             channel.shutdown().awaitTermination(5, TimeUnit.SECONDS);
@@ -289,6 +359,9 @@ public class PluginGrpcService {
     
     // 重新初始化
     initGrpcChannel();
+    if (!isRegistered()) {
+    registerPlugin();
+    }
     
     // 如果仍然无效，增加重试计数
     if (blockingStub == null || pluginId == null || pluginId.isEmpty()) {
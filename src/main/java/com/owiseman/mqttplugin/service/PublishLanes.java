@@ -0,0 +1,286 @@
+package com.owiseman.mqttplugin.service;
+
+import com.owiseman.mqttplugin.metrics.LatencyHistogram;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.util.ReferenceCountUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * 按优先级分通道的内部发布队列。
+ * <p>
+ * 每个优先级有独立的有界队列，由单个分发线程按权重调度：连续处理 controlWeight 条控制消息后，
+ * 若遥测队列非空则让出一条给遥测，因此遥测突发不会让控制命令排在整批遥测之后，遥测也不会被饿死。
+ * <p>
+ * 消息可以带过期时间（MQTT 5 message expiry），出队时已过期的消息直接丢弃；过期只在本队列中执行，
+ * 交给代理之后（包括离线会话队列）不再检查。receiveMaximum 限制同一主题在本队列中同时排队的消息数
+ * （按 {@link TopicTable} 的主题ID计数），代理变慢时单个主题的命令不会无限堆积；它不是按客户端的流控。
+ */
+public class PublishLanes {
+
+    private static final Logger logger = LoggerFactory.getLogger(PublishLanes.class);
+
+    private final Consumer<MqttPublishMessage> publisher;
+    private volatile int controlWeight;
+    private final Map<PublishPriority, Lane> lanes = new EnumMap<>(PublishPriority.class);
+    private final Semaphore pending = new Semaphore(0);
+    private final AtomicReferenceArray<AtomicIntegerArray> inFlight;
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong quotaExceeded = new AtomicLong();
+    private volatile int receiveMaximum;
+
+    private volatile boolean running;
+    // offer持读锁完成“检查running并入队”，stop持写锁切换running，停止后不会再有消息漏在队列里
+    private final ReadWriteLock gate = new ReentrantReadWriteLock();
+    private Thread dispatcher;
+
+    public PublishLanes(Consumer<MqttPublishMessage> publisher, int controlCapacity, int telemetryCapacity, int controlWeight,
+                        int receiveMaximum, int topicCapacity) {
+        if (controlWeight < 1) {
+            throw new IllegalArgumentException("controlWeight must be at least 1");
+        }
+        if (receiveMaximum < 0) {
+            throw new IllegalArgumentException("receiveMaximum must not be negative");
+        }
+        this.publisher = publisher;
+        this.controlWeight = controlWeight;
+        this.receiveMaximum = receiveMaximum;
+        this.inFlight = new AtomicReferenceArray<>((topicCapacity + TopicTable.CHUNK_SIZE - 1) >>> TopicTable.CHUNK_BITS);
+        lanes.put(PublishPriority.CONTROL, new Lane(controlCapacity));
+        lanes.put(PublishPriority.TELEMETRY, new Lane(telemetryCapacity));
+    }
+
+    /**
+     * 运行时调整控制通道权重，分发线程在下一次调度时生效。
+     */
+    public void setControlWeight(int controlWeight) {
+        if (controlWeight < 1) {
+            throw new IllegalArgumentException("controlWeight must be at least 1");
+        }
+        this.controlWeight = controlWeight;
+    }
+
+    /**
+     * 运行时调整单个主题的排队上限，0表示不限制；已排队的消息不受影响。
+     */
+    public void setReceiveMaximum(int receiveMaximum) {
+        if (receiveMaximum < 0) {
+            throw new IllegalArgumentException("receiveMaximum must not be negative");
+        }
+        this.receiveMaximum = receiveMaximum;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        dispatcher = new Thread(this::dispatchLoop, "mqtt-publish-lanes");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * 停止接收新消息，并在超时时间内把已排队的消息发布完。
+     */
+    public synchronized void stop(long timeoutMillis) {
+        if (!running) {
+            return;
+        }
+        gate.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            gate.writeLock().unlock();
+        }
+        pending.release();
+        try {
+            dispatcher.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (dispatcher.isAlive()) {
+            dispatcher.interrupt();
+        }
+        for (Lane lane : lanes.values()) {
+            Entry entry;
+            while ((entry = lane.queue.poll()) != null) {
+                lane.dropped.incrementAndGet();
+                release(entry);
+            }
+        }
+        pending.drainPermits();
+    }
+
+    /**
+     * 将消息放入对应通道；未能入队时释放消息并返回原因。
+     *
+     * @param topicId   主题在 {@link TopicTable} 中的ID，-1表示不参与单主题限流
+     * @param expiresAt 过期时刻（System.nanoTime()），0表示不过期
+     */
+    public PublishReason offer(PublishPriority priority, MqttPublishMessage message, int topicId, long expiresAt) {
+        gate.readLock().lock();
+        try {
+            return enqueue(lanes.get(priority), message, topicId, expiresAt);
+        } finally {
+            gate.readLock().unlock();
+        }
+    }
+
+    private PublishReason enqueue(Lane lane, MqttPublishMessage message, int topicId, long expiresAt) {
+        if (!running) {
+            lane.dropped.incrementAndGet();
+            ReferenceCountUtil.release(message);
+            return PublishReason.SERVER_UNAVAILABLE;
+        }
+        int limit = receiveMaximum;
+        AtomicIntegerArray counters = null;
+        int slot = topicId & (TopicTable.CHUNK_SIZE - 1);
+        if (limit > 0 && topicId >= 0) {
+            counters = TopicTable.chunk(inFlight, topicId >>> TopicTable.CHUNK_BITS, AtomicIntegerArray::new);
+            if (counters.incrementAndGet(slot) > limit) {
+                counters.decrementAndGet(slot);
+                quotaExceeded.incrementAndGet();
+                lane.dropped.incrementAndGet();
+                ReferenceCountUtil.release(message);
+                return PublishReason.QUOTA_EXCEEDED;
+            }
+        }
+        Entry entry = new Entry(message, System.nanoTime(), expiresAt, counters != null ? topicId : -1);
+        if (!lane.queue.offer(entry)) {
+            lane.dropped.incrementAndGet();
+            release(entry);
+            return PublishReason.QUOTA_EXCEEDED;
+        }
+        lane.enqueued.incrementAndGet();
+        pending.release();
+        return PublishReason.SUCCESS;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        lanes.forEach((priority, lane) -> {
+            Map<String, Object> laneStats = new HashMap<>();
+            laneStats.put("depth", lane.queue.size());
+            laneStats.put("capacity", lane.capacity);
+            laneStats.put("enqueued", lane.enqueued.get());
+            laneStats.put("published", lane.published.get());
+            laneStats.put("dropped", lane.dropped.get());
+            laneStats.put("failed", lane.failed.get());
+            laneStats.put("latency", lane.latency.snapshot());
+            stats.put(priority.name().toLowerCase(), laneStats);
+        });
+        stats.put("controlWeight", controlWeight);
+        stats.put("receiveMaximum", receiveMaximum);
+        stats.put("expired", expired.get());
+        stats.put("quotaExceeded", quotaExceeded.get());
+        return stats;
+    }
+
+    private void dispatchLoop() {
+        Lane control = lanes.get(PublishPriority.CONTROL);
+        Lane telemetry = lanes.get(PublishPriority.TELEMETRY);
+        int controlStreak = 0;
+
+        while (running || pending.availablePermits() > 0) {
+            try {
+                pending.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            Lane lane;
+            if (controlStreak >= controlWeight && !telemetry.queue.isEmpty()) {
+                lane = telemetry;
+                controlStreak = 0;
+            } else if (!control.queue.isEmpty()) {
+                lane = control;
+                controlStreak++;
+            } else {
+                lane = telemetry;
+                controlStreak = 0;
+            }
+
+            Entry entry = lane.queue.poll();
+            if (entry == null) {
+                // 停止信号或另一通道中的消息
+                entry = (lane == control ? telemetry : control).queue.poll();
+                if (entry == null) {
+                    continue;
+                }
+                lane = lane == control ? telemetry : control;
+            }
+
+            long now = System.nanoTime();
+            if (entry.expiresAt != 0 && now - entry.expiresAt >= 0) {
+                // 已过期的命令不再投递
+                expired.incrementAndGet();
+                release(entry);
+                continue;
+            }
+            releaseSlot(entry);
+            try {
+                publisher.accept(entry.message);
+                lane.published.incrementAndGet();
+            } catch (Exception e) {
+                lane.failed.incrementAndGet();
+                logger.error("Failed to publish queued message: {}", e.getMessage());
+            }
+            lane.latency.recordNanos(System.nanoTime() - entry.enqueuedAt);
+        }
+    }
+
+    private void release(Entry entry) {
+        releaseSlot(entry);
+        ReferenceCountUtil.release(entry.message);
+    }
+
+    private void releaseSlot(Entry entry) {
+        if (entry.topicId >= 0) {
+            inFlight.get(entry.topicId >>> TopicTable.CHUNK_BITS).decrementAndGet(entry.topicId & (TopicTable.CHUNK_SIZE - 1));
+        }
+    }
+
+    private static final class Lane {
+        final int capacity;
+        final BlockingQueue<Entry> queue;
+        final AtomicLong enqueued = new AtomicLong();
+        final AtomicLong published = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        Lane(int capacity) {
+            this.capacity = capacity;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+    }
+
+    private static final class Entry {
+        final MqttPublishMessage message;
+        final long enqueuedAt;
+        final long expiresAt;
+        final int topicId;
+
+        Entry(MqttPublishMessage message, long enqueuedAt, long expiresAt, int topicId) {
+            this.message = message;
+            this.enqueuedAt = enqueuedAt;
+            this.expiresAt = expiresAt;
+            this.topicId = topicId;
+        }
+    }
+}
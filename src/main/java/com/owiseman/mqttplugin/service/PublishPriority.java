@@ -0,0 +1,29 @@
+package com.owiseman.mqttplugin.service;
+
+/**
+ * 内部发布消息的优先级通道。CONTROL 用于设备控制命令，TELEMETRY 用于批量遥测数据。
+ */
+public enum PublishPriority {
+    CONTROL,
+    TELEMETRY;
+
+    /**
+     * 解析请求中的优先级参数，为空时返回null，由主题前缀决定。
+     */
+    public static PublishPriority parse(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        switch (value.trim().toLowerCase()) {
+            case "control":
+            case "high":
+                return CONTROL;
+            case "telemetry":
+            case "bulk":
+            case "normal":
+                return TELEMETRY;
+            default:
+                throw new IllegalArgumentException("Unknown priority: " + value);
+        }
+    }
+}
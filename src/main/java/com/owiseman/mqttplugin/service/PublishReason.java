@@ -0,0 +1,28 @@
+package com.owiseman.mqttplugin.service;
+
+/**
+ * 内部发布结果，取值沿用MQTT 5 PUBACK原因码，便于调用方与设备端统一处理。
+ */
+public enum PublishReason {
+    SUCCESS(0x00),
+    UNSPECIFIED_ERROR(0x80),
+    // 请求了当前配置无法执行的特性，例如未启用发布队列时指定消息过期
+    IMPLEMENTATION_SPECIFIC_ERROR(0x83),
+    SERVER_UNAVAILABLE(0x88),
+    TOPIC_NAME_INVALID(0x90),
+    QUOTA_EXCEEDED(0x97);
+
+    private final int code;
+
+    PublishReason(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public boolean isSuccess() {
+        return this == SUCCESS;
+    }
+}
@@ -0,0 +1,55 @@
+package com.owiseman.mqttplugin.service;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 一组主题过滤器，按 {@link TopicTable} 的主题ID缓存匹配结果。
+ * <p>
+ * 每个主题只做一次通配符匹配，之后是一次数组读取。过滤器不可变，热更新时整体替换为新的实例，
+ * 缓存随之丢弃。主题未能驻留（表已满）时退回到逐个匹配。
+ */
+public final class TopicFilterSet {
+
+    private static final byte UNKNOWN = 0;
+    private static final byte MATCH = 1;
+    private static final byte NO_MATCH = 2;
+
+    private final TopicTable topicTable;
+    private final List<String> filters;
+    private final AtomicReferenceArray<byte[]> cache;
+
+    TopicFilterSet(TopicTable topicTable, List<String> filters) {
+        this.topicTable = topicTable;
+        this.filters = List.copyOf(filters);
+        this.cache = filters.isEmpty() ? null
+                : new AtomicReferenceArray<>((topicTable.getCapacity() + TopicTable.CHUNK_SIZE - 1) >>> TopicTable.CHUNK_BITS);
+    }
+
+    public boolean isEmpty() {
+        return filters.isEmpty();
+    }
+
+    public List<String> getFilters() {
+        return filters;
+    }
+
+    public boolean matches(String topic) {
+        if (cache == null) {
+            return false;
+        }
+        int id = topicTable.intern(topic);
+        if (id < 0) {
+            return TopicMatcher.matchesAny(filters, topic);
+        }
+        byte[] chunk = TopicTable.chunk(cache, id >>> TopicTable.CHUNK_BITS, byte[]::new);
+        int slot = id & (TopicTable.CHUNK_SIZE - 1);
+        byte state = chunk[slot];
+        if (state == UNKNOWN) {
+            // 并发时可能重复计算，结果相同，无需同步
+            state = TopicMatcher.matchesAny(filters, topic) ? MATCH : NO_MATCH;
+            chunk[slot] = state;
+        }
+        return state == MATCH;
+    }
+}
@@ -0,0 +1,85 @@
+package com.owiseman.mqttplugin.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * MQTT主题过滤器匹配工具，支持 "+" 单层通配符和 "#" 多层通配符。
+ */
+public final class TopicMatcher {
+
+    private TopicMatcher() {
+    }
+
+    public static boolean matches(String filter, String topic) {
+        if (filter == null || topic == null) {
+            return false;
+        }
+        if ("#".equals(filter)) {
+            return !topic.startsWith("$");
+        }
+
+        int f = 0;
+        int t = 0;
+        int filterLength = filter.length();
+        int topicLength = topic.length();
+
+        while (f < filterLength) {
+            int filterEnd = filter.indexOf('/', f);
+            if (filterEnd < 0) {
+                filterEnd = filterLength;
+            }
+
+            // "#" 匹配剩余所有层级（包括父层级本身）
+            if (filterEnd - f == 1 && filter.charAt(f) == '#') {
+                return true;
+            }
+            if (t > topicLength) {
+                return false;
+            }
+
+            int topicEnd = topic.indexOf('/', t);
+            if (topicEnd < 0) {
+                topicEnd = topicLength;
+            }
+
+            boolean singleLevel = filterEnd - f == 1 && filter.charAt(f) == '+';
+            if (!singleLevel && !filter.regionMatches(f, topic, t, Math.max(filterEnd - f, topicEnd - t))) {
+                return false;
+            }
+
+            f = filterEnd + 1;
+            t = topicEnd + 1;
+        }
+
+        return t > topicLength;
+    }
+
+    public static boolean matchesAny(Collection<String> filters, String topic) {
+        for (String filter : filters) {
+            if (matches(filter, topic)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 解析逗号分隔的主题过滤器列表，忽略空项。
+     */
+    public static List<String> parseFilters(String filters) {
+        if (filters == null || filters.isBlank()) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>();
+        for (String filter : filters.split(",")) {
+            String trimmed = filter.trim();
+            if (!trimmed.isEmpty()) {
+                result.add(trimmed);
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+}
@@ -0,0 +1,152 @@
+package com.owiseman.mqttplugin.service;
+
+import com.owiseman.mqttplugin.config.MqttConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+/**
+ * 主题驻留表：为每个主题分配一个稳定的整数ID，并保存主题字符串的规范实例。
+ * <p>
+ * 以主题为键的结构（历史序列等）使用规范实例，避免每条消息解码出的主题字符串各占一份堆内存；
+ * {@link TopicFilterSet} 以ID为下标缓存通配符匹配结果，热路径上的匹配退化为一次数组读取。
+ * ID按4096个一块分配，容量用满后不再驻留新主题，调用方退回到直接使用原字符串。
+ * <p>
+ * 驻留的主题不会释放：ID同时是各 {@link TopicFilterSet} 匹配缓存与发布通道单主题计数的下标，
+ * 回收ID需要同步清理所有这些结构。内存上限因此由 mqtt.topics.intern-capacity 决定，
+ * 默认65536个主题，约10MB，加上每个过滤器集合最多64KB的匹配缓存。
+ */
+@Component
+public class TopicTable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TopicTable.class);
+
+    static final int CHUNK_BITS = 12;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private final int capacity;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<String[]> chunks;
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+
+    @Autowired
+    public TopicTable(MqttConfig mqttConfig) {
+        this(mqttConfig.getTopicInternCapacity());
+    }
+
+    TopicTable(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalStateException("mqtt.topics.intern-capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.chunks = new AtomicReferenceArray<>((capacity + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+    }
+
+    /**
+     * 返回主题的ID，不存在时分配；表已满时返回-1。
+     */
+    public int intern(String topic) {
+        Integer id = ids.get(topic);
+        if (id != null) {
+            return id;
+        }
+        if (nextId.get() >= capacity) {
+            if (rejected.getAndIncrement() == 0) {
+                logger.warn("Topic table full ({} topics), new topics are no longer interned", capacity);
+            }
+            return -1;
+        }
+        id = ids.computeIfAbsent(topic, this::allocate);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * 已驻留主题的ID，不分配新ID；不存在时返回-1。
+     */
+    public int idOf(String topic) {
+        Integer id = ids.get(topic);
+        return id != null ? id : -1;
+    }
+
+    public String topic(int id) {
+        if (id < 0 || id >= nextId.get()) {
+            return null;
+        }
+        String[] chunk = chunks.get(id >>> CHUNK_BITS);
+        return chunk != null ? chunk[id & (CHUNK_SIZE - 1)] : null;
+    }
+
+    /**
+     * 主题字符串的规范实例；未能驻留时返回参数本身。
+     */
+    public String canonical(String topic) {
+        int id = intern(topic);
+        if (id < 0) {
+            return topic;
+        }
+        String canonical = topic(id);
+        return canonical != null ? canonical : topic;
+    }
+
+    public TopicFilterSet filterSet(List<String> filters) {
+        return new TopicFilterSet(this, filters);
+    }
+
+    public int size() {
+        return Math.min(nextId.get(), capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("topics", ids.size());
+        stats.put("capacity", capacity);
+        stats.put("rejected", rejected.get());
+        int allocatedChunks = 0;
+        for (int i = 0; i < chunks.length(); i++) {
+            if (chunks.get(i) != null) {
+                allocatedChunks++;
+            }
+        }
+        stats.put("allocatedChunks", allocatedChunks);
+        return stats;
+    }
+
+    private Integer allocate(String topic) {
+        int id = nextId.getAndIncrement();
+        if (id >= capacity) {
+            // 与其他线程竞争时超出容量：不驻留，由调用方使用原字符串
+            nextId.set(capacity);
+            rejected.incrementAndGet();
+            return null;
+        }
+        chunk(chunks, id >>> CHUNK_BITS, String[]::new)[id & (CHUNK_SIZE - 1)] = topic;
+        return id;
+    }
+
+    /**
+     * 返回下标处的块，不存在时以CAS方式创建。
+     */
+    static <T> T chunk(AtomicReferenceArray<T> chunks, int index, IntFunction<T> factory) {
+        T chunk = chunks.get(index);
+        if (chunk == null) {
+            chunks.compareAndSet(index, null, factory.apply(CHUNK_SIZE));
+            chunk = chunks.get(index);
+        }
+        return chunk;
+    }
+}
@@ -0,0 +1,94 @@
+package com.owiseman.mqttplugin.session;
+
+import io.moquette.broker.IQueueRepository;
+import io.moquette.broker.SessionMessageQueue;
+import io.moquette.broker.SessionRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 包装代理的队列仓库，为每个会话返回 {@link BoundedSessionQueue}。每次代理启动创建一个新实例。
+ */
+final class BoundedQueueRepository implements IQueueRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(BoundedQueueRepository.class);
+
+    private final IQueueRepository delegate;
+    private final int maxMessages;
+    private final long maxBytes;
+    private final boolean dropNewest;
+    private final Map<String, BoundedSessionQueue> queues = new ConcurrentHashMap<>();
+    // 计数器由调用方持有，代理重启后继续累计
+    private final AtomicLong dropped;
+    private final AtomicLong overflows;
+
+    BoundedQueueRepository(IQueueRepository delegate, int maxMessages, long maxBytes, boolean dropNewest,
+                           AtomicLong dropped, AtomicLong overflows) {
+        this.delegate = delegate;
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.dropNewest = dropNewest;
+        this.dropped = dropped;
+        this.overflows = overflows;
+    }
+
+    @Override
+    public Set<String> listQueueNames() {
+        return delegate.listQueueNames();
+    }
+
+    @Override
+    public boolean containsQueue(String clientId) {
+        return delegate.containsQueue(clientId);
+    }
+
+    @Override
+    public SessionMessageQueue<SessionRegistry.EnqueuedMessage> getOrCreateQueue(String clientId) {
+        return queues.computeIfAbsent(clientId,
+                id -> new BoundedSessionQueue(id, delegate.getOrCreateQueue(id), this));
+    }
+
+    /**
+     * 包装代理启动时已经创建的会话队列（从持久化存储恢复的会话）。
+     */
+    BoundedSessionQueue wrap(String clientId, SessionMessageQueue<SessionRegistry.EnqueuedMessage> queue) {
+        if (queue instanceof BoundedSessionQueue) {
+            return (BoundedSessionQueue) queue;
+        }
+        return queues.computeIfAbsent(clientId, id -> new BoundedSessionQueue(id, queue, this));
+    }
+
+    Collection<BoundedSessionQueue> queues() {
+        return queues.values();
+    }
+
+    boolean isDropNewest() {
+        return dropNewest;
+    }
+
+    boolean exceeds(int depth, long bytes) {
+        return (maxMessages > 0 && depth > maxMessages) || (maxBytes > 0 && bytes > maxBytes);
+    }
+
+    /**
+     * 记录一条被丢弃的消息；每次队列从未超限变为超限（firstInOverflow）时记一次溢出并告警。
+     */
+    void onDropped(String clientId, boolean firstInOverflow) {
+        dropped.incrementAndGet();
+        if (firstInOverflow) {
+            overflows.incrementAndGet();
+            logger.warn("Offline queue of client {} reached its limit, dropping {} messages", clientId,
+                    dropNewest ? "new" : "the oldest");
+        }
+    }
+
+    void remove(String clientId, BoundedSessionQueue queue) {
+        queues.remove(clientId, queue);
+    }
+}
@@ -0,0 +1,136 @@
+package com.owiseman.mqttplugin.session;
+
+import io.moquette.broker.SessionMessageQueue;
+import io.moquette.broker.SessionRegistry;
+
+/**
+ * 单个会话的有界消息队列，包装Moquette原有的会话队列（内存或H2存储）。
+ * <p>
+ * 只对PUBLISH计数与限流；QoS 2的PUBREL标记不占配额也从不丢弃，丢弃最旧消息时遇到的标记移到队尾
+ * （PUBREL按报文ID处理，与PUBLISH的相对顺序无关）。计数只覆盖经由本包装入队的消息：
+ * 从持久化存储恢复的会话在包装前已排队的消息不计入，队列排空时计数重新对齐。
+ * <p>
+ * Moquette在会话线程上访问队列，统计从其他线程读取，计数字段为volatile，修改均在锁内进行。
+ */
+final class BoundedSessionQueue implements SessionMessageQueue<SessionRegistry.EnqueuedMessage> {
+
+    private final String clientId;
+    private final SessionMessageQueue<SessionRegistry.EnqueuedMessage> delegate;
+    private final BoundedQueueRepository repository;
+    private volatile int depth;
+    private volatile long bytes;
+    private int markers;
+    // 超限后置位，队列排空时复位，用于每次溢出只告警一次
+    private boolean overflowing;
+
+    BoundedSessionQueue(String clientId, SessionMessageQueue<SessionRegistry.EnqueuedMessage> delegate,
+                        BoundedQueueRepository repository) {
+        this.clientId = clientId;
+        this.delegate = delegate;
+        this.repository = repository;
+    }
+
+    @Override
+    public synchronized void enqueue(SessionRegistry.EnqueuedMessage message) {
+        if (!(message instanceof SessionRegistry.PublishedMessage)) {
+            delegate.enqueue(message);
+            markers++;
+            return;
+        }
+        long size = sizeOf(message);
+        if (repository.isDropNewest() && repository.exceeds(depth + 1, bytes + size)) {
+            // 入队前会话已为队列保留了一次引用
+            message.release();
+            dropped();
+            return;
+        }
+        delegate.enqueue(message);
+        depth++;
+        bytes += size;
+        while (repository.exceeds(depth, bytes) && dropOldest()) {
+            dropped();
+        }
+    }
+
+    @Override
+    public synchronized SessionRegistry.EnqueuedMessage dequeue() {
+        SessionRegistry.EnqueuedMessage message = delegate.dequeue();
+        if (message instanceof SessionRegistry.PublishedMessage) {
+            uncount(message);
+            if (depth == 0) {
+                overflowing = false;
+            }
+        } else if (message != null) {
+            markers = Math.max(0, markers - 1);
+        }
+        return message;
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        boolean empty = delegate.isEmpty();
+        if (empty) {
+            depth = 0;
+            bytes = 0;
+            markers = 0;
+            overflowing = false;
+        }
+        return empty;
+    }
+
+    @Override
+    public synchronized void closeAndPurge() {
+        delegate.closeAndPurge();
+        depth = 0;
+        bytes = 0;
+        markers = 0;
+        repository.remove(clientId, this);
+    }
+
+    String getClientId() {
+        return clientId;
+    }
+
+    int getDepth() {
+        return depth;
+    }
+
+    long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * 丢弃队首的一条PUBLISH，途中遇到的PUBREL标记移到队尾。队列中没有可丢弃的消息时返回false并重新对齐计数。
+     */
+    private boolean dropOldest() {
+        for (int skipped = 0; skipped <= markers; skipped++) {
+            SessionRegistry.EnqueuedMessage head = delegate.dequeue();
+            if (head == null) {
+                break;
+            }
+            if (head instanceof SessionRegistry.PublishedMessage) {
+                uncount(head);
+                head.release();
+                return true;
+            }
+            delegate.enqueue(head);
+        }
+        depth = 0;
+        bytes = 0;
+        return false;
+    }
+
+    private void dropped() {
+        repository.onDropped(clientId, !overflowing);
+        overflowing = true;
+    }
+
+    private void uncount(SessionRegistry.EnqueuedMessage message) {
+        depth = Math.max(0, depth - 1);
+        bytes = Math.max(0, bytes - sizeOf(message));
+    }
+
+    private static long sizeOf(SessionRegistry.EnqueuedMessage message) {
+        return ((SessionRegistry.PublishedMessage) message).getPayload().readableBytes();
+    }
+}
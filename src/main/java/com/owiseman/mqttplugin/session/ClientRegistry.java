@@ -0,0 +1,106 @@
+package com.owiseman.mqttplugin.session;
+
+import com.owiseman.mqttplugin.auth.ReloadableAuthenticator;
+import io.moquette.interception.AbstractInterceptHandler;
+import io.moquette.interception.messages.InterceptConnectMessage;
+import io.moquette.interception.messages.InterceptConnectionLostMessage;
+import io.moquette.interception.messages.InterceptDisconnectMessage;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 当前连接的客户端，供管理接口列出与统计。插件内部维护连接（用户名为内部用户）不计入。
+ */
+@Component
+public class ClientRegistry extends AbstractInterceptHandler {
+
+    private final Map<String, ConnectedClient> clients = new ConcurrentHashMap<>();
+
+    @Override
+    public String getID() {
+        return "client-registry";
+    }
+
+    @Override
+    public Class<?>[] getInterceptedMessageTypes() {
+        return new Class<?>[]{InterceptConnectMessage.class, InterceptDisconnectMessage.class,
+                InterceptConnectionLostMessage.class};
+    }
+
+    @Override
+    public void onConnect(InterceptConnectMessage message) {
+        if (ReloadableAuthenticator.INTERNAL_USERNAME.equals(message.getUsername())) {
+            return;
+        }
+        clients.put(message.getClientID(), new ConnectedClient(message.getClientID(), message.getUsername(),
+                message.isCleanSession(), System.currentTimeMillis()));
+    }
+
+    // 被接管的连接在Moquette 0.16中不触发断开事件，由接管它的内部连接断开时移除（内部连接本身不计入）
+    @Override
+    public void onDisconnect(InterceptDisconnectMessage message) {
+        clients.remove(message.getClientID());
+    }
+
+    @Override
+    public void onConnectionLost(InterceptConnectionLostMessage message) {
+        clients.remove(message.getClientID());
+    }
+
+    public int size() {
+        return clients.size();
+    }
+
+    public boolean isConnected(String clientId) {
+        return clients.containsKey(clientId);
+    }
+
+    /**
+     * 按客户端ID排序，返回前limit个以prefix开头的客户端。
+     */
+    public List<ConnectedClient> list(String prefix, int limit) {
+        List<ConnectedClient> result = new ArrayList<>();
+        for (ConnectedClient client : clients.values()) {
+            if (prefix == null || client.getClientId().startsWith(prefix)) {
+                result.add(client);
+            }
+        }
+        result.sort(Comparator.comparing(ConnectedClient::getClientId));
+        return result.size() > limit ? result.subList(0, limit) : result;
+    }
+
+    public static final class ConnectedClient {
+        private final String clientId;
+        private final String username;
+        private final boolean cleanSession;
+        private final long connectedAt;
+
+        ConnectedClient(String clientId, String username, boolean cleanSession, long connectedAt) {
+            this.clientId = clientId;
+            this.username = username;
+            this.cleanSession = cleanSession;
+            this.connectedAt = connectedAt;
+        }
+
+        public String getClientId() {
+            return clientId;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public boolean isCleanSession() {
+            return cleanSession;
+        }
+
+        public long getConnectedAt() {
+            return connectedAt;
+        }
+    }
+}
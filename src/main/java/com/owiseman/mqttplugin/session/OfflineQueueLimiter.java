@@ -0,0 +1,152 @@
+package com.owiseman.mqttplugin.session;
+
+import com.owiseman.mqttplugin.config.MqttConfig;
+import io.moquette.broker.IQueueRepository;
+import io.moquette.broker.Server;
+import io.moquette.broker.SessionMessageQueue;
+import io.moquette.broker.SessionRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 持久会话消息队列的上限控制。
+ * <p>
+ * Moquette 0.16 为持久会话无限制地排队QoS 1/2消息（客户端离线，或在途窗口已满时）。代理启动后，
+ * {@link #install(Server)} 用 {@link BoundedQueueRepository} 替换代理的队列仓库，并包装已恢复会话的队列，
+ * 每个客户端的队列超过 mqtt.offline-queue.max-messages / max-bytes 时按 mqtt.offline-queue.policy 丢弃消息：
+ * {@code drop-oldest}（默认）丢弃最旧的消息，{@code drop-newest} 丢弃新到的消息，{@code none} 不限制。
+ * 会话与订阅始终保留。配置 mqtt.persistence.path 时队列仍保存在代理的磁盘存储中，上限同样生效。
+ * <p>
+ * Moquette 0.16 没有替换队列仓库的扩展点，仓库在 startServer 中固定创建，因此通过反射替换
+ * {@code SessionRegistry.queueRepository} 与 {@code Session.sessionQueue}。替换失败（代理版本不兼容）时
+ * 记录告警，队列保持不限制，统计中 installed 为 false。替换发生在代理开始监听之后，
+ * 极短的窗口内创建的会话可能使用未包装的队列。
+ */
+@Component
+public class OfflineQueueLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(OfflineQueueLimiter.class);
+
+    private static final String POLICY_NONE = "none";
+    private static final String POLICY_DROP_OLDEST = "drop-oldest";
+    private static final String POLICY_DROP_NEWEST = "drop-newest";
+    // 深度分布的桶上界，最后一桶为超过最大上界的部分
+    private static final int[] DEPTH_BUCKETS = {0, 10, 100, 1000, 10000, 100000};
+
+    private final int maxMessages;
+    private final long maxBytes;
+    private final String policy;
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final AtomicLong overflows = new AtomicLong();
+    // 当前代理实例的队列仓库，未安装时为null；重启后替换为新实例
+    private volatile BoundedQueueRepository repository;
+
+    @Autowired
+    public OfflineQueueLimiter(MqttConfig mqttConfig) {
+        this.maxMessages = mqttConfig.getOfflineQueueMaxMessages();
+        this.maxBytes = mqttConfig.getOfflineQueueMaxBytes();
+        String configured = mqttConfig.getOfflineQueuePolicy().trim().toLowerCase();
+        if (!POLICY_NONE.equals(configured) && !POLICY_DROP_OLDEST.equals(configured)
+                && !POLICY_DROP_NEWEST.equals(configured)) {
+            throw new IllegalStateException("Unsupported mqtt.offline-queue.policy: " + configured);
+        }
+        this.policy = configured;
+    }
+
+    /**
+     * 为刚启动的代理安装有界队列仓库，每次启动（包括重启）调用一次。
+     */
+    public void install(Server server) {
+        repository = null;
+        if (POLICY_NONE.equals(policy) || (maxMessages <= 0 && maxBytes <= 0)) {
+            return;
+        }
+        try {
+            Object sessions = field(Server.class, "sessions").get(server);
+            Field queueRepositoryField = field(SessionRegistry.class, "queueRepository");
+            BoundedQueueRepository bounded = new BoundedQueueRepository(
+                    (IQueueRepository) queueRepositoryField.get(sessions), maxMessages, maxBytes,
+                    POLICY_DROP_NEWEST.equals(policy), droppedMessages, overflows);
+            queueRepositoryField.set(sessions, bounded);
+
+            // 从持久化存储恢复的会话在启动时已创建队列
+            Class<?> sessionClass = Class.forName("io.moquette.broker.Session");
+            Field sessionQueueField = field(sessionClass, "sessionQueue");
+            Map<?, ?> pool = (Map<?, ?>) field(SessionRegistry.class, "pool").get(sessions);
+            for (Map.Entry<?, ?> entry : pool.entrySet()) {
+                @SuppressWarnings("unchecked")
+                SessionMessageQueue<SessionRegistry.EnqueuedMessage> queue =
+                        (SessionMessageQueue<SessionRegistry.EnqueuedMessage>) sessionQueueField.get(entry.getValue());
+                if (queue != null) {
+                    sessionQueueField.set(entry.getValue(), bounded.wrap((String) entry.getKey(), queue));
+                }
+            }
+            repository = bounded;
+            logger.info("Session queues bounded to {} messages / {} bytes ({})", maxMessages, maxBytes, policy);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.warn("Cannot bound session queues on this broker version, queues stay unbounded: {}",
+                    e.toString());
+        }
+    }
+
+    /**
+     * 会话队列深度分布与丢弃统计。
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        BoundedQueueRepository current = repository;
+        long[] histogram = new long[DEPTH_BUCKETS.length + 1];
+        long clients = 0;
+        long totalMessages = 0;
+        long totalBytes = 0;
+        int maxDepth = 0;
+        if (current != null) {
+            for (BoundedSessionQueue queue : current.queues()) {
+                int depth = queue.getDepth();
+                if (depth == 0) {
+                    continue;
+                }
+                clients++;
+                totalMessages += depth;
+                totalBytes += queue.getBytes();
+                maxDepth = Math.max(maxDepth, depth);
+                int bucket = 0;
+                while (bucket < DEPTH_BUCKETS.length && depth > DEPTH_BUCKETS[bucket]) {
+                    bucket++;
+                }
+                histogram[bucket]++;
+            }
+        }
+        Map<String, Long> distribution = new LinkedHashMap<>();
+        for (int i = 1; i < DEPTH_BUCKETS.length; i++) {
+            distribution.put("<=" + DEPTH_BUCKETS[i], histogram[i]);
+        }
+        distribution.put(">" + DEPTH_BUCKETS[DEPTH_BUCKETS.length - 1], histogram[DEPTH_BUCKETS.length]);
+        stats.put("installed", current != null);
+        stats.put("queuedClients", clients);
+        stats.put("queuedMessages", totalMessages);
+        stats.put("queuedBytes", totalBytes);
+        stats.put("maxDepth", maxDepth);
+        stats.put("depthDistribution", distribution);
+        stats.put("maxMessages", maxMessages);
+        stats.put("maxBytes", maxBytes);
+        stats.put("policy", policy);
+        stats.put("overflows", overflows.get());
+        stats.put("droppedMessages", droppedMessages.get());
+        return stats;
+    }
+
+    private static Field field(Class<?> type, String name) throws NoSuchFieldException {
+        Field field = type.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
+}
@@ -0,0 +1,279 @@
+package com.owiseman.mqttplugin.session;
+
+import com.owiseman.mqttplugin.admission.ConnectionAdmissionService;
+import com.owiseman.mqttplugin.auth.ReloadableAuthenticator;
+import com.owiseman.mqttplugin.config.MqttConfig;
+import io.moquette.interception.AbstractInterceptHandler;
+import io.moquette.interception.messages.InterceptConnectMessage;
+import io.moquette.interception.messages.InterceptConnectionLostMessage;
+import io.moquette.interception.messages.InterceptDisconnectMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 服务端会话过期（MQTT 5 session expiry 语义）。
+ * <p>
+ * Moquette 0.16 会无限期保留持久会话（cleanSession=false）及其离线消息队列。本拦截器记录持久会话客户端的
+ * 断开时间，离线超过 mqtt.mqtt5.session-expiry-seconds 后，以同一clientId和cleanSession=true
+ * 建立一次内部连接再断开，由代理按MQTT 3.1.1语义丢弃该会话及排队消息。
+ * 跟踪信息只保存在内存中，进程重启前已离线的会话不会过期。
+ */
+@Component
+public class SessionExpiryService extends AbstractInterceptHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionExpiryService.class);
+
+    private static final int SOCKET_TIMEOUT_MILLIS = 5000;
+    private static final int DISCONNECT_RETRY_MILLIS = 200;
+
+    private final MqttConfig mqttConfig;
+    private final ConnectionAdmissionService admissionService;
+    private final ReloadableAuthenticator authenticator;
+    private final Set<String> persistentClients = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> expiresAt = new ConcurrentHashMap<>();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private ScheduledExecutorService sweeper;
+
+    @Autowired
+    public SessionExpiryService(MqttConfig mqttConfig, ConnectionAdmissionService admissionService,
+                                ReloadableAuthenticator authenticator) {
+        this.mqttConfig = mqttConfig;
+        this.admissionService = admissionService;
+        this.authenticator = authenticator;
+    }
+
+    @PostConstruct
+    public void init() {
+        long expirySeconds = mqttConfig.getSessionExpirySeconds();
+        if (expirySeconds <= 0) {
+            return;
+        }
+        long period = Math.min(60, Math.max(1, expirySeconds / 4));
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "session-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.SECONDS);
+        logger.info("Session expiry enabled: persistent sessions are discarded {} s after disconnect", expirySeconds);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    @Override
+    public String getID() {
+        return "session-expiry";
+    }
+
+    @Override
+    public Class<?>[] getInterceptedMessageTypes() {
+        return new Class<?>[]{InterceptConnectMessage.class, InterceptDisconnectMessage.class,
+                InterceptConnectionLostMessage.class};
+    }
+
+    @Override
+    public void onConnect(InterceptConnectMessage message) {
+        // 接管用的内部连接与被接管的客户端同一clientId，不能改动该客户端的跟踪状态
+        if (isInternal(message.getUsername())) {
+            return;
+        }
+        String clientId = message.getClientID();
+        expiresAt.remove(clientId);
+        if (message.isCleanSession()) {
+            persistentClients.remove(clientId);
+        } else {
+            persistentClients.add(clientId);
+        }
+    }
+
+    @Override
+    public void onDisconnect(InterceptDisconnectMessage message) {
+        if (!isInternal(message.getUsername())) {
+            offline(message.getClientID());
+        }
+    }
+
+    @Override
+    public void onConnectionLost(InterceptConnectionLostMessage message) {
+        if (!isInternal(message.getUsername())) {
+            offline(message.getClientID());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("expirySeconds", mqttConfig.getSessionExpirySeconds());
+        stats.put("persistentClients", persistentClients.size());
+        stats.put("offlineSessions", expiresAt.size());
+        stats.put("expired", expired.get());
+        stats.put("failed", failed.get());
+        return stats;
+    }
+
+    /**
+     * 立即丢弃指定客户端的持久会话（阻塞，不可在代理的IO线程上调用）。
+     */
+    public void discardNow(String clientId) throws IOException {
+        expiresAt.remove(clientId);
+        takeover(clientId, true);
+        persistentClients.remove(clientId);
+    }
+
+    /**
+     * 以同一clientId接管并断开客户端的连接。
+     * <p>
+     * Moquette 0.16没有断开指定客户端的接口，不丢弃会话时只能以cleanSession=false的内部连接接管。
+     * 代理会把会话中未确认与排队的QoS 1/2消息发给这条内部连接；内部连接从不回复PUBACK，收到CONNACK后
+     * 立即发送DISCONNECT，这些消息仍留在会话的在途窗口里，客户端以原clientId重连时带DUP标志重发
+     * （见SessionExpiryServiceTest）。接管对会话的影响与客户端自己断线重连一次相同：Moquette 0.16每个新连接都从1
+     * 分配报文ID，重连后的新消息可能覆盖同ID的未确认消息，这一限制在任何重连时都存在。
+     * <p>
+     * Moquette不为被接管的连接触发断开事件，本服务忽略内部连接的事件，直接在接管后开始计算离线时间。
+     */
+    public void disconnect(String clientId, boolean discardSession) throws IOException {
+        if (discardSession) {
+            discardNow(clientId);
+        } else {
+            takeover(clientId, false);
+            // 被接管的连接不触发断开事件，在此开始计算离线时间
+            offline(clientId);
+        }
+    }
+
+    private static boolean isInternal(String username) {
+        return ReloadableAuthenticator.INTERNAL_USERNAME.equals(username);
+    }
+
+    private void offline(String clientId) {
+        long expirySeconds = mqttConfig.getSessionExpirySeconds();
+        if (expirySeconds > 0 && persistentClients.contains(clientId)) {
+            expiresAt.put(clientId, System.currentTimeMillis() + expirySeconds * 1000);
+        }
+    }
+
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Long> entry : expiresAt.entrySet()) {
+            String clientId = entry.getKey();
+            long deadline = entry.getValue();
+            // 客户端在此期间重连时onConnect已移除记录，remove失败即跳过
+            if (deadline > now || !expiresAt.remove(clientId, deadline)) {
+                continue;
+            }
+            try {
+                takeover(clientId, true);
+                persistentClients.remove(clientId);
+                expired.incrementAndGet();
+                logger.debug("Session of client {} expired", clientId);
+            } catch (IOException e) {
+                failed.incrementAndGet();
+                // 下一轮重试
+                expiresAt.putIfAbsent(clientId, deadline);
+                logger.warn("Failed to expire session of client {}: {}", clientId, e.getMessage());
+            }
+        }
+    }
+
+    // 以cleanSession=true接管并断开时代理随之丢弃旧会话
+    private void takeover(String clientId, boolean cleanSession) throws IOException {
+        String host = admissionService.getBrokerHost();
+        if ("0.0.0.0".equals(host) || "::".equals(host)) {
+            host = "127.0.0.1";
+        }
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, admissionService.getBrokerPort()), SOCKET_TIMEOUT_MILLIS);
+            socket.setSoTimeout(SOCKET_TIMEOUT_MILLIS);
+            OutputStream out = socket.getOutputStream();
+            out.write(connectPacket(clientId, cleanSession, authenticator.getInternalPassword()));
+            out.flush();
+            byte[] connack = socket.getInputStream().readNBytes(4);
+            if (connack.length < 4 || (connack[0] & 0xF0) != 0x20 || connack[3] != 0) {
+                throw new IOException("CONNACK rejected" + (connack.length == 4 ? " with code " + connack[3] : ""));
+            }
+            awaitDisconnected(socket, out);
+        }
+    }
+
+    /**
+     * 发送DISCONNECT并等待代理关闭连接，返回时会话已按cleanSession处理完毕。期间收到的PUBLISH不确认，留在会话中。
+     * <p>
+     * Moquette 0.16在回复CONNACK后才在会话线程上完成绑定，紧随其后的DISCONNECT偶尔在绑定前被处理并忽略，
+     * 连接保持打开，因此未关闭时定期重发。
+     */
+    private static void awaitDisconnected(Socket socket, OutputStream out) throws IOException {
+        InputStream in = socket.getInputStream();
+        byte[] discard = new byte[512];
+        socket.setSoTimeout(DISCONNECT_RETRY_MILLIS);
+        long deadline = System.currentTimeMillis() + SOCKET_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            out.write(new byte[]{(byte) 0xE0, 0x00});
+            out.flush();
+            try {
+                while (in.read(discard) >= 0) {
+                    // 丢弃
+                }
+                return;
+            } catch (SocketTimeoutException e) {
+                // 重发
+            }
+        }
+        throw new IOException("Broker did not close the takeover connection");
+    }
+
+    static byte[] connectPacket(String clientId, boolean cleanSession, byte[] password) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        writeField(body, "MQTT".getBytes(StandardCharsets.UTF_8));
+        body.write(4);
+        // 用户名、密码，以及可选的cleanSession
+        body.write(cleanSession ? 0xC2 : 0xC0);
+        body.write(0);
+        body.write(10);
+        writeField(body, clientId.getBytes(StandardCharsets.UTF_8));
+        writeField(body, ReloadableAuthenticator.INTERNAL_USERNAME.getBytes(StandardCharsets.UTF_8));
+        writeField(body, password);
+
+        ByteArrayOutputStream packet = new ByteArrayOutputStream(body.size() + 5);
+        packet.write(0x10);
+        int remaining = body.size();
+        do {
+            int digit = remaining & 0x7F;
+            remaining >>>= 7;
+            packet.write(remaining > 0 ? digit | 0x80 : digit);
+        } while (remaining > 0);
+        packet.writeBytes(body.toByteArray());
+        return packet.toByteArray();
+    }
+
+    private static void writeField(ByteArrayOutputStream out, byte[] value) {
+        out.write(value.length >>> 8);
+        out.write(value.length & 0xFF);
+        out.write(value, 0, value.length);
+    }
+}
@@ -0,0 +1,301 @@
+package com.owiseman.mqttplugin.sink;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.owiseman.mqttplugin.metrics.LatencyHistogram;
+import com.owiseman.mqttplugin.service.TopicFilterSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个HTTP投递目标。
+ * <p>
+ * 匹配的消息进入有界队列，由该目标的发送线程攒批：攒满 batch-size 条或首条消息等待超过 linger-ms 后，
+ * 以JSON数组POST到目标地址。HttpClient优先协商HTTP/2，在同一连接上复用请求，否则使用HTTP/1.1连接池。
+ * 失败按指数退避重试（网络错误、429与5xx），重试耗尽后丢弃该批。连续 failure-threshold 批失败时熔断
+ * open-ms，熔断期间新消息直接丢弃；到期后放行一批试探，成功则恢复。
+ */
+public class HttpSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpSink.class);
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    enum BreakerState {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final HttpSinkSettings settings;
+    private final TopicFilterSet topicFilters;
+    private final HttpClient client;
+    private final BlockingQueue<SinkRecord> queue;
+    private final Thread sender;
+    private volatile boolean running = true;
+
+    private volatile BreakerState breakerState = BreakerState.CLOSED;
+    private volatile long openUntil;
+    private int consecutiveFailures;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong failedRecords = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong droppedQueueFull = new AtomicLong();
+    private final AtomicLong droppedOpen = new AtomicLong();
+    private final LatencyHistogram batchLatency = new LatencyHistogram();
+
+    HttpSink(HttpSinkSettings settings, TopicFilterSet topicFilters) {
+        this.settings = settings;
+        this.topicFilters = topicFilters;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(settings.getTimeoutMillis()))
+                .build();
+        this.queue = new ArrayBlockingQueue<>(settings.getQueueCapacity());
+        this.sender = new Thread(this::sendLoop, "http-sink-" + settings.getName());
+        this.sender.setDaemon(true);
+        this.sender.start();
+    }
+
+    public HttpSinkSettings getSettings() {
+        return settings;
+    }
+
+    boolean accepts(String topic) {
+        return topicFilters.matches(topic);
+    }
+
+    /**
+     * 在代理线程上调用，不阻塞；队列已满或熔断中时丢弃消息。
+     */
+    void offer(SinkRecord record) {
+        if (breakerState == BreakerState.OPEN && System.currentTimeMillis() < openUntil) {
+            droppedOpen.incrementAndGet();
+            return;
+        }
+        if (queue.offer(record)) {
+            enqueued.incrementAndGet();
+        } else {
+            droppedQueueFull.incrementAndGet();
+        }
+    }
+
+    /**
+     * 同步发送一批记录，不经过队列、重试与熔断，用于检查目标是否可达。
+     *
+     * @return HTTP状态码
+     */
+    int sendTest(List<SinkRecord> records) throws IOException, InterruptedException {
+        return post(encode(records)).statusCode();
+    }
+
+    /**
+     * 停止发送线程，在超时时间内把已排队的消息发送完。
+     */
+    void close(long timeoutMillis) {
+        running = false;
+        try {
+            sender.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (sender.isAlive()) {
+            sender.interrupt();
+        }
+        client.shutdownNow();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("queueDepth", queue.size());
+        stats.put("queueCapacity", settings.getQueueCapacity());
+        stats.put("enqueued", enqueued.get());
+        stats.put("delivered", delivered.get());
+        stats.put("batches", batches.get());
+        stats.put("failedBatches", failedBatches.get());
+        stats.put("failedRecords", failedRecords.get());
+        stats.put("retries", retries.get());
+        stats.put("droppedQueueFull", droppedQueueFull.get());
+        stats.put("droppedCircuitOpen", droppedOpen.get());
+        stats.put("circuit", breakerState.name().toLowerCase());
+        stats.put("batchLatency", batchLatency.snapshot());
+        return stats;
+    }
+
+    private void sendLoop() {
+        List<SinkRecord> batch = new ArrayList<>(settings.getBatchSize());
+        while (running || !queue.isEmpty()) {
+            try {
+                if (isOpen()) {
+                    // 熔断期间不发送，排队的消息等待试探
+                    Thread.sleep(Math.min(100, Math.max(1, openUntil - System.currentTimeMillis())));
+                    continue;
+                }
+                SinkRecord first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long lingerDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.getLingerMillis());
+                while (batch.size() < settings.getBatchSize()) {
+                    if (queue.drainTo(batch, settings.getBatchSize() - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = lingerDeadline - System.nanoTime();
+                    if (remaining <= 0 || !running) {
+                        break;
+                    }
+                    SinkRecord next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                deliver(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.error("HTTP sink {} failed: {}", settings.getName(), e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // 熔断到期后转为半开，放行一批试探
+    private boolean isOpen() {
+        if (breakerState != BreakerState.OPEN) {
+            return false;
+        }
+        if (System.currentTimeMillis() < openUntil) {
+            return true;
+        }
+        breakerState = BreakerState.HALF_OPEN;
+        return false;
+    }
+
+    private void deliver(List<SinkRecord> batch) throws InterruptedException {
+        byte[] body = encode(batch);
+        long start = System.nanoTime();
+        long backoff = settings.getBackoffMillis();
+        for (int attempt = 0; ; attempt++) {
+            String failure;
+            boolean retryable;
+            try {
+                HttpResponse<Void> response = post(body);
+                int status = response.statusCode();
+                if (status >= 200 && status < 300) {
+                    batches.incrementAndGet();
+                    delivered.addAndGet(batch.size());
+                    batchLatency.recordNanos(System.nanoTime() - start);
+                    onSuccess();
+                    return;
+                }
+                failure = "HTTP " + status;
+                retryable = status == 429 || status >= 500;
+            } catch (IOException e) {
+                failure = e.getClass().getSimpleName() + ": " + e.getMessage();
+                retryable = true;
+            }
+
+            if (!retryable || attempt >= settings.getMaxRetries() || breakerState == BreakerState.HALF_OPEN) {
+                failedBatches.incrementAndGet();
+                failedRecords.addAndGet(batch.size());
+                logger.warn("HTTP sink {} dropped a batch of {} records: {}", settings.getName(), batch.size(), failure);
+                onFailure();
+                return;
+            }
+            retries.incrementAndGet();
+            Thread.sleep(backoff);
+            backoff = Math.min(backoff * 2, settings.getMaxBackoffMillis());
+        }
+    }
+
+    private HttpResponse<Void> post(byte[] body) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(settings.getUrl())
+                .timeout(Duration.ofMillis(settings.getTimeoutMillis()))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body));
+        if (settings.getAuthorization() != null) {
+            request.header("Authorization", settings.getAuthorization());
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.discarding());
+    }
+
+    private void onSuccess() {
+        consecutiveFailures = 0;
+        if (breakerState != BreakerState.CLOSED) {
+            logger.info("HTTP sink {} recovered, circuit closed", settings.getName());
+            breakerState = BreakerState.CLOSED;
+        }
+    }
+
+    private void onFailure() {
+        consecutiveFailures++;
+        if (breakerState == BreakerState.HALF_OPEN || consecutiveFailures >= settings.getFailureThreshold()) {
+            openUntil = System.currentTimeMillis() + settings.getOpenMillis();
+            breakerState = BreakerState.OPEN;
+            logger.warn("HTTP sink {} circuit opened for {} ms after {} consecutive failures",
+                    settings.getName(), settings.getOpenMillis(), consecutiveFailures);
+        }
+    }
+
+    // [{"topic": ..., "qos": ..., "timestamp": ..., "payload": ...}, ...]
+    private byte[] encode(List<SinkRecord> records) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(records.size() * 128);
+        try (JsonGenerator json = JSON.createGenerator(out)) {
+            json.writeStartArray();
+            for (SinkRecord record : records) {
+                json.writeStartObject();
+                json.writeStringField("topic", record.topic);
+                json.writeNumberField("qos", record.qos);
+                json.writeNumberField("timestamp", record.timestamp);
+                if (settings.isBase64()) {
+                    json.writeFieldName("payload");
+                    json.writeBinary(record.payload);
+                } else {
+                    json.writeStringField("payload", new String(record.payload, StandardCharsets.UTF_8));
+                }
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    static final class SinkRecord {
+        final String topic;
+        final byte[] payload;
+        final int qos;
+        final long timestamp;
+
+        SinkRecord(String topic, byte[] payload, int qos, long timestamp) {
+            this.topic = topic;
+            this.payload = payload;
+            this.qos = qos;
+            this.timestamp = timestamp;
+        }
+    }
+}
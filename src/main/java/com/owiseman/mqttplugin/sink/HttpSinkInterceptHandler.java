@@ -0,0 +1,43 @@
+package com.owiseman.mqttplugin.sink;
+
+import com.owiseman.mqttplugin.compression.PayloadCompressor;
+import io.moquette.interception.AbstractInterceptHandler;
+import io.moquette.interception.messages.InterceptPublishMessage;
+import io.netty.buffer.ByteBufUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * 把发布消息转交给 {@link HttpSinkService}。没有配置投递目标时直接返回，不读取负载。
+ */
+@Component
+public class HttpSinkInterceptHandler extends AbstractInterceptHandler {
+
+    private final HttpSinkService httpSinkService;
+    private final PayloadCompressor payloadCompressor;
+
+    @Autowired
+    public HttpSinkInterceptHandler(HttpSinkService httpSinkService, PayloadCompressor payloadCompressor) {
+        this.httpSinkService = httpSinkService;
+        this.payloadCompressor = payloadCompressor;
+    }
+
+    @Override
+    public String getID() {
+        return "http-sink";
+    }
+
+    @Override
+    public Class<?>[] getInterceptedMessageTypes() {
+        return new Class<?>[]{InterceptPublishMessage.class};
+    }
+
+    @Override
+    public void onPublish(InterceptPublishMessage message) {
+        if (httpSinkService.isEmpty()) {
+            return;
+        }
+        httpSinkService.dispatch(message.getTopicName(), message.getQos().value(),
+                () -> payloadCompressor.decode(ByteBufUtil.getBytes(message.getPayload())));
+    }
+}
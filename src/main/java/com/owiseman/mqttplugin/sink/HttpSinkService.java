@@ -0,0 +1,195 @@
+package com.owiseman.mqttplugin.sink;
+
+import com.owiseman.mqttplugin.config.MqttConfig;
+import com.owiseman.mqttplugin.service.TopicTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * 管理HTTP投递目标（通过REST增删），并把 {@link HttpSinkInterceptHandler} 收到的发布消息分发给匹配的目标。
+ * <p>
+ * 目标由插件主动请求，为避免被用来访问内网地址，需开启 mqtt.sink.enabled，且目标的协议与主机须在
+ * mqtt.sink.allowed-schemes / mqtt.sink.allowed-hosts 内。HttpClient不跟随重定向。
+ */
+@Service
+public class HttpSinkService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpSinkService.class);
+
+    private static final HttpSink[] NO_SINKS = new HttpSink[0];
+
+    private final MqttConfig mqttConfig;
+    private final TopicTable topicTable;
+    private final Set<String> allowedSchemes;
+    private final List<String> allowedHosts;
+    private final Map<String, HttpSink> sinks = new LinkedHashMap<>();
+    // 发布热路径只读这份快照，增删目标时整体替换
+    private volatile HttpSink[] active = NO_SINKS;
+
+    @Autowired
+    public HttpSinkService(MqttConfig mqttConfig, TopicTable topicTable) {
+        this.mqttConfig = mqttConfig;
+        this.topicTable = topicTable;
+        this.allowedSchemes = Set.copyOf(parseList(mqttConfig.getSinkAllowedSchemes()));
+        this.allowedHosts = parseList(mqttConfig.getSinkAllowedHosts());
+    }
+
+    public boolean isEnabled() {
+        return mqttConfig.isSinkEnabled();
+    }
+
+    public boolean isEmpty() {
+        return active.length == 0;
+    }
+
+    /**
+     * 分发一条发布消息。负载只在至少一个目标匹配时才读取。
+     */
+    public void dispatch(String topic, int qos, Supplier<byte[]> payload) {
+        HttpSink[] current = active;
+        if (current.length == 0) {
+            return;
+        }
+        HttpSink.SinkRecord record = null;
+        for (HttpSink sink : current) {
+            if (sink.accepts(topic)) {
+                if (record == null) {
+                    record = new HttpSink.SinkRecord(topic, payload.get(), qos, System.currentTimeMillis());
+                }
+                sink.offer(record);
+            }
+        }
+    }
+
+    /**
+     * 新建或替换投递目标。替换时旧目标排队中的消息先发送完。
+     */
+    public synchronized HttpSinkSettings put(String name, Map<String, String> values) {
+        checkEnabled();
+        HttpSinkSettings settings = HttpSinkSettings.parse(name, values);
+        checkDestination(settings.getUrl());
+        if (!sinks.containsKey(name) && sinks.size() >= mqttConfig.getSinkMaxSinks()) {
+            throw new IllegalStateException("Too many HTTP sinks, limit is " + mqttConfig.getSinkMaxSinks());
+        }
+        HttpSink previous = sinks.put(name, new HttpSink(settings, topicTable.filterSet(settings.getTopics())));
+        publish();
+        if (previous != null) {
+            previous.close(mqttConfig.getSinkDrainTimeoutMillis());
+        }
+        logger.info("HTTP sink {} -> {} for topics {}", name, settings.getUrl(), settings.getTopics());
+        return settings;
+    }
+
+    public synchronized boolean remove(String name) {
+        HttpSink sink = sinks.remove(name);
+        if (sink == null) {
+            return false;
+        }
+        publish();
+        sink.close(mqttConfig.getSinkDrainTimeoutMillis());
+        logger.info("HTTP sink {} removed", name);
+        return true;
+    }
+
+    public synchronized Map<String, Object> get(String name) {
+        HttpSink sink = sinks.get(name);
+        return sink != null ? describe(sink) : null;
+    }
+
+    public synchronized Map<String, Object> list() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        sinks.forEach((name, sink) -> result.put(name, describe(sink)));
+        return result;
+    }
+
+    /**
+     * 向目标同步发送一条测试消息，返回HTTP状态码。
+     */
+    public int test(String name, String topic, String message) throws IOException, InterruptedException {
+        checkEnabled();
+        HttpSink sink;
+        synchronized (this) {
+            sink = sinks.get(name);
+        }
+        if (sink == null) {
+            throw new IllegalArgumentException("No HTTP sink named " + name);
+        }
+        return sink.sendTest(List.of(new HttpSink.SinkRecord(topic, message.getBytes(StandardCharsets.UTF_8), 0,
+                System.currentTimeMillis())));
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        active = NO_SINKS;
+        sinks.values().forEach(sink -> sink.close(mqttConfig.getSinkDrainTimeoutMillis()));
+        sinks.clear();
+    }
+
+    private void checkEnabled() {
+        if (!isEnabled()) {
+            throw new IllegalStateException("HTTP sinks are disabled (mqtt.sink.enabled=false)");
+        }
+    }
+
+    /**
+     * 目标地址的协议与主机须在白名单内，否则抛出 {@link IllegalArgumentException}。
+     * 主机项 {@code *.example.com} 匹配其任意子域名，不匹配 example.com 本身。
+     */
+    void checkDestination(URI url) {
+        String scheme = url.getScheme() != null ? url.getScheme().toLowerCase(Locale.ROOT) : "";
+        if (!allowedSchemes.contains(scheme)) {
+            throw new IllegalArgumentException("url scheme " + scheme + " is not in mqtt.sink.allowed-schemes");
+        }
+        String host = url.getHost();
+        if (host == null || host.isEmpty()) {
+            throw new IllegalArgumentException("url has no host");
+        }
+        host = host.toLowerCase(Locale.ROOT);
+        for (String allowed : allowedHosts) {
+            if (allowed.startsWith("*.") ? host.endsWith(allowed.substring(1)) : host.equals(allowed)) {
+                return;
+            }
+        }
+        throw new IllegalArgumentException("url host " + host + " is not in mqtt.sink.allowed-hosts");
+    }
+
+    private static List<String> parseList(String value) {
+        List<String> result = new ArrayList<>();
+        if (value == null) {
+            return result;
+        }
+        for (String entry : value.split(",")) {
+            String trimmed = entry.trim().toLowerCase(Locale.ROOT);
+            if (!trimmed.isEmpty()) {
+                result.add(trimmed);
+            }
+        }
+        return result;
+    }
+
+    private void publish() {
+        active = sinks.values().toArray(NO_SINKS);
+    }
+
+    private static Map<String, Object> describe(HttpSink sink) {
+        Map<String, Object> description = new HashMap<>();
+        description.put("settings", sink.getSettings().toMap());
+        description.put("stats", sink.getStats());
+        return description;
+    }
+}
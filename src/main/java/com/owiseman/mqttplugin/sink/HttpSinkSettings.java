@@ -0,0 +1,192 @@
+package com.owiseman.mqttplugin.sink;
+
+import com.owiseman.mqttplugin.service.TopicMatcher;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 单个HTTP投递目标的配置，由REST请求体 {"配置项": "值"} 解析而来，未给出的项使用默认值。
+ */
+public final class HttpSinkSettings {
+
+    private static final Set<String> KEYS = Set.of("url", "topics", "batch-size", "linger-ms", "queue-capacity",
+            "max-retries", "backoff-ms", "max-backoff-ms", "timeout-ms", "failure-threshold", "open-ms",
+            "encoding", "authorization");
+    // 队列按容量预先分配数组，且每条排队消息都持有负载，上限防止一次配置耗尽堆内存
+    static final int MAX_QUEUE_CAPACITY = 100_000;
+
+    private final String name;
+    private final URI url;
+    private final List<String> topics;
+    private final int batchSize;
+    private final long lingerMillis;
+    private final int queueCapacity;
+    private final int maxRetries;
+    private final long backoffMillis;
+    private final long maxBackoffMillis;
+    private final long timeoutMillis;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final boolean base64;
+    private final String authorization;
+
+    private HttpSinkSettings(String name, Map<String, String> values) {
+        this.name = name;
+        String url = values.get("url");
+        if (url == null || url.isBlank()) {
+            throw new IllegalArgumentException("url is required");
+        }
+        this.url = URI.create(url.trim());
+        if (!"http".equals(this.url.getScheme()) && !"https".equals(this.url.getScheme())) {
+            throw new IllegalArgumentException("url must be http or https");
+        }
+        this.topics = TopicMatcher.parseFilters(values.get("topics"));
+        if (topics.isEmpty()) {
+            throw new IllegalArgumentException("topics is required");
+        }
+        this.batchSize = positiveInt(values, "batch-size", 100);
+        this.lingerMillis = nonNegativeLong(values, "linger-ms", 50);
+        this.queueCapacity = positiveInt(values, "queue-capacity", 10000);
+        if (queueCapacity > MAX_QUEUE_CAPACITY) {
+            throw new IllegalArgumentException("queue-capacity must not exceed " + MAX_QUEUE_CAPACITY);
+        }
+        this.maxRetries = (int) nonNegativeLong(values, "max-retries", 3);
+        this.backoffMillis = positiveLong(values, "backoff-ms", 200);
+        this.maxBackoffMillis = Math.max(backoffMillis, positiveLong(values, "max-backoff-ms", 10000));
+        this.timeoutMillis = positiveLong(values, "timeout-ms", 5000);
+        this.failureThreshold = positiveInt(values, "failure-threshold", 5);
+        this.openMillis = positiveLong(values, "open-ms", 30000);
+        String encoding = values.getOrDefault("encoding", "text").trim().toLowerCase();
+        if (!"text".equals(encoding) && !"base64".equals(encoding)) {
+            throw new IllegalArgumentException("encoding must be text or base64");
+        }
+        this.base64 = "base64".equals(encoding);
+        this.authorization = values.get("authorization");
+    }
+
+    /**
+     * 解析配置，格式错误或含未知配置项时抛出 {@link IllegalArgumentException}。
+     */
+    public static HttpSinkSettings parse(String name, Map<String, String> values) {
+        if (name == null || !name.matches("[A-Za-z0-9_-]{1,64}")) {
+            throw new IllegalArgumentException("Sink name must be 1-64 characters of [A-Za-z0-9_-]");
+        }
+        for (String key : values.keySet()) {
+            if (!KEYS.contains(key)) {
+                throw new IllegalArgumentException("Unknown sink setting: " + key);
+            }
+        }
+        return new HttpSinkSettings(name, values);
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("url", url.toString());
+        map.put("topics", String.join(",", topics));
+        map.put("batch-size", batchSize);
+        map.put("linger-ms", lingerMillis);
+        map.put("queue-capacity", queueCapacity);
+        map.put("max-retries", maxRetries);
+        map.put("backoff-ms", backoffMillis);
+        map.put("max-backoff-ms", maxBackoffMillis);
+        map.put("timeout-ms", timeoutMillis);
+        map.put("failure-threshold", failureThreshold);
+        map.put("open-ms", openMillis);
+        map.put("encoding", base64 ? "base64" : "text");
+        map.put("authorization", authorization != null ? "******" : null);
+        return map;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public URI getUrl() {
+        return url;
+    }
+
+    public List<String> getTopics() {
+        return topics;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getLingerMillis() {
+        return lingerMillis;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public long getBackoffMillis() {
+        return backoffMillis;
+    }
+
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public long getOpenMillis() {
+        return openMillis;
+    }
+
+    public boolean isBase64() {
+        return base64;
+    }
+
+    public String getAuthorization() {
+        return authorization;
+    }
+
+    private static int positiveInt(Map<String, String> values, String key, int defaultValue) {
+        long value = positiveLong(values, key, defaultValue);
+        if (value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(key + " is too large");
+        }
+        return (int) value;
+    }
+
+    private static long positiveLong(Map<String, String> values, String key, long defaultValue) {
+        long value = nonNegativeLong(values, key, defaultValue);
+        if (value == 0) {
+            throw new IllegalArgumentException(key + " must be positive");
+        }
+        return value;
+    }
+
+    private static long nonNegativeLong(Map<String, String> values, String key, long defaultValue) {
+        String raw = values.get(key);
+        if (raw == null || raw.isBlank()) {
+            return defaultValue;
+        }
+        long value;
+        try {
+            value = Long.parseLong(raw.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be a number");
+        }
+        if (value < 0) {
+            throw new IllegalArgumentException(key + " must not be negative");
+        }
+        return value;
+    }
+}
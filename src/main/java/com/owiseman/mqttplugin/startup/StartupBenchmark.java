@@ -0,0 +1,134 @@
+package com.owiseman.mqttplugin.startup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 启动时间基准测试：以不同方式多次启动打包好的插件，读取每次 {@link StartupService} 写出的报告，
+ * 统计从JVM启动到就绪的时间。
+ * <p>
+ * 用法：{@code java -cp target/classes com.owiseman.mqttplugin.startup.StartupBenchmark <jar> [runs] [appcdsDir]}，
+ * 或 {@code mvn -Pstartup-benchmark verify}。只依赖JDK，不需要Spring类路径。
+ * 测试的方式：顺序启动、快速启动，jar中包含AOT产物时加测AOT，appcdsDir中存在归档时加测AppCDS。
+ */
+public final class StartupBenchmark {
+
+    private static final Pattern READY = Pattern.compile("\"readyMillis\"\\s*:\\s*(\\d+)");
+    private static final String AOT_INITIALIZER =
+            "BOOT-INF/classes/com/owiseman/mqttplugin/MqttPluginApplication__ApplicationContextInitializer.class";
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: StartupBenchmark <jar> [runs] [appcdsDir]");
+            System.exit(2);
+        }
+        File jar = new File(args[0]);
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        File appcdsDir = args.length > 2 ? new File(args[2]) : null;
+
+        Map<String, List<String>> variants = new LinkedHashMap<>();
+        variants.put("sequential", command(jar, "--mqtt.startup.fast=false"));
+        variants.put("fast", command(jar, "--mqtt.startup.fast=true"));
+        boolean aot = hasAotArtifacts(jar);
+        if (aot) {
+            variants.put("fast+aot", command(jar, "-Dspring.aot.enabled=true", "--mqtt.startup.fast=true"));
+        }
+        File archive = appcdsDir == null ? null : new File(appcdsDir, "application.jsa");
+        if (archive != null && archive.isFile()) {
+            File extractedJar = new File(appcdsDir, jar.getName());
+            String sharedArchive = "-XX:SharedArchiveFile=" + archive.getAbsolutePath();
+            variants.put("fast+appcds", command(extractedJar, sharedArchive, "--mqtt.startup.fast=true"));
+            if (aot) {
+                variants.put("fast+aot+appcds", command(extractedJar, sharedArchive, "-Dspring.aot.enabled=true",
+                        "--mqtt.startup.fast=true"));
+            }
+        }
+
+        StringBuilder json = new StringBuilder("{\n");
+        System.out.printf("%-18s %8s %8s %8s%n", "variant", "min(ms)", "p50(ms)", "max(ms)");
+        int index = 0;
+        for (Map.Entry<String, List<String>> variant : variants.entrySet()) {
+            List<Long> samples = new ArrayList<>();
+            for (int i = 0; i < runs; i++) {
+                Long ready = runOnce(variant.getValue());
+                if (ready != null) {
+                    samples.add(ready);
+                }
+            }
+            Collections.sort(samples);
+            if (samples.isEmpty()) {
+                System.out.printf("%-18s %8s%n", variant.getKey(), "failed");
+            } else {
+                System.out.printf("%-18s %8d %8d %8d%n", variant.getKey(),
+                        samples.get(0), samples.get(samples.size() / 2), samples.get(samples.size() - 1));
+            }
+            json.append("  \"").append(variant.getKey()).append("\": ").append(samples)
+                    .append(++index < variants.size() ? ",\n" : "\n");
+        }
+        json.append("}\n");
+
+        File output = new File(jar.getParentFile(), "startup-benchmark.json");
+        Files.writeString(output.toPath(), json.toString(), StandardCharsets.UTF_8);
+        System.out.println("Samples written to " + output.getAbsolutePath());
+    }
+
+    private static List<String> command(File jar, String... options) {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        List<String> programArgs = new ArrayList<>();
+        for (String option : options) {
+            (option.startsWith("--") ? programArgs : command).add(option);
+        }
+        command.add("-jar");
+        command.add(jar.getAbsolutePath());
+        command.add("--mqtt.startup.exit-after-ready=true");
+        command.addAll(programArgs);
+        return command;
+    }
+
+    private static Long runOnce(List<String> command) throws IOException, InterruptedException {
+        File report = File.createTempFile("startup-report", ".json");
+        try {
+            List<String> args = new ArrayList<>(command);
+            args.add("--mqtt.startup.report-path=" + report.getAbsolutePath());
+            Process process = new ProcessBuilder(args)
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            if (!process.waitFor(2, TimeUnit.MINUTES)) {
+                process.destroyForcibly();
+                System.err.println("Timed out: " + String.join(" ", command));
+                return null;
+            }
+            Matcher matcher = READY.matcher(Files.readString(report.toPath(), StandardCharsets.UTF_8));
+            if (!matcher.find()) {
+                System.err.println("No startup report (exit code " + process.exitValue() + "): "
+                        + String.join(" ", command));
+                return null;
+            }
+            return Long.parseLong(matcher.group(1));
+        } finally {
+            Files.deleteIfExists(report.toPath());
+        }
+    }
+
+    private static boolean hasAotArtifacts(File jar) throws IOException {
+        try (JarFile file = new JarFile(jar)) {
+            return file.getEntry(AOT_INITIALIZER) != null;
+        }
+    }
+}
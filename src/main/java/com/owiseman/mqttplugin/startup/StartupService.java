@@ -0,0 +1,128 @@
+package com.owiseman.mqttplugin.startup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.owiseman.mqttplugin.config.GrpcServerConfig;
+import com.owiseman.mqttplugin.config.MqttConfig;
+import com.owiseman.mqttplugin.service.MqttService;
+import com.owiseman.mqttplugin.service.PluginGrpcService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aot.AotDetector;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * 启动流程。
+ * <p>
+ * 快速启动（mqtt.startup.fast=true）时MQTT监听与gRPC服务器并行启动，插件注册放到后台线程，
+ * 就绪时间不再受主应用可达性影响；否则按原来的顺序同步启动并注册。
+ * 各阶段耗时通过 {@link #getStartupStats()} 暴露，配置了 mqtt.startup.report-path 时写成JSON，
+ * 供 {@link StartupBenchmark} 统计。
+ */
+@Service
+public class StartupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupService.class);
+
+    private final MqttConfig mqttConfig;
+    private final MqttService mqttService;
+    private final GrpcServerConfig grpcServerConfig;
+    private final PluginGrpcService pluginGrpcService;
+    private final ObjectMapper objectMapper;
+    private final ConfigurableApplicationContext applicationContext;
+    private final Map<String, Object> stats = new LinkedHashMap<>();
+
+    @Autowired
+    public StartupService(MqttConfig mqttConfig, MqttService mqttService, GrpcServerConfig grpcServerConfig,
+                          PluginGrpcService pluginGrpcService, ObjectMapper objectMapper,
+                          ConfigurableApplicationContext applicationContext) {
+        this.mqttConfig = mqttConfig;
+        this.mqttService = mqttService;
+        this.grpcServerConfig = grpcServerConfig;
+        this.pluginGrpcService = pluginGrpcService;
+        this.objectMapper = objectMapper;
+        this.applicationContext = applicationContext;
+    }
+
+    public void start() throws Exception {
+        boolean fast = mqttConfig.isStartupFast();
+        record("mode", fast ? "fast" : "sequential");
+        record("aot", AotDetector.useGeneratedArtifacts());
+        record("cds", ManagementFactory.getRuntimeMXBean().getInputArguments().stream()
+                .anyMatch(arg -> arg.startsWith("-XX:SharedArchiveFile") || arg.contains("AutoCreateSharedArchive")));
+        record("contextReadyMillis", ManagementFactory.getRuntimeMXBean().getUptime());
+
+        if (fast) {
+            // MQTT监听在后台线程启动，gRPC服务器在当前线程启动
+            CompletableFuture<Void> mqtt = CompletableFuture.runAsync(() -> {
+                try {
+                    timed("mqttStartMillis", mqttService::start);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            });
+            timed("grpcStartMillis", grpcServerConfig::start);
+            try {
+                mqtt.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+
+            long registrationStart = System.nanoTime();
+            pluginGrpcService.registerPluginInBackground(mqttConfig.getStartupRegistrationAttempts())
+                    .thenAccept(registered -> {
+                        record("registered", registered);
+                        record("registrationMillis", (System.nanoTime() - registrationStart) / 1_000_000);
+                    });
+        } else {
+            timed("mqttStartMillis", mqttService::start);
+            timed("grpcStartMillis", grpcServerConfig::start);
+            timed("registrationMillis", pluginGrpcService::registerPlugin);
+            record("registered", pluginGrpcService.isRegistered());
+        }
+
+        long ready = ManagementFactory.getRuntimeMXBean().getUptime();
+        record("readyMillis", ready);
+        logger.info("Plugin ready {} ms after JVM start ({} startup)", ready, fast ? "fast" : "sequential");
+
+        if (!mqttConfig.getStartupReportPath().isEmpty()) {
+            File report = new File(mqttConfig.getStartupReportPath());
+            if (report.getParentFile() != null) {
+                report.getParentFile().mkdirs();
+            }
+            objectMapper.writeValue(report, getStartupStats());
+        }
+        if (mqttConfig.isStartupExitAfterReady()) {
+            // 启动基准测试：就绪后立即退出
+            System.exit(SpringApplication.exit(applicationContext, () -> 0));
+        }
+    }
+
+    public synchronized Map<String, Object> getStartupStats() {
+        return new LinkedHashMap<>(stats);
+    }
+
+    private synchronized void record(String key, Object value) {
+        stats.put(key, value);
+    }
+
+    private void timed(String key, Step step) throws Exception {
+        long start = System.nanoTime();
+        step.run();
+        record(key, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @FunctionalInterface
+    private interface Step {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,149 @@
+package com.owiseman.mqttplugin.admission;
+
+import com.owiseman.mqttplugin.config.NettyTransport;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AdmissionGatewayTest {
+
+    private static final int CONNACK_ACCEPTED = 0x00;
+    private static final int CONNACK_SERVER_UNAVAILABLE = 0x03;
+    private static final int CONNACK_SERVER_BUSY = 0x89;
+
+    private final List<Socket> sockets = new ArrayList<>();
+    private EventLoopGroup group;
+    private StubBroker broker;
+    private AdmissionGateway gateway;
+    private int port;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        if (gateway != null) {
+            gateway.stop();
+        }
+        if (broker != null) {
+            broker.close();
+        }
+        if (group != null) {
+            group.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+        }
+    }
+
+    @Test
+    void admitsAndRelaysConnAck() throws Exception {
+        startGateway(true, 10, 100);
+        Socket client = open();
+        client.getOutputStream().write(StubBroker.connectPacket("client-1", 4));
+
+        assertEquals(CONNACK_ACCEPTED, StubBroker.readConnAckReturnCode(client.getInputStream()));
+        await(() -> gateway.getPending() == 0, "pending released after CONNACK");
+        assertEquals(1L, gateway.getStats().get("admitted"));
+        assertEquals(0L, gateway.getStats().get("rejected"));
+    }
+
+    @Test
+    void rejectsWithServerUnavailableWhenPendingCapIsReached() throws Exception {
+        startGateway(false, 2, 100);
+        open();
+        open();
+        await(() -> gateway.getPending() == 2, "two pending connections");
+
+        Socket third = open();
+        third.getOutputStream().write(StubBroker.connectPacket("client-3", 4));
+
+        assertEquals(CONNACK_SERVER_UNAVAILABLE, StubBroker.readConnAckReturnCode(third.getInputStream()));
+        assertEquals(1L, gateway.getStats().get("rejected"));
+        assertEquals(2L, gateway.getStats().get("admitted"));
+        assertEquals(2, gateway.getPending());
+    }
+
+    @Test
+    void rejectsMqtt5ClientWithServerBusy() throws Exception {
+        startGateway(false, 1, 100);
+        open();
+        await(() -> gateway.getPending() == 1, "one pending connection");
+
+        Socket second = open();
+        second.getOutputStream().write(StubBroker.connectPacket("client-5", 5));
+
+        assertEquals(CONNACK_SERVER_BUSY, StubBroker.readConnAckReturnCode(second.getInputStream()));
+        assertEquals(1L, gateway.getStats().get("rejected"));
+    }
+
+    @Test
+    void queuesUntilPendingSlotIsReleased() throws Exception {
+        startGateway(false, 1, 5_000);
+        Socket first = open();
+        await(() -> gateway.getPending() == 1, "first connection pending");
+
+        Socket second = open();
+        second.getOutputStream().write(StubBroker.connectPacket("client-2", 4));
+        await(() -> Long.valueOf(1).equals(gateway.getStats().get("delayed")), "second connection queued");
+        assertEquals(1, gateway.getStats().get("queued"));
+
+        // 第一个连接断开后释放待完成名额，排队的连接随即放行
+        first.close();
+        await(() -> Long.valueOf(2).equals(gateway.getStats().get("admitted")), "second connection admitted");
+        await(() -> broker.getConnects() == 1, "CONNECT relayed to broker");
+        assertEquals(0, gateway.getStats().get("queued"));
+        assertEquals(0L, gateway.getStats().get("rejected"));
+    }
+
+    @Test
+    void rejectsWhenRateLimitDelayExceedsMaxDelay() throws Exception {
+        startGateway(true, 100, 50, new TokenBucket(1, 1));
+        Socket first = open();
+        first.getOutputStream().write(StubBroker.connectPacket("client-1", 4));
+        assertEquals(CONNACK_ACCEPTED, StubBroker.readConnAckReturnCode(first.getInputStream()));
+
+        // 桶已空，下一个令牌要1秒后才有，超过50毫秒的最大排队时间
+        Socket second = open();
+        second.getOutputStream().write(StubBroker.connectPacket("client-2", 4));
+        assertEquals(CONNACK_SERVER_UNAVAILABLE, StubBroker.readConnAckReturnCode(second.getInputStream()));
+        assertEquals(1L, gateway.getStats().get("rejected"));
+    }
+
+    private void startGateway(boolean answer, int maxPending, long maxDelayMillis) throws Exception {
+        startGateway(answer, maxPending, maxDelayMillis, new TokenBucket(1000, 1000));
+    }
+
+    private void startGateway(boolean answer, int maxPending, long maxDelayMillis, TokenBucket bucket) throws Exception {
+        broker = new StubBroker(answer, false);
+        group = new NioEventLoopGroup(2);
+        port = StubBroker.freePort();
+        gateway = new AdmissionGateway("test", true, "127.0.0.1", port, "127.0.0.1", broker.port(), bucket,
+                maxPending, maxDelayMillis, 30_000, group, group, NettyTransport.NIO, StubBroker.performanceProfile());
+        gateway.start(128);
+    }
+
+    private Socket open() throws IOException {
+        Socket socket = new Socket("127.0.0.1", port);
+        socket.setSoTimeout(5_000);
+        sockets.add(socket);
+        return socket;
+    }
+
+    private static void await(BooleanSupplier condition, String description) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Timed out waiting for " + description);
+            }
+            Thread.sleep(5);
+        }
+    }
+}
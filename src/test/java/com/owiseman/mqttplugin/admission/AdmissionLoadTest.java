@@ -0,0 +1,225 @@
+package com.owiseman.mqttplugin.admission;
+
+import com.owiseman.mqttplugin.config.NettyTransport;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 本机模拟设备重连风暴：5万个客户端经准入网关连接桩代理，被拒绝（CONNACK 服务不可用）或连接失败的客户端
+ * 随机退避后重连，直到全部接入。验证待完成连接数始终不超过上限、放行速率受令牌桶限制，且每个接受的连接
+ * 都被放行或拒绝。
+ * <p>
+ * 同时在途的客户端数保持在几百个，默认的1024个文件描述符上限也能运行；客户端数量可用
+ * -Dadmission.load.clients 调整。
+ * <p>
+ * 按5000/s的放行速率至少需要10秒，默认的 mvn test 不运行，使用 mvn -Ploadtest test 运行。
+ */
+@Tag("load")
+class AdmissionLoadTest {
+
+    private static final int DEFAULT_CLIENTS = 50_000;
+    private static final int CLIENTS = Integer.getInteger("admission.load.clients", DEFAULT_CLIENTS);
+    private static final int CONCURRENCY = 300;
+    private static final double RATE_PER_SECOND = 5_000;
+    private static final int BURST = 200;
+    private static final int MAX_PENDING = 64;
+    private static final long MAX_DELAY_MILLIS = 40;
+
+    @Test
+    void reconnectStormIsAdmittedWithinLimits() throws Exception {
+        EventLoopGroup gatewayGroup = new NioEventLoopGroup(4);
+        EventLoopGroup clientGroup = new NioEventLoopGroup(4);
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        int port = StubBroker.freePort();
+
+        try (StubBroker broker = new StubBroker(true, true)) {
+            AdmissionGateway gateway = new AdmissionGateway("load", true, "127.0.0.1", port, "127.0.0.1", broker.port(),
+                    new TokenBucket(RATE_PER_SECOND, BURST), MAX_PENDING, MAX_DELAY_MILLIS, 10_000,
+                    gatewayGroup, gatewayGroup, NettyTransport.NIO, StubBroker.performanceProfile());
+            gateway.start(4096);
+            try {
+                AtomicInteger maxPending = new AtomicInteger();
+                sampler.scheduleAtFixedRate(() -> maxPending.accumulateAndGet(gateway.getPending(), Math::max),
+                        0, 1, TimeUnit.MILLISECONDS);
+
+                LoadClients clients = new LoadClients(clientGroup, port);
+                long start = System.nanoTime();
+                for (int i = 0; i < CLIENTS; i++) {
+                    clients.launch("load-" + i);
+                }
+                assertTrue(clients.connected.await(5, TimeUnit.MINUTES),
+                        "only " + (CLIENTS - clients.connected.getCount()) + " of " + CLIENTS + " clients connected");
+                long elapsedNanos = System.nanoTime() - start;
+
+                // 等在途的拒绝与排队处理完
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (((Number) gateway.getStats().get("queued")).intValue() > 0 && System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                }
+                Map<String, Object> stats = gateway.getStats();
+                long accepted = (Long) stats.get("accepted");
+                long admitted = (Long) stats.get("admitted");
+                long rejected = (Long) stats.get("rejected");
+
+                assertTrue(maxPending.get() <= MAX_PENDING, "pending peaked at " + maxPending.get());
+                assertEquals(0L, stats.get("backendFailures"));
+                assertEquals(accepted, admitted + rejected, "every accepted connection is admitted or rejected");
+                assertEquals(rejected, clients.rejected.get(), "every rejection is a server unavailable CONNACK");
+                assertTrue(admitted >= CLIENTS, "admitted " + admitted);
+                // 客户端数调小后风暴可能不足以溢出准入队列
+                if (CLIENTS >= DEFAULT_CLIENTS) {
+                    assertTrue(rejected > 0, "the storm should overflow the admission queue and force reconnects");
+                }
+
+                // 放行一个连接消耗一个令牌：除初始突发外，放行速率不能超过配置速率（留5%的时钟余量）
+                double minimumSeconds = (admitted - BURST) / RATE_PER_SECOND;
+                assertTrue(elapsedNanos / 1e9 >= minimumSeconds * 0.95,
+                        String.format("admitted %d in %.2f s, faster than %.0f/s", admitted, elapsedNanos / 1e9, RATE_PER_SECOND));
+            } finally {
+                sampler.shutdownNow();
+                gateway.stop();
+            }
+        } finally {
+            clientGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+            gatewayGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+        }
+    }
+
+    /**
+     * 每个客户端：连接、发送CONNECT、读取CONNACK；被拒绝或连接中断时退避10-50毫秒后重连。
+     */
+    private static final class LoadClients {
+
+        final CountDownLatch connected = new CountDownLatch(CLIENTS);
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        private final Semaphore inFlight = new Semaphore(CONCURRENCY);
+        private final EventLoopGroup group;
+        private final Bootstrap bootstrap;
+        private final int port;
+
+        LoadClients(EventLoopGroup group, int port) {
+            this.group = group;
+            this.port = port;
+            // SO_LINGER=0：客户端关闭时发RST，不在本机留下TIME_WAIT占用临时端口
+            this.bootstrap = new Bootstrap()
+                    .group(group)
+                    .channel(NioSocketChannel.class)
+                    .option(ChannelOption.SO_LINGER, 0)
+                    .option(ChannelOption.TCP_NODELAY, true)
+                    .handler(new ChannelInitializer<Channel>() {
+                        @Override
+                        protected void initChannel(Channel ch) {
+                            // 处理器在连接建立后按客户端添加
+                        }
+                    });
+        }
+
+        void launch(String clientId) throws InterruptedException {
+            inFlight.acquire();
+            attempt(clientId);
+        }
+
+        private void attempt(String clientId) {
+            bootstrap.connect("127.0.0.1", port).addListener((ChannelFutureListener) future -> {
+                if (!future.isSuccess()) {
+                    errors.incrementAndGet();
+                    retry(clientId);
+                    return;
+                }
+                Channel channel = future.channel();
+                channel.pipeline().addLast(new ConnAckReader(clientId));
+                channel.writeAndFlush(Unpooled.wrappedBuffer(StubBroker.connectPacket(clientId, 4)));
+            });
+        }
+
+        private void retry(String clientId) {
+            group.schedule(() -> attempt(clientId), 10 + ThreadLocalRandom.current().nextInt(40), TimeUnit.MILLISECONDS);
+        }
+
+        private void onConnected() {
+            connected.countDown();
+            inFlight.release();
+        }
+
+        private final class ConnAckReader extends ChannelInboundHandlerAdapter {
+
+            private final String clientId;
+            // 3.1.1的CONNACK固定4字节
+            private final ByteBuf connAck = Unpooled.buffer(4);
+            private boolean done;
+
+            ConnAckReader(String clientId) {
+                this.clientId = clientId;
+            }
+
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                ByteBuf in = (ByteBuf) msg;
+                try {
+                    if (!done) {
+                        connAck.writeBytes(in, Math.min(in.readableBytes(), connAck.writableBytes()));
+                    }
+                } finally {
+                    in.release();
+                }
+                if (done || connAck.readableBytes() < 4) {
+                    return;
+                }
+                done = true;
+                int returnCode = connAck.getUnsignedByte(3);
+                ctx.close();
+                if (returnCode == 0) {
+                    onConnected();
+                } else {
+                    rejected.incrementAndGet();
+                    retry(clientId);
+                }
+            }
+
+            @Override
+            public void channelInactive(ChannelHandlerContext ctx) {
+                if (!done) {
+                    done = true;
+                    errors.incrementAndGet();
+                    retry(clientId);
+                }
+            }
+
+            @Override
+            public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+                ctx.close();
+            }
+
+            @Override
+            public void handlerRemoved(ChannelHandlerContext ctx) {
+                connAck.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.owiseman.mqttplugin.admission;
+
+import com.owiseman.mqttplugin.config.PerformanceProfile;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.mqtt.MqttConnectMessage;
+import io.netty.handler.codec.mqtt.MqttConnectReturnCode;
+import io.netty.handler.codec.mqtt.MqttDecoder;
+import io.netty.handler.codec.mqtt.MqttEncoder;
+import io.netty.handler.codec.mqtt.MqttMessageBuilders;
+import io.netty.util.ReferenceCountUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 代替Moquette的桩代理，只处理CONNECT：answer为true时回复接受的CONNACK，否则一直不回复，
+ * 使准入网关的待完成连接保持占用。
+ */
+final class StubBroker implements AutoCloseable {
+
+    private final EventLoopGroup group = new NioEventLoopGroup(2);
+    private final Channel channel;
+    private final AtomicInteger connects = new AtomicInteger();
+
+    /**
+     * @param answer           是否回复CONNACK
+     * @param closeAfterConnAck 回复后由代理一端先关闭连接（TIME_WAIT留在代理一端，压测时不占用网关的临时端口）
+     */
+    StubBroker(boolean answer, boolean closeAfterConnAck) throws InterruptedException {
+        channel = new ServerBootstrap()
+                .group(group)
+                .channel(NioServerSocketChannel.class)
+                .option(ChannelOption.SO_BACKLOG, 4096)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.pipeline().addLast(new MqttDecoder(), MqttEncoder.INSTANCE, new ChannelInboundHandlerAdapter() {
+                            @Override
+                            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                                try {
+                                    if (msg instanceof MqttConnectMessage) {
+                                        connects.incrementAndGet();
+                                        if (answer) {
+                                            ChannelFuture written = ctx.writeAndFlush(MqttMessageBuilders.connAck()
+                                                    .returnCode(MqttConnectReturnCode.CONNECTION_ACCEPTED)
+                                                    .sessionPresent(false)
+                                                    .build());
+                                            if (closeAfterConnAck) {
+                                                written.addListener(ChannelFutureListener.CLOSE);
+                                            }
+                                        }
+                                    }
+                                } finally {
+                                    ReferenceCountUtil.release(msg);
+                                }
+                            }
+
+                            @Override
+                            public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+                                ctx.close();
+                            }
+                        });
+                    }
+                })
+                .bind("127.0.0.1", 0).sync().channel();
+    }
+
+    int port() {
+        return ((InetSocketAddress) channel.localAddress()).getPort();
+    }
+
+    int getConnects() {
+        return connects.get();
+    }
+
+    @Override
+    public void close() {
+        channel.close().syncUninterruptibly();
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    static PerformanceProfile performanceProfile() {
+        PerformanceProfile profile = mock(PerformanceProfile.class);
+        when(profile.getAllocator()).thenReturn(PooledByteBufAllocator.DEFAULT);
+        when(profile.getWriteBufferWaterMark()).thenReturn(WriteBufferWaterMark.DEFAULT);
+        when(profile.isTcpNoDelay()).thenReturn(true);
+        return profile;
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * 最小的CONNECT报文（clean session，无遗嘱与认证），version为4（3.1.1）或5。
+     */
+    static byte[] connectPacket(String clientId, int version) {
+        byte[] id = clientId.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.writeBytes(new byte[]{0, 4, 'M', 'Q', 'T', 'T', (byte) version, 0x02, 0, 60});
+        if (version == 5) {
+            // 属性长度
+            body.write(0);
+        }
+        body.write(id.length >> 8);
+        body.write(id.length & 0xff);
+        body.writeBytes(id);
+
+        ByteArrayOutputStream packet = new ByteArrayOutputStream();
+        packet.write(0x10);
+        int remaining = body.size();
+        do {
+            int digit = remaining & 0x7f;
+            remaining >>>= 7;
+            packet.write(remaining > 0 ? digit | 0x80 : digit);
+        } while (remaining > 0);
+        packet.writeBytes(body.toByteArray());
+        return packet.toByteArray();
+    }
+
+    /**
+     * 读取一个CONNACK并返回其原因码（3.1.1的return code或MQTT 5的reason code）。
+     */
+    static int readConnAckReturnCode(InputStream in) throws IOException {
+        int type = in.read();
+        if (type < 0) {
+            throw new EOFException("Connection closed before CONNACK");
+        }
+        if (type != 0x20) {
+            throw new IOException("Expected CONNACK, got packet type " + type);
+        }
+        int length = 0;
+        int shift = 0;
+        int digit;
+        do {
+            digit = in.read();
+            if (digit < 0) {
+                throw new EOFException("Truncated CONNACK");
+            }
+            length |= (digit & 0x7f) << shift;
+            shift += 7;
+        } while ((digit & 0x80) != 0);
+        byte[] body = in.readNBytes(length);
+        if (body.length < 2) {
+            throw new EOFException("Truncated CONNACK");
+        }
+        return body[1] & 0xff;
+    }
+}
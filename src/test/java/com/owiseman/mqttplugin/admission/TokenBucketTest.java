@@ -0,0 +1,73 @@
+package com.owiseman.mqttplugin.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+    // 手动推进的时钟，补充量只取决于测试推进的时间
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void startsFullAndAllowsBurst() {
+        TokenBucket bucket = new TokenBucket(1, 5, now::get);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.tryAcquire(), "token " + i);
+        }
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void refillsAtConfiguredRate() {
+        TokenBucket bucket = new TokenBucket(1000, 1, now::get);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+        // 浮点换算可能向上多取整1纳秒
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1), bucket.nanosUntilAvailable(), 1);
+
+        now.addAndGet(TimeUnit.MICROSECONDS.toNanos(400));
+        assertFalse(bucket.tryAcquire());
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(600), bucket.nanosUntilAvailable(), 1);
+
+        now.addAndGet(TimeUnit.MICROSECONDS.toNanos(600));
+        assertEquals(0, bucket.nanosUntilAvailable());
+        assertTrue(bucket.tryAcquire());
+    }
+
+    @Test
+    void neverAccumulatesMoreThanBurst() {
+        TokenBucket bucket = new TokenBucket(100_000, 3, now::get);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        int acquired = 0;
+        while (bucket.tryAcquire() && acquired < 100) {
+            acquired++;
+        }
+        assertEquals(3, acquired);
+    }
+
+    @Test
+    void setRateClampsTokensToNewBurst() {
+        TokenBucket bucket = new TokenBucket(1, 10, now::get);
+        bucket.setRate(1, 2);
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+        assertEquals(1.0, bucket.getRatePerSecond(), 1e-9);
+    }
+
+    @Test
+    void rejectsInvalidRateAndBurst() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(-1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(1, 0.5));
+        TokenBucket bucket = new TokenBucket(1, 1);
+        assertThrows(IllegalArgumentException.class, () -> bucket.setRate(1, 0.5));
+    }
+}
@@ -0,0 +1,69 @@
+package com.owiseman.mqttplugin.bridge;
+
+import com.owiseman.mqttplugin.config.MqttConfig;
+import com.owiseman.mqttplugin.service.TopicTable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 验证过滤器列表相同的连接共用过滤器集合，最后一个使用者离开后释放。
+ */
+class FanoutServiceTest {
+
+    private FanoutService service;
+
+    @BeforeEach
+    void setUp() {
+        MqttConfig mqttConfig = mock(MqttConfig.class);
+        when(mqttConfig.getTopicInternCapacity()).thenReturn(1024);
+        when(mqttConfig.getFanoutThreads()).thenReturn(1);
+        when(mqttConfig.getFanoutMaxPending()).thenReturn(16);
+        service = new FanoutService(mqttConfig, new TopicTable(mqttConfig));
+        service.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void connectionsWithSameFiltersShareOneFilterSet() {
+        WebSocketSession a = session("a");
+        WebSocketSession b = session("b");
+        WebSocketSession c = session("c");
+        service.register(a, List.of("sensors/#", "alarms/+"), false);
+        service.register(b, List.of("alarms/+", "sensors/#", "sensors/#"), false);
+        service.register(c, List.of("sensors/#"), false);
+        assertEquals(2, filterSets());
+
+        service.updateFilters(c, List.of("alarms/+", "sensors/#"));
+        assertEquals(1, filterSets());
+
+        service.unregister(a);
+        service.unregister(b);
+        assertEquals(1, filterSets());
+        service.unregister(c);
+        assertEquals(0, filterSets());
+    }
+
+    private int filterSets() {
+        return (Integer) service.getStats(false).get("filterSets");
+    }
+
+    private static WebSocketSession session(String id) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        when(session.getAttributes()).thenReturn(new HashMap<>());
+        return session;
+    }
+}
@@ -0,0 +1,61 @@
+package com.owiseman.mqttplugin.history;
+
+import com.owiseman.mqttplugin.config.MqttConfig;
+import com.owiseman.mqttplugin.service.TopicTable;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TopicHistoryStoreTest {
+
+    private static final int MAX_SERIES = 8;
+
+    @Test
+    void concurrentNewTopicsNeverExceedMaxSeries() throws Exception {
+        MqttConfig mqttConfig = mock(MqttConfig.class);
+        when(mqttConfig.isHistoryEnabled()).thenReturn(true);
+        when(mqttConfig.getHistoryTopics()).thenReturn("#");
+        when(mqttConfig.getHistoryMaxSeries()).thenReturn(MAX_SERIES);
+        when(mqttConfig.getHistoryBlocksPerSeries()).thenReturn(4);
+        when(mqttConfig.getHistoryBlockSize()).thenReturn(256);
+        when(mqttConfig.getHistoryMmapDir()).thenReturn("");
+        when(mqttConfig.getTopicInternCapacity()).thenReturn(4096);
+        TopicHistoryStore store = new TopicHistoryStore(mqttConfig, new TopicTable(mqttConfig));
+
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < 100; i++) {
+                        store.record("sensors/" + thread + "/" + i, System.currentTimeMillis(), i);
+                    }
+                });
+            }
+            start.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(MAX_SERIES, store.listTopics().size());
+        assertEquals(MAX_SERIES, store.getStats().get("series"));
+        assertTrue((Long) store.getStats().get("rejectedSeries") > 0);
+    }
+}
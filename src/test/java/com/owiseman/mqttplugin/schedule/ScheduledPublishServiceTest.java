@@ -0,0 +1,105 @@
+package com.owiseman.mqttplugin.schedule;
+
+import com.owiseman.mqttplugin.config.MqttConfig;
+import com.owiseman.mqttplugin.service.MqttService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ScheduledPublishServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private MqttConfig mqttConfig;
+    private MqttService mqttService;
+    private ScheduledPublishService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        mqttConfig = mock(MqttConfig.class);
+        when(mqttConfig.getScheduleJournalPath()).thenReturn(dir.resolve("schedule.journal").toString());
+        when(mqttConfig.getScheduleTickMs()).thenReturn(10L);
+        when(mqttConfig.getScheduleWheelSize()).thenReturn(64);
+        when(mqttConfig.getScheduleMaxPending()).thenReturn(100);
+        when(mqttConfig.getScheduleMaxRetries()).thenReturn(1);
+        when(mqttConfig.getScheduleRetryDelayMs()).thenReturn(50L);
+        when(mqttConfig.getScheduleCompactThreshold()).thenReturn(1000L);
+        mqttService = mock(MqttService.class);
+        service = start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void failedJournalWriteLeavesNoPendingEntry() {
+        // 关闭后日志写入失败
+        service.shutdown();
+
+        assertThrows(IllegalStateException.class, () ->
+                service.schedule("a/b", "m", 1, null, System.currentTimeMillis() + 1000));
+        assertTrue(service.list(10).isEmpty());
+    }
+
+    @Test
+    void cancelledPublishNeverFiresAndIsNotRestored() throws Exception {
+        ScheduledPublish publish = service.schedule("a/b", "m", 1, null, System.currentTimeMillis() + 200);
+        assertTrue(service.cancel(publish.getId()));
+
+        Thread.sleep(400);
+        verify(mqttService, never()).publishMessage(anyString(), anyString(), anyInt(), any());
+        assertTrue(service.list(10).isEmpty());
+
+        service.shutdown();
+        service = start();
+        service.armRestored();
+        assertTrue(service.list(10).isEmpty());
+    }
+
+    @Test
+    void failedPublishIsRetriedOnce() throws Exception {
+        when(mqttService.publishMessage(anyString(), anyString(), anyInt(), any())).thenReturn(false, true);
+        service.schedule("a/b", "m", 1, null, System.currentTimeMillis() + 20);
+
+        await(() -> Long.valueOf(1).equals(service.getStats().get("fired")), "retry fired");
+        verify(mqttService, times(2)).publishMessage(anyString(), anyString(), anyInt(), any());
+        assertEquals(0, service.getStats().get("pending"));
+        assertEquals(0L, service.getStats().get("failed"));
+    }
+
+    private ScheduledPublishService start() throws Exception {
+        ScheduledPublishService started = new ScheduledPublishService(mqttConfig, mqttService);
+        started.init();
+        return started;
+    }
+
+    private static void await(BooleanSupplier condition, String description) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Timed out waiting for " + description);
+            }
+            Thread.sleep(5);
+        }
+    }
+}
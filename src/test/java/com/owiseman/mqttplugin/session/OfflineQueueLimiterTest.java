@@ -0,0 +1,159 @@
+package com.owiseman.mqttplugin.session;
+
+import com.owiseman.mqttplugin.config.MqttConfig;
+import io.moquette.broker.Server;
+import io.moquette.broker.config.MemoryConfig;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.mqtt.MqttMessageBuilders;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 在真实的Moquette 0.16代理上验证离线持久会话的队列上限：超限时丢弃消息而不是会话。
+ */
+class OfflineQueueLimiterTest {
+
+    private Server server;
+    private OfflineQueueLimiter limiter;
+    private int port;
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.stopServer();
+        }
+    }
+
+    @Test
+    void dropOldestKeepsNewestMessages() throws Exception {
+        start("drop-oldest", 3, 0);
+        subscribeAndGoOffline();
+        for (int i = 1; i <= 10; i++) {
+            publish("m" + i);
+        }
+        // 代理在会话事件循环上异步入队
+        await(() -> Long.valueOf(7).equals(limiter.getStats().get("droppedMessages")));
+
+        Map<String, Object> stats = limiter.getStats();
+        assertEquals(true, stats.get("installed"));
+        assertEquals(1L, stats.get("queuedClients"));
+        assertEquals(3L, stats.get("queuedMessages"));
+        assertEquals(1L, stats.get("overflows"));
+
+        assertEquals(List.of("m8", "m9", "m10"), reconnectAndReceive());
+        assertEquals(0L, limiter.getStats().get("queuedMessages"));
+    }
+
+    @Test
+    void dropNewestKeepsOldestMessages() throws Exception {
+        start("drop-newest", 3, 0);
+        subscribeAndGoOffline();
+        for (int i = 1; i <= 10; i++) {
+            publish("m" + i);
+        }
+
+        await(() -> Long.valueOf(7).equals(limiter.getStats().get("droppedMessages")));
+        assertEquals(3L, limiter.getStats().get("queuedMessages"));
+        assertEquals(List.of("m1", "m2", "m3"), reconnectAndReceive());
+    }
+
+    @Test
+    void byteLimitCountsPayloadSize() throws Exception {
+        start("drop-oldest", 0, 10);
+        subscribeAndGoOffline();
+        publish("aaaa");
+        publish("bbbb");
+        publish("cccc");
+
+        await(() -> Long.valueOf(1).equals(limiter.getStats().get("droppedMessages")));
+        assertEquals(8L, limiter.getStats().get("queuedBytes"));
+        assertEquals(List.of("bbbb", "cccc"), reconnectAndReceive());
+    }
+
+    @Test
+    void noneLeavesQueuesUnbounded() throws Exception {
+        start("none", 3, 0);
+        subscribeAndGoOffline();
+        for (int i = 1; i <= 5; i++) {
+            publish("m" + i);
+        }
+
+        assertEquals(false, limiter.getStats().get("installed"));
+        assertEquals(List.of("m1", "m2", "m3", "m4", "m5"), reconnectAndReceive());
+    }
+
+    private void start(String policy, int maxMessages, long maxBytes) throws IOException {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        MqttConfig mqttConfig = mock(MqttConfig.class);
+        when(mqttConfig.getOfflineQueuePolicy()).thenReturn(policy);
+        when(mqttConfig.getOfflineQueueMaxMessages()).thenReturn(maxMessages);
+        when(mqttConfig.getOfflineQueueMaxBytes()).thenReturn(maxBytes);
+        limiter = new OfflineQueueLimiter(mqttConfig);
+
+        Properties properties = new Properties();
+        properties.setProperty("host", "127.0.0.1");
+        properties.setProperty("port", String.valueOf(port));
+        properties.setProperty("allow_anonymous", "true");
+        server = new Server();
+        server.startServer(new MemoryConfig(properties), List.of(), null, null, null);
+        limiter.install(server);
+    }
+
+    private void subscribeAndGoOffline() throws Exception {
+        try (RawMqttClient client = new RawMqttClient(port, "sensor", false)) {
+            client.subscribe("sensors/#", 1);
+        }
+        // 代理在会话事件循环上异步处理断开，之后的消息才进入队列
+        await(() -> server.listConnectedClients().isEmpty());
+    }
+
+    // 以原会话重连，确认并按到达顺序返回收到的消息，直到读取超时
+    private List<String> reconnectAndReceive() throws IOException {
+        List<String> received = new ArrayList<>();
+        try (RawMqttClient client = new RawMqttClient(port, "sensor", false)) {
+            assertTrue(client.isSessionPresent());
+            RawMqttClient.Publish publish;
+            while ((publish = client.readPublish()) != null) {
+                received.add(publish.payload);
+                client.puback(publish.packetId);
+            }
+        }
+        return received;
+    }
+
+    private void publish(String payload) {
+        server.internalPublish(MqttMessageBuilders.publish()
+                .topicName("sensors/a")
+                .retained(false)
+                .qos(MqttQoS.AT_LEAST_ONCE)
+                .payload(Unpooled.copiedBuffer(payload, StandardCharsets.UTF_8))
+                .build(), "test");
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Timed out");
+            }
+            Thread.sleep(5);
+        }
+    }
+}
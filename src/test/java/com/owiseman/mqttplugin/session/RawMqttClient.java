@@ -0,0 +1,187 @@
+package com.owiseman.mqttplugin.session;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 测试用的阻塞式MQTT 3.1.1客户端，只实现CONNECT、SUBSCRIBE、PUBLISH接收与PUBACK，
+ * 便于精确控制何时确认（或不确认）QoS 1消息。
+ */
+final class RawMqttClient implements AutoCloseable {
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final OutputStream out;
+    private final boolean sessionPresent;
+
+    RawMqttClient(int port, String clientId, boolean cleanSession) throws IOException {
+        socket = new Socket();
+        socket.connect(new InetSocketAddress("127.0.0.1", port), 5000);
+        socket.setSoTimeout(5000);
+        in = new DataInputStream(socket.getInputStream());
+        out = socket.getOutputStream();
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        writeField(body, "MQTT".getBytes(StandardCharsets.UTF_8));
+        body.write(4);
+        body.write(cleanSession ? 0x02 : 0x00);
+        body.write(0);
+        body.write(60);
+        writeField(body, clientId.getBytes(StandardCharsets.UTF_8));
+        send(0x10, body.toByteArray());
+
+        Packet connack = read();
+        if (connack == null || connack.type != 2 || connack.body[1] != 0) {
+            throw new IOException("Connection refused");
+        }
+        sessionPresent = (connack.body[0] & 0x01) != 0;
+    }
+
+    boolean isSessionPresent() {
+        return sessionPresent;
+    }
+
+    void subscribe(String filter, int qos) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(0);
+        body.write(1);
+        writeField(body, filter.getBytes(StandardCharsets.UTF_8));
+        body.write(qos);
+        send(0x82, body.toByteArray());
+        Packet suback = read();
+        if (suback == null || suback.type != 9) {
+            throw new IOException("No SUBACK");
+        }
+    }
+
+    /**
+     * 读取下一条PUBLISH，超时返回null；连接被代理关闭时抛出 {@link EOFException}。
+     */
+    Publish readPublish() throws IOException {
+        while (true) {
+            Packet packet = read();
+            if (packet == null) {
+                return null;
+            }
+            if (packet.type == 3) {
+                return Publish.parse(packet);
+            }
+        }
+    }
+
+    void puback(int packetId) throws IOException {
+        send(0x40, new byte[]{(byte) (packetId >>> 8), (byte) packetId});
+    }
+
+    /**
+     * 等待代理关闭连接，期间收到的报文丢弃。
+     */
+    boolean awaitClosed() throws IOException {
+        try {
+            while (read() != null) {
+                // 丢弃
+            }
+            return false;
+        } catch (EOFException e) {
+            return true;
+        } catch (IOException e) {
+            // 连接被重置
+            return true;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    private Packet read() throws IOException {
+        int header;
+        try {
+            header = in.read();
+        } catch (SocketTimeoutException e) {
+            return null;
+        }
+        if (header < 0) {
+            throw new EOFException();
+        }
+        int length = 0;
+        int shift = 0;
+        int digit;
+        do {
+            digit = in.readUnsignedByte();
+            length |= (digit & 0x7F) << shift;
+            shift += 7;
+        } while ((digit & 0x80) != 0);
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return new Packet(header >>> 4, header & 0x0F, body);
+    }
+
+    private void send(int header, byte[] body) throws IOException {
+        ByteArrayOutputStream packet = new ByteArrayOutputStream(body.length + 5);
+        packet.write(header);
+        int remaining = body.length;
+        do {
+            int digit = remaining & 0x7F;
+            remaining >>>= 7;
+            packet.write(remaining > 0 ? digit | 0x80 : digit);
+        } while (remaining > 0);
+        packet.writeBytes(body);
+        out.write(packet.toByteArray());
+        out.flush();
+    }
+
+    private static void writeField(ByteArrayOutputStream out, byte[] value) {
+        out.write(value.length >>> 8);
+        out.write(value.length & 0xFF);
+        out.write(value, 0, value.length);
+    }
+
+    private static final class Packet {
+        final int type;
+        final int flags;
+        final byte[] body;
+
+        Packet(int type, int flags, byte[] body) {
+            this.type = type;
+            this.flags = flags;
+            this.body = body;
+        }
+    }
+
+    static final class Publish {
+        final String topic;
+        final int packetId;
+        final String payload;
+        final boolean dup;
+
+        private Publish(String topic, int packetId, String payload, boolean dup) {
+            this.topic = topic;
+            this.packetId = packetId;
+            this.payload = payload;
+            this.dup = dup;
+        }
+
+        static Publish parse(Packet packet) {
+            int qos = (packet.flags >>> 1) & 0x03;
+            int topicLength = ((packet.body[0] & 0xFF) << 8) | (packet.body[1] & 0xFF);
+            String topic = new String(packet.body, 2, topicLength, StandardCharsets.UTF_8);
+            int offset = 2 + topicLength;
+            int packetId = 0;
+            if (qos > 0) {
+                packetId = ((packet.body[offset] & 0xFF) << 8) | (packet.body[offset + 1] & 0xFF);
+                offset += 2;
+            }
+            String payload = new String(packet.body, offset, packet.body.length - offset, StandardCharsets.UTF_8);
+            return new Publish(topic, packetId, payload, (packet.flags & 0x08) != 0);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.owiseman.mqttplugin.session;
+
+import com.owiseman.mqttplugin.admission.ConnectionAdmissionService;
+import com.owiseman.mqttplugin.auth.ReloadableAuthenticator;
+import com.owiseman.mqttplugin.config.MqttConfig;
+import io.moquette.broker.Server;
+import io.moquette.broker.config.MemoryConfig;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.mqtt.MqttMessageBuilders;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 在真实的Moquette 0.16代理上验证接管断开：不丢弃会话时，被接管前未确认的QoS 1消息，以及代理发给
+ * 内部接管连接的排队消息，在客户端重连时都会重发；内部连接不计入客户端列表与过期跟踪。
+ */
+class SessionExpiryServiceTest {
+
+    private Server server;
+    private ClientRegistry clientRegistry;
+    private SessionExpiryService sessionExpiryService;
+    private int port;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        MqttConfig mqttConfig = mock(MqttConfig.class);
+        when(mqttConfig.getAuthUsers()).thenReturn("");
+        when(mqttConfig.getSessionExpirySeconds()).thenReturn(3600L);
+        ConnectionAdmissionService admissionService = mock(ConnectionAdmissionService.class);
+        when(admissionService.getBrokerHost()).thenReturn("127.0.0.1");
+        when(admissionService.getBrokerPort()).thenReturn(port);
+        ReloadableAuthenticator authenticator = new ReloadableAuthenticator(mqttConfig);
+
+        clientRegistry = new ClientRegistry();
+        sessionExpiryService = new SessionExpiryService(mqttConfig, admissionService, authenticator);
+
+        Properties properties = new Properties();
+        properties.setProperty("host", "127.0.0.1");
+        properties.setProperty("port", String.valueOf(port));
+        properties.setProperty("allow_anonymous", "true");
+        server = new Server();
+        server.startServer(new MemoryConfig(properties), List.of(clientRegistry, sessionExpiryService), null,
+                authenticator, null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stopServer();
+    }
+
+    @Test
+    void disconnectWithoutDiscardRedeliversUnackedMessages() throws Exception {
+        try (RawMqttClient client = new RawMqttClient(port, "victim", false)) {
+            client.subscribe("sensors/#", 1);
+            publish("m1");
+            publish("m2");
+            // 收到但不确认，消息停留在会话的在途窗口中
+            assertNotNull(client.readPublish());
+            assertNotNull(client.readPublish());
+            assertTrue(clientRegistry.isConnected("victim"));
+
+            sessionExpiryService.disconnect("victim", false);
+            assertTrue(client.awaitClosed());
+        }
+        await(() -> !clientRegistry.isConnected("victim"));
+        assertEquals(0, clientRegistry.size());
+        assertEquals(1, sessionExpiryService.getStats().get("offlineSessions"));
+
+        assertEquals(Set.of("m1", "m2"), reconnectAndReceive(2));
+    }
+
+    @Test
+    void queuedMessagesHandedToTakeoverAreRedelivered() throws Exception {
+        try (RawMqttClient client = new RawMqttClient(port, "victim", false)) {
+            client.subscribe("sensors/#", 1);
+        }
+        await(() -> !clientRegistry.isConnected("victim"));
+        // 断开事件通知时代理的会话可能仍处于连接状态，此时发布的消息会发往已关闭的连接
+        await(() -> server.listConnectedClients().isEmpty());
+        publish("m1");
+        publish("m2");
+
+        // 内部连接以持久会话登录，代理把排队的消息发给它；内部连接不确认即断开
+        sessionExpiryService.disconnect("victim", false);
+
+        assertEquals(Set.of("m1", "m2"), reconnectAndReceive(2));
+    }
+
+    @Test
+    void discardSessionDropsQueuedMessages() throws Exception {
+        try (RawMqttClient client = new RawMqttClient(port, "victim", false)) {
+            client.subscribe("sensors/#", 1);
+            sessionExpiryService.disconnect("victim", true);
+            assertTrue(client.awaitClosed());
+        }
+        // 内部连接的断开事件在代理清除会话之后通知
+        await(() -> !clientRegistry.isConnected("victim"));
+        await(() -> server.listConnectedClients().isEmpty());
+        publish("m1");
+
+        try (RawMqttClient client = new RawMqttClient(port, "victim", false)) {
+            assertFalse(client.isSessionPresent());
+            assertNull(client.readPublish());
+            assertEquals(0, sessionExpiryService.getStats().get("offlineSessions"));
+        }
+    }
+
+    // 以原会话重连，确认并返回收到的消息，直到收齐expected条或超时
+    private Set<String> reconnectAndReceive(int expected) throws Exception {
+        Set<String> received = new TreeSet<>();
+        try (RawMqttClient client = new RawMqttClient(port, "victim", false)) {
+            assertTrue(client.isSessionPresent());
+            // 拦截器在代理的线程池上异步执行
+            await(() -> Integer.valueOf(0).equals(sessionExpiryService.getStats().get("offlineSessions")));
+            long deadline = System.currentTimeMillis() + 15_000;
+            while (received.size() < expected && System.currentTimeMillis() < deadline) {
+                RawMqttClient.Publish publish = client.readPublish();
+                if (publish != null) {
+                    received.add(publish.payload);
+                    client.puback(publish.packetId);
+                }
+            }
+        }
+        return received;
+    }
+
+    private void publish(String payload) {
+        server.internalPublish(MqttMessageBuilders.publish()
+                .topicName("sensors/a")
+                .retained(false)
+                .qos(MqttQoS.AT_LEAST_ONCE)
+                .payload(Unpooled.copiedBuffer(payload, StandardCharsets.UTF_8))
+                .build(), "test");
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Timed out");
+            }
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.owiseman.mqttplugin.sink;
+
+import com.owiseman.mqttplugin.config.MqttConfig;
+import com.owiseman.mqttplugin.service.TopicTable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 验证投递目标的开关与目标地址白名单。
+ */
+class HttpSinkServiceTest {
+
+    private MqttConfig mqttConfig;
+    private HttpSinkService service;
+
+    @BeforeEach
+    void setUp() {
+        mqttConfig = mock(MqttConfig.class);
+        when(mqttConfig.getTopicInternCapacity()).thenReturn(1024);
+        when(mqttConfig.isSinkEnabled()).thenReturn(true);
+        when(mqttConfig.getSinkAllowedSchemes()).thenReturn("https");
+        when(mqttConfig.getSinkAllowedHosts()).thenReturn("ingest.example.com, *.hooks.example.com");
+        when(mqttConfig.getSinkMaxSinks()).thenReturn(4);
+        when(mqttConfig.getSinkDrainTimeoutMillis()).thenReturn(100L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void rejectsEverythingWhenDisabled() {
+        when(mqttConfig.isSinkEnabled()).thenReturn(false);
+        service = new HttpSinkService(mqttConfig, new TopicTable(mqttConfig));
+
+        assertThrows(IllegalStateException.class, () -> service.put("a", sink("https://ingest.example.com/in")));
+        assertThrows(IllegalStateException.class, () -> service.test("a", "t", "m"));
+        assertTrue(service.isEmpty());
+    }
+
+    @Test
+    void acceptsAllowedHostsOnly() {
+        service = new HttpSinkService(mqttConfig, new TopicTable(mqttConfig));
+
+        service.put("exact", sink("https://INGEST.example.com:8443/in"));
+        service.put("sub", sink("https://a.hooks.example.com/in"));
+        assertEquals(2, service.list().size());
+
+        assertThrows(IllegalArgumentException.class, () -> service.put("b", sink("https://hooks.example.com/in")));
+        assertThrows(IllegalArgumentException.class, () -> service.put("c", sink("https://127.0.0.1/in")));
+        assertThrows(IllegalArgumentException.class,
+                () -> service.put("d", sink("https://ingest.example.com.evil.test/in")));
+        assertThrows(IllegalArgumentException.class, () -> service.put("e", sink("http://ingest.example.com/in")));
+        assertEquals(2, service.list().size());
+    }
+
+    @Test
+    void emptyAllowlistAllowsNoDestination() {
+        when(mqttConfig.getSinkAllowedHosts()).thenReturn("");
+        service = new HttpSinkService(mqttConfig, new TopicTable(mqttConfig));
+
+        assertThrows(IllegalArgumentException.class, () -> service.put("a", sink("https://ingest.example.com/in")));
+    }
+
+    private static Map<String, String> sink(String url) {
+        return Map.of("url", url, "topics", "sensors/#");
+    }
+}
@@ -0,0 +1,242 @@
+package com.owiseman.mqttplugin.sink;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.owiseman.mqttplugin.config.MqttConfig;
+import com.owiseman.mqttplugin.service.TopicTable;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 以本机的桩HTTP服务作为投递目标，验证攒批、重试退避、熔断状态转换与队列满时丢弃。
+ */
+class HttpSinkTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final List<Request> requests = new CopyOnWriteArrayList<>();
+    // 按顺序回复的状态码，用完后回复 defaultStatus
+    private final BlockingQueue<Integer> statuses = new LinkedBlockingQueue<>();
+    private volatile int defaultStatus = 200;
+    private volatile CountDownLatch hold;
+    private final CountDownLatch firstRequest = new CountDownLatch(1);
+
+    private ExecutorService executor;
+    private HttpServer server;
+    private TopicTable topicTable;
+    private HttpSink sink;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        executor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ingest", this::handle);
+        server.setExecutor(executor);
+        server.start();
+        MqttConfig mqttConfig = mock(MqttConfig.class);
+        when(mqttConfig.getTopicInternCapacity()).thenReturn(1024);
+        topicTable = new TopicTable(mqttConfig);
+    }
+
+    @AfterEach
+    void tearDown() {
+        CountDownLatch blocked = hold;
+        if (blocked != null) {
+            blocked.countDown();
+        }
+        if (sink != null) {
+            sink.close(1_000);
+        }
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    void sendsFullBatchesWithoutWaitingForLinger() throws Exception {
+        start(Map.of("batch-size", "3", "linger-ms", "10000"));
+        for (int i = 0; i < 6; i++) {
+            sink.offer(record("sensors/" + i));
+        }
+
+        // 桩服务在回复前记录请求，以发送线程的统计为准等待两批都完成
+        await(() -> Long.valueOf(6).equals(sink.getStats().get("delivered")), "two full batches delivered");
+        assertEquals(2, requests.size());
+        assertEquals(3, requests.get(0).body.size());
+        assertEquals(3, requests.get(1).body.size());
+        assertEquals("sensors/0", requests.get(0).body.get(0).get("topic").asText());
+        assertEquals("payload", requests.get(0).body.get(0).get("payload").asText());
+        assertEquals(2L, sink.getStats().get("batches"));
+    }
+
+    @Test
+    void sendsPartialBatchAfterLinger() throws Exception {
+        start(Map.of("batch-size", "100", "linger-ms", "300"));
+        long offered = System.nanoTime();
+        sink.offer(record("sensors/a"));
+        sink.offer(record("sensors/b"));
+
+        await(() -> requests.size() == 1, "partial batch");
+        assertEquals(2, requests.get(0).body.size());
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(requests.get(0).receivedNanos - offered);
+        assertTrue(waitedMillis >= 250, "batch sent after " + waitedMillis + " ms, before linger expired");
+    }
+
+    @Test
+    void retriesServerErrorsAndTooManyRequestsWithBackoff() throws Exception {
+        statuses.add(503);
+        statuses.add(429);
+        start(Map.of("batch-size", "1", "linger-ms", "0", "max-retries", "3", "backoff-ms", "100",
+                "max-backoff-ms", "1000"));
+        sink.offer(record("sensors/a"));
+
+        await(() -> Long.valueOf(1).equals(sink.getStats().get("delivered")), "delivery after retries");
+        assertEquals(3, requests.size());
+        assertEquals(2L, sink.getStats().get("retries"));
+        assertEquals(0L, sink.getStats().get("failedBatches"));
+        // 退避依次为100与200毫秒
+        long firstBackoff = TimeUnit.NANOSECONDS.toMillis(requests.get(1).receivedNanos - requests.get(0).receivedNanos);
+        long secondBackoff = TimeUnit.NANOSECONDS.toMillis(requests.get(2).receivedNanos - requests.get(1).receivedNanos);
+        assertTrue(firstBackoff >= 90, "first backoff " + firstBackoff + " ms");
+        assertTrue(secondBackoff >= 190, "second backoff " + secondBackoff + " ms");
+    }
+
+    @Test
+    void dropsBatchOnClientErrorWithoutRetrying() throws Exception {
+        defaultStatus = 400;
+        start(Map.of("batch-size", "1", "linger-ms", "0", "max-retries", "3", "backoff-ms", "10"));
+        sink.offer(record("sensors/a"));
+
+        await(() -> Long.valueOf(1).equals(sink.getStats().get("failedBatches")), "failed batch");
+        assertEquals(1, requests.size());
+        assertEquals(0L, sink.getStats().get("retries"));
+        assertEquals(1L, sink.getStats().get("failedRecords"));
+    }
+
+    @Test
+    void circuitOpensThenProbesAndCloses() throws Exception {
+        defaultStatus = 500;
+        start(Map.of("batch-size", "1", "linger-ms", "0", "max-retries", "0", "failure-threshold", "2",
+                "open-ms", "1000"));
+        sink.offer(record("sensors/a"));
+        sink.offer(record("sensors/b"));
+        await(() -> "open".equals(sink.getStats().get("circuit")), "circuit open after two failures");
+        assertEquals(2, requests.size());
+
+        // 熔断期间新消息直接丢弃
+        sink.offer(record("sensors/c"));
+        assertEquals(1L, sink.getStats().get("droppedCircuitOpen"));
+
+        // 到期后半开；试探失败立即重新熔断
+        await(() -> "half_open".equals(sink.getStats().get("circuit")), "circuit half open");
+        sink.offer(record("sensors/d"));
+        await(() -> "open".equals(sink.getStats().get("circuit")), "circuit reopened after failed probe");
+        assertEquals(3, requests.size());
+
+        // 试探成功后恢复
+        defaultStatus = 200;
+        await(() -> "half_open".equals(sink.getStats().get("circuit")), "circuit half open again");
+        sink.offer(record("sensors/e"));
+        await(() -> "closed".equals(sink.getStats().get("circuit")), "circuit closed after successful probe");
+        assertEquals(1L, sink.getStats().get("delivered"));
+        assertEquals("sensors/e", requests.get(3).body.get(0).get("topic").asText());
+    }
+
+    @Test
+    void dropsWhenQueueIsFull() throws Exception {
+        hold = new CountDownLatch(1);
+        start(Map.of("batch-size", "1", "linger-ms", "0", "queue-capacity", "2"));
+        sink.offer(record("sensors/a"));
+        // 发送线程阻塞在第一条消息的请求上，队列不再被取走
+        assertTrue(firstRequest.await(5, TimeUnit.SECONDS));
+
+        sink.offer(record("sensors/b"));
+        sink.offer(record("sensors/c"));
+        sink.offer(record("sensors/d"));
+        assertEquals(1L, sink.getStats().get("droppedQueueFull"));
+        assertEquals(3L, sink.getStats().get("enqueued"));
+        assertEquals(2, sink.getStats().get("queueDepth"));
+
+        hold.countDown();
+        await(() -> Long.valueOf(3).equals(sink.getStats().get("delivered")), "queued records delivered");
+    }
+
+    @Test
+    void rejectsOversizedQueueCapacity() {
+        Map<String, String> values = Map.of("url", "http://127.0.0.1/ingest", "topics", "sensors/#",
+                "queue-capacity", String.valueOf(HttpSinkSettings.MAX_QUEUE_CAPACITY + 1));
+        assertThrows(IllegalArgumentException.class, () -> HttpSinkSettings.parse("test", values));
+    }
+
+    private void start(Map<String, String> overrides) {
+        Map<String, String> values = new HashMap<>(overrides);
+        values.put("url", "http://127.0.0.1:" + server.getAddress().getPort() + "/ingest");
+        values.put("topics", "sensors/#");
+        values.putIfAbsent("backoff-ms", "10");
+        HttpSinkSettings settings = HttpSinkSettings.parse("test", values);
+        sink = new HttpSink(settings, topicTable.filterSet(settings.getTopics()));
+    }
+
+    private static HttpSink.SinkRecord record(String topic) {
+        return new HttpSink.SinkRecord(topic, "payload".getBytes(StandardCharsets.UTF_8), 1, System.currentTimeMillis());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange; InputStream body = exchange.getRequestBody()) {
+            requests.add(new Request(System.nanoTime(), MAPPER.readTree(body.readAllBytes())));
+            firstRequest.countDown();
+            CountDownLatch blocked = hold;
+            if (blocked != null) {
+                blocked.await(10, TimeUnit.SECONDS);
+            }
+            Integer status = statuses.poll();
+            exchange.sendResponseHeaders(status != null ? status : defaultStatus, -1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(BooleanSupplier condition, String description) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Timed out waiting for " + description);
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private static final class Request {
+        final long receivedNanos;
+        final JsonNode body;
+
+        Request(long receivedNanos, JsonNode body) {
+            this.receivedNanos = receivedNanos;
+            this.body = body;
+        }
+    }
+}